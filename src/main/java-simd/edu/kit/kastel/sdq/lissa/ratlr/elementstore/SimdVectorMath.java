@@ -0,0 +1,42 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementations of the kernels of {@link VectorMath} based on the incubating Vector API.
+ * <p>
+ * This class is compiled separately from {@code src/main/java-simd} with {@code --add-modules jdk.incubator.vector},
+ * so that the rest of the code compiles without the incubating module. {@link VectorMath} loads it by name, and
+ * only if the module is present.
+ * </p>
+ */
+final class SimdVectorMath implements VectorMath.DotKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = SPECIES.length();
+        FloatVector sum0 = FloatVector.zero(SPECIES);
+        FloatVector sum1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        // Two accumulators hide the latency of the fused multiply-add
+        for (int bound = length - 2 * lanes; i <= bound; i += 2 * lanes) {
+            sum0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), sum0);
+            sum1 = FloatVector.fromArray(SPECIES, a, aOffset + i + lanes)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + lanes), sum1);
+        }
+        for (int bound = SPECIES.loopBound(length); i < bound; i += lanes) {
+            sum0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), sum0);
+        }
+        float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
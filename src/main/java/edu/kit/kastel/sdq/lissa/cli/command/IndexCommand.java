@@ -0,0 +1,57 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.cli.command;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.Evaluation;
+
+import picocli.CommandLine;
+
+/**
+ * Command implementation for creating the persistent indices of the element stores.
+ * For each configuration, the pipeline is run up to the element stores, and every store that
+ * configures an {@code index_file} is written to that file. Subsequent {@code eval} runs with the
+ * same configuration load the stores from the index instead of rebuilding them.
+ */
+@CommandLine.Command(
+        name = "index",
+        mixinStandardHelpOptions = true,
+        description = "Builds the element stores of configurations and writes their index files")
+public class IndexCommand implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(IndexCommand.class);
+
+    /**
+     * Array of configuration file paths whose element stores should be indexed.
+     */
+    @CommandLine.Option(
+            names = {"-c", "--configs"},
+            arity = "1..*",
+            required = true,
+            description = "Specifies one or more config paths whose element stores are indexed.")
+    private Path[] configs;
+
+    /**
+     * Executes the index command.
+     * Each configuration is processed independently; failures are logged and do not stop the remaining configurations.
+     */
+    @Override
+    public void run() {
+        for (Path config : configs) {
+            if (Files.notExists(config) || Files.isDirectory(config)) {
+                logger.warn("Specified config path '{}' is not a file", config);
+                continue;
+            }
+            logger.info("Indexing the element stores of '{}'", config);
+            try {
+                int written = new Evaluation(config).index();
+                logger.info("Wrote {} index files for '{}'", written, config);
+            } catch (Exception e) {
+                logger.warn("Configuration '{}' threw an exception: {}", config, e.getMessage());
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package edu.kit.kastel.sdq.lissa.ratlr;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -14,10 +15,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.kit.kastel.sdq.lissa.ratlr.artifactprovider.ArtifactProvider;
 import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
 import edu.kit.kastel.sdq.lissa.ratlr.classifier.Classifier;
+import edu.kit.kastel.sdq.lissa.ratlr.classifier.DeadLetterFile;
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.Configuration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementStore;
 import edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator.EmbeddingCreator;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.TraceLink;
 import edu.kit.kastel.sdq.lissa.ratlr.postprocessor.TraceLinkIdPostprocessor;
 import edu.kit.kastel.sdq.lissa.ratlr.preprocessor.Preprocessor;
@@ -79,6 +82,16 @@ public class Evaluation {
     private ResultAggregator aggregator;
     /** Postprocessor for trace link IDs */
     private TraceLinkIdPostprocessor traceLinkIdPostProcessor;
+    /** File of the classification tasks that failed permanently */
+    private DeadLetterFile deadLetterFile;
+    /**
+     * Fingerprint of the embedding creator configuration, used with the fingerprint of the prepared creator to
+     * validate persistent store indices
+     */
+    private String embeddingFingerprint;
+
+    /** Whether the embedding creator has been prepared for the target elements */
+    private boolean embeddingCreatorPrepared;
 
     /**
      * Creates a new evaluation instance with the specified configuration file.
@@ -111,6 +124,7 @@ public class Evaluation {
      *     <li>Creates classifier</li>
      *     <li>Creates result aggregator</li>
      *     <li>Creates trace link ID postprocessor</li>
+     *     <li>Registers the dead letter file for failed classification tasks</li>
      * </ol>
      *
      * @throws IOException If there are issues reading the configuration
@@ -140,6 +154,11 @@ public class Evaluation {
                 configuration.traceLinkIdPostprocessor(), contextStore);
 
         configuration.serializeAndDestroyConfiguration();
+        var deadLetterFileName = "deadLetters-"
+                + configuration.getConfigurationIdentifierForFile(configFile.getFileName().toString()) + ".jsonl";
+        deadLetterFile = new DeadLetterFile(Path.of(deadLetterFileName));
+        contextStore.createContext(deadLetterFile);
+        embeddingFingerprint = configuration.embeddingCreator().toString();
     }
 
     /**
@@ -157,7 +176,7 @@ public class Evaluation {
      * <ol>
      *     <li>Loads artifacts from providers</li>
      *     <li>Preprocesses artifacts into elements</li>
-     *     <li>Calculates embeddings for elements</li>
+     *     <li>Calculates embeddings for the elements to compare</li>
      *     <li>Builds element stores</li>
      *     <li>Classifies potential trace links</li>
      *     <li>Aggregates results</li>
@@ -177,13 +196,9 @@ public class Evaluation {
         var sourceElements = sourcePreprocessor.preprocess(sourceArtifacts);
         var targetElements = targetPreprocessor.preprocess(targetArtifacts);
 
-        logger.info("Calculating embeddings");
-        var sourceEmbeddings = embeddingCreator.calculateEmbeddings(sourceElements);
-        var targetEmbeddings = embeddingCreator.calculateEmbeddings(targetElements);
-
         logger.info("Building element stores");
-        sourceStore.setup(sourceElements, sourceEmbeddings);
-        targetStore.setup(targetElements, targetEmbeddings);
+        setupStore(sourceStore, sourceElements, targetElements);
+        setupStore(targetStore, targetElements, targetElements);
 
         logger.info("Classifying Tracelinks");
         var llmResults = classifier.classify(sourceStore, targetStore);
@@ -193,6 +208,13 @@ public class Evaluation {
         traceLinks = traceLinkIdPostProcessor.postprocess(traceLinks);
 
         logger.info("Evaluating Results");
+        if (deadLetterFile.size() > 0) {
+            logger.warn(
+                    "The statistics are incomplete: {} classification tasks failed and were treated as unrelated"
+                            + " (see {})",
+                    deadLetterFile.size(),
+                    deadLetterFile.file());
+        }
         Statistics.generateStatistics(
                 traceLinks, configFile.toFile(), configuration, sourceArtifacts.size(), targetArtifacts.size());
         Statistics.saveTraceLinks(traceLinks, configFile.toFile(), configuration);
@@ -202,6 +224,87 @@ public class Evaluation {
         return traceLinks;
     }
 
+    /**
+     * Creates the persistent indices of the element stores that have an {@code index_file} configured.
+     * This runs the pipeline up to the element stores: the artifacts are loaded and preprocessed, the embeddings
+     * are calculated, and the stores (including the search structures of their retrieval strategies) are built
+     * and written to their index files. Later runs with the same configuration load the stores from these files.
+     *
+     * @return The number of written index files
+     */
+    public int index() {
+        if (!sourceStore.hasIndexFile() && !targetStore.hasIndexFile()) {
+            logger.warn("No element store of '{}' configures an index_file, nothing to index", configFile);
+            return 0;
+        }
+
+        logger.info("Loading artifacts");
+        var sourceArtifacts = sourceArtifactProvider.getArtifacts();
+        var targetArtifacts = targetArtifactProvider.getArtifacts();
+
+        logger.info("Preprocessing artifacts");
+        var sourceElements = sourcePreprocessor.preprocess(sourceArtifacts);
+        var targetElements = targetPreprocessor.preprocess(targetArtifacts);
+
+        logger.info("Building element stores");
+        prepareEmbeddingCreator(targetElements);
+        int written = 0;
+        if (sourceStore.hasIndexFile()) {
+            writeIndex(sourceStore, sourceElements);
+            written++;
+        }
+        if (targetStore.hasIndexFile()) {
+            writeIndex(targetStore, targetElements);
+            written++;
+        }
+
+        CacheManager.getDefaultInstance().flush();
+        return written;
+    }
+
+    /**
+     * Sets up an element store from calculated embeddings and writes its persistent index.
+     */
+    private void writeIndex(ElementStore store, List<Element> elements) {
+        logger.info("Calculating embeddings");
+        store.setup(elements, embeddingCreator.calculateEmbeddings(elements));
+        store.writeIndex(indexFingerprint());
+    }
+
+    /**
+     * Sets up an element store from its persistent index if possible, otherwise from calculated embeddings.
+     * Only the elements to compare are embedded right away, the others when they are requested from the store.
+     * The embedding creator is prepared first, as an index is only valid for the same prepared creator.
+     */
+    private void setupStore(ElementStore store, List<Element> elements, List<Element> targetElements) {
+        prepareEmbeddingCreator(targetElements);
+        if (store.setupFromIndex(elements, indexFingerprint())) {
+            return;
+        }
+        logger.info("Calculating embeddings");
+        store.setup(elements, embeddingCreator::calculateEmbeddings);
+    }
+
+    /**
+     * Prepares the embedding creator for the target elements (see {@link EmbeddingCreator#prepare(List)}) once,
+     * before the first embeddings are calculated.
+     */
+    private void prepareEmbeddingCreator(List<Element> targetElements) {
+        if (!embeddingCreatorPrepared) {
+            embeddingCreator.prepare(targetElements);
+            embeddingCreatorPrepared = true;
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the embeddings in the persistent indices: the configuration of the embedding
+     * creator and, e.g., the PCA projection it was prepared with (see {@link EmbeddingCreator#fingerprint()}).
+     */
+    private String indexFingerprint() {
+        String prepared = embeddingCreator.fingerprint();
+        return prepared.isEmpty() ? embeddingFingerprint : embeddingFingerprint + ":" + prepared;
+    }
+
     /**
      * Gets the number of source artifacts in this evaluation.
      *
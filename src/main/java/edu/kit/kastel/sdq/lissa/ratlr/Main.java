@@ -42,7 +42,7 @@ import edu.kit.kastel.sdq.lissa.ratlr.resultaggregator.ResultAggregator;
  *     <li>Initialize components (providers, preprocessors, etc.)</li>
  *     <li>Load artifacts from source and target providers</li>
  *     <li>Preprocess artifacts into elements</li>
- *     <li>Calculate embeddings for elements</li>
+ *     <li>Calculate embeddings for the elements to compare</li>
  *     <li>Build element stores for efficient access</li>
  *     <li>Classify potential trace links</li>
  *     <li>Aggregate results into final trace links</li>
@@ -107,13 +107,10 @@ public class Main {
         var sourceElements = sourcePreprocessor.preprocess(sourceArtifacts);
         var targetElements = targetPreprocessor.preprocess(targetArtifacts);
 
-        logger.info("Calculating embeddings");
-        var sourceEmbeddings = embeddingCreator.calculateEmbeddings(sourceElements);
-        var targetEmbeddings = embeddingCreator.calculateEmbeddings(targetElements);
-
-        logger.info("Building element stores");
-        sourceStore.setup(sourceElements, sourceEmbeddings);
-        targetStore.setup(targetElements, targetEmbeddings);
+        logger.info("Calculating embeddings and building element stores");
+        embeddingCreator.prepare(targetElements);
+        sourceStore.setup(sourceElements, embeddingCreator::calculateEmbeddings);
+        targetStore.setup(targetElements, embeddingCreator::calculateEmbeddings);
 
         logger.info("Classifying Tracelinks");
         var llmResults = classifier.classify(sourceStore, targetStore);
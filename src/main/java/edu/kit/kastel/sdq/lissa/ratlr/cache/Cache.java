@@ -1,6 +1,9 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.cache;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Interface for cache implementations in the LiSSA framework.
  * This interface defines the contract for caching mechanisms that store and retrieve
@@ -17,6 +20,24 @@ public interface Cache {
      */
     <T> T get(CacheKey key, Class<T> clazz);
 
+    /**
+     * Retrieves the values of many keys from the cache and deserializes them to the specified type.
+     * Implementations should look up all keys together, e.g., with a single round trip to a remote cache.
+     * The default implementation calls {@link #get(CacheKey, Class)} for each key.
+     *
+     * @param <T> The type to deserialize the cached values to
+     * @param keys The cache keys to look up
+     * @param clazz The class of the type to deserialize to
+     * @return The deserialized values in the order of the keys, {@code null} for keys that were not found
+     */
+    default <T> List<T> getAll(List<CacheKey> keys, Class<T> clazz) {
+        List<T> values = new ArrayList<>(keys.size());
+        for (CacheKey key : keys) {
+            values.add(get(key, clazz));
+        }
+        return values;
+    }
+
     /**
      * Stores a string value in the cache.
      *
@@ -120,6 +120,17 @@ public final class CacheManager {
         return getCache(path.getFileName().toString(), false);
     }
 
+    /**
+     * Resolves a file in the cache directory, e.g., for data that is derived from cached results but is not a cache
+     * itself.
+     *
+     * @param fileName The name of the file
+     * @return The path of the file in the cache directory
+     */
+    public Path resolve(String fileName) {
+        return directoryOfCaches.resolve(fileName);
+    }
+
     /**
      * Flushes all caches managed by this cache manager.
      * This ensures that all pending changes are written to disk.
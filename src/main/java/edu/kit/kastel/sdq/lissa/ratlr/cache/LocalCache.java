@@ -119,6 +119,20 @@ class LocalCache {
         return cache.get(key.localKey());
     }
 
+    /**
+     * Retrieves the values of many keys from the cache while holding the lock only once.
+     *
+     * @param keys The cache keys to look up
+     * @return The cached values in the order of the keys, {@code null} for keys that were not found
+     */
+    public synchronized List<String> getAll(List<CacheKey> keys) {
+        List<String> values = new ArrayList<>(keys.size());
+        for (CacheKey key : keys) {
+            values.add(cache.get(key.localKey()));
+        }
+        return values;
+    }
+
     /**
      * Stores a value in the cache.
      * If the value is different from the existing value (if any), the dirty counter is incremented.
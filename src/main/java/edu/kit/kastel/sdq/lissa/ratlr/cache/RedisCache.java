@@ -12,6 +12,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Environment;
 
+import redis.clients.jedis.Response;
 import redis.clients.jedis.UnifiedJedis;
 
 /**
@@ -105,6 +106,63 @@ class RedisCache implements Cache {
         return convert(jsonData, clazz);
     }
 
+    /**
+     * Retrieves the values of many keys. All keys are requested from Redis in a single pipeline; keys that are
+     * not found there are looked up in the local cache and, if found, synchronized to Redis in a second pipeline.
+     *
+     * @param <T> The type to deserialize the values to
+     * @param keys The cache keys to look up
+     * @param clazz The class of the type to deserialize to
+     * @return The deserialized values in the order of the keys, {@code null} for keys that were not found
+     */
+    @Override
+    public synchronized <T> List<T> getAll(List<CacheKey> keys, Class<T> clazz) {
+        List<String> jsonData = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        if (jedis != null) {
+            List<Response<String>> responses = new ArrayList<>(keys.size());
+            try (var pipeline = jedis.pipelined()) {
+                for (CacheKey key : keys) {
+                    responses.add(pipeline.hget(key.toJsonKey(), "data"));
+                }
+                pipeline.sync();
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                jsonData.set(i, responses.get(i).get());
+            }
+        }
+
+        if (localCache != null && jsonData.contains(null)) {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                if (jsonData.get(i) == null) {
+                    missing.add(i);
+                }
+            }
+            List<String> localData = localCache.getAll(missing.stream().map(keys::get).toList());
+            List<Integer> synchronize = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                if (localData.get(i) != null) {
+                    jsonData.set(missing.get(i), localData.get(i));
+                    synchronize.add(missing.get(i));
+                }
+            }
+            if (jedis != null && !synchronize.isEmpty()) {
+                try (var pipeline = jedis.pipelined()) {
+                    for (int index : synchronize) {
+                        pipeline.hset(keys.get(index).toJsonKey(), "data", jsonData.get(index));
+                    }
+                    pipeline.sync();
+                }
+            }
+        }
+
+        List<T> values = new ArrayList<>(keys.size());
+        for (String data : jsonData) {
+            values.add(convert(data, clazz));
+        }
+        return values;
+    }
+
     /**
      * Converts a JSON string to an object of the specified type.
      * If the target type is String, the JSON string is returned as is.
@@ -5,7 +5,8 @@ import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 
 /**
  * Enum representing supported chat language model platforms.
- * Each platform specifies the number of threads to use for parallel execution.
+ * Each platform specifies the number of concurrent requests to start with; the limiter of each model adapts it to
+ * the capacity of the model (see {@link ChatLanguageModelProvider#concurrencyLimiter()}).
  *
  * <ul>
  *   <li>OPENAI: OpenAI platform (100 threads)</li>
@@ -43,9 +44,9 @@ public enum ChatLanguageModelPlatform {
     }
 
     /**
-     * Returns the number of threads for this platform.
+     * Returns the number of concurrent requests to start with for this platform.
      *
-     * @return the thread count
+     * @return the initial thread count
      */
     public int getThreads() {
         return threads;
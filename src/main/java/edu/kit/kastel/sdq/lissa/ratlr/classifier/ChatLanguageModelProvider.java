@@ -7,6 +7,8 @@ import java.util.Base64;
 import java.util.Map;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.CircuitBreaker;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.ConcurrencyLimiter;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Environment;
 
 import dev.langchain4j.model.chat.ChatModel;
@@ -40,6 +42,12 @@ import dev.langchain4j.model.openai.OpenAiChatModel;
  *   </li>
  * </ul>
  *
+ * The requests to a model are limited by a {@link ConcurrencyLimiter} that is shared by all users of the model.
+ * It starts with the number of threads of the platform and adapts to the capacity of the model up to
+ * {@code max_concurrency} concurrent requests (see {@link #threads(ModuleConfiguration)}).
+ * Failing requests are retried with backoff, and a {@link CircuitBreaker} shared by all users of the model stops
+ * the requests while the model keeps failing (see {@link ChatResilienceOptions} for the arguments).
+ *
  * @see ChatLanguageModelPlatform
  */
 public class ChatLanguageModelProvider {
@@ -53,6 +61,13 @@ public class ChatLanguageModelProvider {
      */
     public static final double DEFAULT_TEMPERATURE = 0.0;
 
+    private static final String MAX_CONCURRENCY_KEY = "max_concurrency";
+
+    /**
+     * Timeout of a single request to Ollama, unless {@code timeout_seconds} is configured.
+     */
+    private static final Duration DEFAULT_OLLAMA_TIMEOUT = Duration.ofMinutes(15);
+
     /**
      * The platform to use for the language model.
      */
@@ -73,6 +88,21 @@ public class ChatLanguageModelProvider {
      */
     private double temperature;
 
+    /**
+     * The limiter of the concurrent requests to the model.
+     */
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * The circuit breaker of the model.
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * The retry, timeout and circuit breaker options.
+     */
+    private ChatResilienceOptions resilienceOptions;
+
     /**
      * Creates a new chat language model provider with the specified configuration.
      * The configuration name should be in the format "mode_platform" (e.g., "simple_openai").
@@ -86,17 +116,25 @@ public class ChatLanguageModelProvider {
 
     /**
      * Creates a chat model instance based on the configured platform.
+     * The requests of the model are sent via the concurrency limiter and the circuit breaker of the model and
+     * are retried after transient failures (see {@link ResilientChatModel}).
      *
      * @return A chat model instance for the configured platform
      * @throws IllegalArgumentException If the platform is not supported
      */
     public ChatModel createChatModel() {
-        return switch (platform) {
-            case OPENAI -> createOpenAiChatModel(modelName, seed, temperature);
-            case OLLAMA -> createOllamaChatModel(modelName, seed, temperature);
-            case BLABLADOR -> createBlabladorChatModel(modelName, seed, temperature);
-            case DEEPSEEK -> createDeepSeekChatModel(modelName, seed, temperature);
+        Duration timeout = resilienceOptions.timeout();
+        ChatModel platformModel = switch (platform) {
+            case OPENAI -> createOpenAiChatModel(modelName, seed, temperature, timeout);
+            case OLLAMA -> createOllamaChatModel(modelName, seed, temperature, timeout);
+            case BLABLADOR -> createBlabladorChatModel(modelName, seed, temperature, timeout);
+            case DEEPSEEK -> createDeepSeekChatModel(modelName, seed, temperature, timeout);
         };
+        return new ResilientChatModel(platformModel, endpoint(), concurrencyLimiter, circuitBreaker, resilienceOptions);
+    }
+
+    private String endpoint() {
+        return platform.name() + ":" + modelName;
     }
 
     /**
@@ -111,6 +149,12 @@ public class ChatLanguageModelProvider {
         this.modelName = configuration.argumentAsString(modelKey, platform.getDefaultModel());
         this.seed = configuration.argumentAsInt("seed", DEFAULT_SEED);
         this.temperature = configuration.argumentAsDouble("temperature", DEFAULT_TEMPERATURE);
+        int maxConcurrency = maxConcurrency(configuration, platform);
+        this.concurrencyLimiter = ConcurrencyLimiter.forEndpoint(
+                endpoint(), Math.min(platform.getThreads(), maxConcurrency), maxConcurrency);
+        this.resilienceOptions = ChatResilienceOptions.fromConfiguration(configuration);
+        this.circuitBreaker = CircuitBreaker.forEndpoint(
+                endpoint(), resilienceOptions.breakerFailures(), resilienceOptions.breakerOpenDuration());
     }
 
     /**
@@ -141,14 +185,34 @@ public class ChatLanguageModelProvider {
     }
 
     /**
-     * Determines the number of threads to use based on the platform.
-     * OpenAI and Blablador platforms use 100 threads, while others use 1.
+     * Gets the limiter of the concurrent requests to the model.
+     * All requests to the model should be sent via {@link ConcurrencyLimiter#call(java.util.function.Supplier)}.
+     *
+     * @return The limiter shared by all users of the model
+     */
+    public ConcurrencyLimiter concurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Determines the number of threads to use, i.e., the maximum number of concurrent requests to the model.
+     * The actual number of concurrent requests is adapted by the {@link #concurrencyLimiter() limiter} of the model,
+     * starting with the threads of the platform (100 for OpenAI and Blablador, 1 for the others).
+     * The maximum is given by {@code max_concurrency} (default: see {@link ConcurrencyLimiter#defaultMaxLimit(int)}).
+     * Hence, classifiers use parallel workers for all platforms, also for those that start with a single request;
+     * they classify sequentially only if {@code max_concurrency} is {@code 1}.
      *
      * @param configuration The module configuration
      * @return The number of threads to use
      */
     public static int threads(ModuleConfiguration configuration) {
-        return ChatLanguageModelPlatform.fromModuleConfiguration(configuration).getThreads();
+        return maxConcurrency(configuration, ChatLanguageModelPlatform.fromModuleConfiguration(configuration));
+    }
+
+    private static int maxConcurrency(ModuleConfiguration configuration, ChatLanguageModelPlatform platform) {
+        return configuration.hasArgument(MAX_CONCURRENCY_KEY)
+                ? configuration.argumentAsInt(MAX_CONCURRENCY_KEY)
+                : ConcurrencyLimiter.defaultMaxLimit(platform.getThreads());
     }
 
     /**
@@ -158,9 +222,11 @@ public class ChatLanguageModelProvider {
      * @param model The name of the model to use
      * @param seed The seed value for randomization
      * @param temperature The temperature setting for the model
+     * @param timeout The timeout of a single request; {@code null} for 15 minutes
      * @return A configured Ollama chat model instance
      */
-    private static OllamaChatModel createOllamaChatModel(String model, int seed, double temperature) {
+    private static OllamaChatModel createOllamaChatModel(
+            String model, int seed, double temperature, Duration timeout) {
         String host = Environment.getenv("OLLAMA_HOST");
         String user = Environment.getenv("OLLAMA_USER");
         String password = Environment.getenv("OLLAMA_PASSWORD");
@@ -168,7 +234,8 @@ public class ChatLanguageModelProvider {
         var ollama = OllamaChatModel.builder()
                 .baseUrl(host)
                 .modelName(model)
-                .timeout(Duration.ofMinutes(15))
+                .timeout(timeout != null ? timeout : DEFAULT_OLLAMA_TIMEOUT)
+                .maxRetries(0)
                 .temperature(temperature)
                 .seed(seed);
         if (user != null && password != null && !user.isEmpty() && !password.isEmpty()) {
@@ -188,10 +255,12 @@ public class ChatLanguageModelProvider {
      * @param model The name of the model to use
      * @param seed The seed value for randomization
      * @param temperature The temperature setting for the model
+     * @param timeout The timeout of a single request; {@code null} for the default of the client library
      * @return A configured OpenAI chat model instance
      * @throws IllegalStateException If required environment variables are not set
      */
-    private static OpenAiChatModel createOpenAiChatModel(String model, int seed, double temperature) {
+    private static OpenAiChatModel createOpenAiChatModel(
+            String model, int seed, double temperature, Duration timeout) {
         String openAiOrganizationId = Environment.getenv("OPENAI_ORGANIZATION_ID");
         String openAiApiKey = Environment.getenv("OPENAI_API_KEY");
         if (openAiOrganizationId == null || openAiApiKey == null) {
@@ -201,6 +270,8 @@ public class ChatLanguageModelProvider {
                 .modelName(model)
                 .organizationId(openAiOrganizationId)
                 .apiKey(openAiApiKey)
+                .timeout(timeout)
+                .maxRetries(0)
                 .temperature(temperature)
                 .seed(seed)
                 .build();
@@ -213,10 +284,12 @@ public class ChatLanguageModelProvider {
      * @param model The name of the model to use
      * @param seed The seed value for randomization
      * @param temperature The temperature setting for the model
+     * @param timeout The timeout of a single request; {@code null} for the default of the client library
      * @return A configured Blablador chat model instance
      * @throws IllegalStateException If required environment variables are not set
      */
-    private static OpenAiChatModel createBlabladorChatModel(String model, int seed, double temperature) {
+    private static OpenAiChatModel createBlabladorChatModel(
+            String model, int seed, double temperature, Duration timeout) {
         String blabladorApiKey = Environment.getenv("BLABLADOR_API_KEY");
         if (blabladorApiKey == null) {
             throw new IllegalStateException("BLABLADOR_API_KEY environment variable not set");
@@ -225,6 +298,8 @@ public class ChatLanguageModelProvider {
                 .baseUrl("https://api.helmholtz-blablador.fz-juelich.de/v1")
                 .modelName(model)
                 .apiKey(blabladorApiKey)
+                .timeout(timeout)
+                .maxRetries(0)
                 .temperature(temperature)
                 .seed(seed)
                 .build();
@@ -237,10 +312,12 @@ public class ChatLanguageModelProvider {
      * @param model The name of the model to use
      * @param seed The seed value for randomization
      * @param temperature The temperature setting for the model
+     * @param timeout The timeout of a single request; {@code null} for the default of the client library
      * @return A configured DeepSeek chat model instance
      * @throws IllegalStateException If required environment variables are not set
      */
-    private static OpenAiChatModel createDeepSeekChatModel(String model, int seed, double temperature) {
+    private static OpenAiChatModel createDeepSeekChatModel(
+            String model, int seed, double temperature, Duration timeout) {
         String deepseekApiKey = Environment.getenv("DEEPSEEK_API_KEY");
         if (deepseekApiKey == null) {
             throw new IllegalStateException("DEEPSEEK_API_KEY environment variable not set");
@@ -249,6 +326,8 @@ public class ChatLanguageModelProvider {
                 .baseUrl("https://api.deepseek.com/v1")
                 .modelName(model)
                 .apiKey(deepseekApiKey)
+                .timeout(timeout)
+                .maxRetries(0)
                 .temperature(temperature)
                 .seed(seed)
                 .build();
@@ -0,0 +1,93 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.classifier;
+
+import java.time.Duration;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+
+/**
+ * Options for how a {@link ResilientChatModel} handles failing requests: retries, timeouts and the circuit
+ * breaker of the model.
+ *
+ * @param maxRetries The maximum number of retries of a request after a transient failure ({@code max_retries},
+ *                   default: 5)
+ * @param initialBackoff The backoff before the first retry; it doubles with each retry and is jittered
+ *                       ({@code initial_backoff_ms}, default: 1000 ms)
+ * @param maxBackoff The maximum backoff before a retry, unless the platform asks for a longer one
+ *                   ({@code max_backoff_ms}, default: 60000 ms)
+ * @param timeout The timeout of a single request ({@code timeout_seconds}); {@code null} for the default of the
+ *                platform (15 minutes for Ollama, the default of the client library otherwise)
+ * @param deadline The time after which a request is not retried anymore, including all retries and backoffs
+ *                 ({@code deadline_seconds}); {@code null} for no deadline
+ * @param breakerFailures The number of consecutive transient failures that open the circuit breaker of the model
+ *                        ({@code circuit_breaker_failures}, default: 10)
+ * @param breakerOpenDuration The time the circuit breaker stays open ({@code circuit_breaker_open_seconds},
+ *                            default: 30 s)
+ */
+record ChatResilienceOptions(
+        int maxRetries,
+        Duration initialBackoff,
+        Duration maxBackoff,
+        Duration timeout,
+        Duration deadline,
+        int breakerFailures,
+        Duration breakerOpenDuration) {
+    static final ChatResilienceOptions DEFAULT = new ChatResilienceOptions(
+            5, Duration.ofSeconds(1), Duration.ofMinutes(1), null, null, 10, Duration.ofSeconds(30));
+
+    private static final String MAX_RETRIES_KEY = "max_retries";
+    private static final String INITIAL_BACKOFF_KEY = "initial_backoff_ms";
+    private static final String MAX_BACKOFF_KEY = "max_backoff_ms";
+    private static final String TIMEOUT_KEY = "timeout_seconds";
+    private static final String DEADLINE_KEY = "deadline_seconds";
+    private static final String BREAKER_FAILURES_KEY = "circuit_breaker_failures";
+    private static final String BREAKER_OPEN_KEY = "circuit_breaker_open_seconds";
+
+    ChatResilienceOptions {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("max_retries must not be negative.");
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("The backoffs must satisfy 0 <= initial_backoff_ms <= max_backoff_ms.");
+        }
+        if ((timeout != null && !timeout.isPositive()) || (deadline != null && !deadline.isPositive())) {
+            throw new IllegalArgumentException("timeout_seconds and deadline_seconds must be greater than 0.");
+        }
+        if (breakerFailures < 1 || breakerOpenDuration.isNegative()) {
+            throw new IllegalArgumentException(
+                    "circuit_breaker_failures must be greater than 0 and circuit_breaker_open_seconds must not be"
+                            + " negative.");
+        }
+    }
+
+    /**
+     * Reads the options from the configuration of a classifier or preprocessor.
+     *
+     * @param configuration The configuration of the component that uses the chat model
+     * @return The configured options, with defaults for absent arguments
+     */
+    static ChatResilienceOptions fromConfiguration(ModuleConfiguration configuration) {
+        return new ChatResilienceOptions(
+                configuration.hasArgument(MAX_RETRIES_KEY)
+                        ? configuration.argumentAsInt(MAX_RETRIES_KEY)
+                        : DEFAULT.maxRetries(),
+                configuration.hasArgument(INITIAL_BACKOFF_KEY)
+                        ? Duration.ofMillis(configuration.argumentAsInt(INITIAL_BACKOFF_KEY))
+                        : DEFAULT.initialBackoff(),
+                configuration.hasArgument(MAX_BACKOFF_KEY)
+                        ? Duration.ofMillis(configuration.argumentAsInt(MAX_BACKOFF_KEY))
+                        : DEFAULT.maxBackoff(),
+                configuration.hasArgument(TIMEOUT_KEY)
+                        ? Duration.ofSeconds(configuration.argumentAsInt(TIMEOUT_KEY))
+                        : DEFAULT.timeout(),
+                configuration.hasArgument(DEADLINE_KEY)
+                        ? Duration.ofSeconds(configuration.argumentAsInt(DEADLINE_KEY))
+                        : DEFAULT.deadline(),
+                configuration.hasArgument(BREAKER_FAILURES_KEY)
+                        ? configuration.argumentAsInt(BREAKER_FAILURES_KEY)
+                        : DEFAULT.breakerFailures(),
+                configuration.hasArgument(BREAKER_OPEN_KEY)
+                        ? Duration.ofSeconds(configuration.argumentAsInt(BREAKER_OPEN_KEY))
+                        : DEFAULT.breakerOpenDuration());
+    }
+}
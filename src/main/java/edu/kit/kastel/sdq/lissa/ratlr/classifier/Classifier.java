@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,10 @@ import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
  * which is initialized in the constructor and available to all subclasses.
  * Subclasses should not duplicate context handling.
  * </p>
+ * <p>
+ * A task whose classification fails (e.g., because its requests still fail after all retries or its answer is
+ * invalid) does not abort the classification. It is logged and, if the context store contains a {@link DeadLetterFile}, written to it.
+ * </p>
  */
 public abstract class Classifier {
     /**
@@ -44,7 +49,8 @@ public abstract class Classifier {
     /**
      * Creates a new classifier with the specified number of threads and context store.
      *
-     * @param threads The number of threads to use for parallel processing
+     * @param threads The number of threads to use for parallel processing, i.e., the maximum number of concurrent
+     *                requests
      * @param contextStore The shared context store for pipeline components
      */
     protected Classifier(int threads, ContextStore contextStore) {
@@ -73,6 +79,9 @@ public abstract class Classifier {
     /**
      * Performs parallel classification of trace links using virtual threads.
      * Each thread processes tasks from a shared queue and adds results to a concurrent collection.
+     * The number of threads is the maximum number of concurrent requests; the requests that are actually sent
+     * concurrently are limited by the {@link ChatLanguageModelProvider#concurrencyLimiter() limiter} of the model,
+     * so that cached classifications are not held back by it.
      *
      * @param tasks The list of element pairs to classify
      * @return A list of classification results
@@ -80,9 +89,10 @@ public abstract class Classifier {
     protected final List<ClassificationResult> parallelClassify(List<Pair<Element, Element>> tasks) {
         ConcurrentLinkedQueue<ClassificationResult> results = new ConcurrentLinkedQueue<>();
         ConcurrentLinkedQueue<Pair<Element, Element>> taskQueue = new ConcurrentLinkedQueue<>(tasks);
+        AtomicInteger failures = new AtomicInteger();
 
-        Thread[] workers = new Thread[threads];
-        for (int i = 0; i < threads; i++) {
+        Thread[] workers = new Thread[Math.max(1, Math.min(threads, tasks.size()))];
+        for (int i = 0; i < workers.length; i++) {
             workers[i] = Thread.ofVirtual().start(new Runnable() {
                 private final Classifier copy = copyOf();
 
@@ -93,7 +103,7 @@ public abstract class Classifier {
                         if (pair == null) {
                             return;
                         }
-                        var result = copy.classify(pair.first(), pair.second());
+                        var result = copy.classifyOrDeadLetter(pair, failures);
                         logger.debug(
                                 "Classified (P) {} with {}: {}",
                                 pair.first().getIdentifier(),
@@ -118,6 +128,7 @@ public abstract class Classifier {
 
         List<ClassificationResult> resultList = new ArrayList<>(results);
         logger.info("Finished parallel classification with {} results.", resultList.size());
+        logFailures(failures.get());
         return resultList;
     }
 
@@ -128,10 +139,11 @@ public abstract class Classifier {
      * @param tasks The list of element pairs to classify
      * @return A list of classification results
      */
-    private List<ClassificationResult> sequentialClassify(List<Pair<Element, Element>> tasks) {
+    protected final List<ClassificationResult> sequentialClassify(List<Pair<Element, Element>> tasks) {
         List<ClassificationResult> results = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
         for (var task : tasks) {
-            var result = classify(task.first(), task.second());
+            var result = classifyOrDeadLetter(task, failures);
             logger.debug(
                     "Classified {} with {}: {}",
                     task.first().getIdentifier(),
@@ -140,9 +152,51 @@ public abstract class Classifier {
             result.ifPresent(results::add);
         }
         logger.info("Finished sequential classification with {} results.", results.size());
+        logFailures(failures.get());
         return results;
     }
 
+    /**
+     * Classifies a pair of elements. If the classification fails, whether its requests still failed after all
+     * retries (see {@link ResilientChatModel#isRetriedFailure(Throwable)}) or could not be retried, the pair is
+     * logged, written to the {@link DeadLetterFile} if there is one, and treated as unrelated.
+     *
+     * @param task The element pair to classify
+     * @param failures The counter of failed tasks
+     * @return A classification result if a trace link is found, empty otherwise or if the classification failed
+     */
+    private Optional<ClassificationResult> classifyOrDeadLetter(Pair<Element, Element> task, AtomicInteger failures) {
+        try {
+            return classify(task.first(), task.second());
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.error(
+                    "Classification of {} with {} failed {}: {}",
+                    task.first().getIdentifier(),
+                    task.second().getIdentifier(),
+                    ResilientChatModel.isRetriedFailure(e) ? "after all retries" : "permanently",
+                    e.getMessage(),
+                    e);
+            DeadLetterFile deadLetters = contextStore.getContext(DeadLetterFile.CONTEXT_ID, DeadLetterFile.class);
+            if (deadLetters != null) {
+                deadLetters.add(getClass().getSimpleName(), task.first(), task.second(), e);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private void logFailures(int failures) {
+        if (failures == 0) {
+            return;
+        }
+        DeadLetterFile deadLetters = contextStore.getContext(DeadLetterFile.CONTEXT_ID, DeadLetterFile.class);
+        if (deadLetters != null) {
+            logger.warn("{} classification tasks failed and were written to {}", failures, deadLetters.file());
+        } else {
+            logger.warn("{} classification tasks failed and were treated as unrelated", failures);
+        }
+    }
+
     /**
      * Classifies a pair of elements.
      * This method must be implemented by concrete classifier implementations to define
@@ -165,6 +219,7 @@ public abstract class Classifier {
     /**
      * Creates a list of classification tasks from source and target element stores.
      * Each task represents a pair of elements to be classified.
+     * The candidates of all sources are retrieved from the target store in one batch.
      *
      * @param sourceStore The store containing source elements
      * @param targetStore The store containing target elements
@@ -174,10 +229,11 @@ public abstract class Classifier {
             ElementStore sourceStore, ElementStore targetStore) {
         List<Pair<Element, Element>> tasks = new ArrayList<>();
 
-        for (var source : sourceStore.getAllElements(true)) {
-            var targetCandidates = targetStore.findSimilar(source);
-            for (Element target : targetCandidates) {
-                tasks.add(new Pair<>(source.first(), target));
+        var sources = sourceStore.getAllElements(true);
+        var targetCandidates = targetStore.findSimilarBatch(sources);
+        for (int i = 0; i < sources.size(); i++) {
+            for (Element target : targetCandidates.get(i)) {
+                tasks.add(new Pair<>(sources.get(i).first(), target));
             }
         }
         return tasks;
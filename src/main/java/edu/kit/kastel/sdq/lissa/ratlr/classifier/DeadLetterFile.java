@@ -0,0 +1,121 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.classifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.kit.kastel.sdq.lissa.ratlr.context.Context;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * A JSON Lines file that collects the classification tasks that failed permanently, i.e., whose requests still
+ * failed after all retries or could not be retried. Each line describes one task:
+ * {@code {"time": ..., "classifier": ..., "source": ..., "target": ..., "failure": ..., "error": ...}}.
+ * The failure is {@value #EXHAUSTED} if the requests of the task were retried (see
+ * {@link ResilientChatModel#isRetriedFailure(Throwable)}) and {@value #PERMANENT} otherwise.
+ * The file is created with the first failed task.
+ * <p>
+ * The file is registered in the {@link edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore} with the id
+ * {@value #CONTEXT_ID}. Without it, the classifiers only log failed tasks. As responses are cached, the failed
+ * tasks are classified again by the next run of the same configuration.
+ * </p>
+ */
+public final class DeadLetterFile implements Context {
+    /**
+     * The id of the dead letter file in the context store.
+     */
+    public static final String CONTEXT_ID = "dead_letter_file";
+
+    /**
+     * The failure of a task whose requests still failed after all retries.
+     */
+    public static final String EXHAUSTED = "exhausted";
+
+    /**
+     * The failure of a task that could not be retried, e.g., because its request or answer is invalid.
+     */
+    public static final String PERMANENT = "permanent";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterFile.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+    private int size;
+
+    /**
+     * Creates a dead letter file. The file is not created until the first task is added.
+     *
+     * @param file The path of the file; existing files are appended to
+     */
+    public DeadLetterFile(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getId() {
+        return CONTEXT_ID;
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return The path of the dead letter file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Returns the number of tasks that were added in this run.
+     *
+     * @return The number of failed tasks
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends a failed classification task. If the file cannot be written, the task is logged instead, so that the
+     * classification continues.
+     *
+     * @param classifier The name of the classifier that failed
+     * @param source The source element of the task
+     * @param target The target element of the task
+     * @param failure The failure of the task
+     */
+    public synchronized void add(String classifier, Element source, Element target, Throwable failure) {
+        size++;
+        DeadLetter deadLetter = new DeadLetter(
+                Instant.now().toString(),
+                classifier,
+                source.getIdentifier(),
+                target.getIdentifier(),
+                ResilientChatModel.isRetriedFailure(failure) ? EXHAUSTED : PERMANENT,
+                failure.getClass().getName() + ": " + failure.getMessage());
+        try {
+            Files.writeString(
+                    file,
+                    MAPPER.writeValueAsString(deadLetter) + "\n",
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (JsonProcessingException e) {
+            logger.error("Could not serialize dead letter {}", deadLetter, e);
+        } catch (IOException e) {
+            logger.error("Could not write dead letter {} to {}", deadLetter, file, e);
+        }
+    }
+
+    private record DeadLetter(
+            String time, String classifier, String source, String target, String failure, String error) {}
+}
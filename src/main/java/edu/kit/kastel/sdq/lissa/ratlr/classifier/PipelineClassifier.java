@@ -113,11 +113,7 @@ public class PipelineClassifier extends Classifier {
             if (tasks.isEmpty()) break;
             List<ClassificationResult> classificationResults;
             if (classifier.threads <= 1) {
-                classificationResults = tasks.stream()
-                        .map(e -> classifier.classify(e.first(), e.second()))
-                        .filter(Optional::isPresent)
-                        .map(Optional::get)
-                        .toList();
+                classificationResults = classifier.sequentialClassify(tasks);
             } else {
                 classificationResults = classifier.parallelClassify(tasks).stream()
                         .filter(Objects::nonNull)
@@ -0,0 +1,254 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.classifier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.utils.CircuitBreaker;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.ConcurrencyLimiter;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.NonRetriableException;
+import dev.langchain4j.exception.RetriableException;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+/**
+ * A chat model that sends the requests of another chat model resiliently:
+ * <ul>
+ *     <li>Each attempt is sent via the {@link ConcurrencyLimiter} of the model.</li>
+ *     <li>Transient failures (rate limits, timeouts, server errors, I/O errors) are retried up to
+ *     {@code max_retries} times with exponential backoff and full jitter. If the platform says when to retry
+ *     (a {@code Retry-After} header or a "try again in" hint in the error), the retry waits at least that long.</li>
+ *     <li>No retry is started after the {@code deadline_seconds} of the request; the timeout of a single attempt is
+ *     set on the underlying model (see {@link ChatLanguageModelProvider}).</li>
+ *     <li>The {@link CircuitBreaker} of the model stops sending requests after many consecutive transient failures.
+ *     A request that meets an open breaker waits for it like for a retry.</li>
+ * </ul>
+ * Other failures (e.g., an invalid request or a missing model) are thrown immediately.
+ * {@link #isRetriedFailure(Throwable)} tells both kinds of failures apart.
+ */
+final class ResilientChatModel implements ChatModel {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientChatModel.class);
+
+    private static final Pattern RETRY_AFTER = Pattern.compile("retry-after\"?\\s*[:=]\\s*\"?(\\d+(?:\\.\\d+)?)");
+    private static final Pattern TRY_AGAIN_IN = Pattern.compile("try again in (\\d+(?:\\.\\d+)?)\\s*(ms|s)\\b");
+
+    private final ChatModel delegate;
+    private final String endpoint;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final ChatResilienceOptions options;
+    private final LongSupplier nanoTime;
+    private final LongConsumer sleeper;
+
+    ResilientChatModel(
+            ChatModel delegate,
+            String endpoint,
+            ConcurrencyLimiter concurrencyLimiter,
+            CircuitBreaker circuitBreaker,
+            ChatResilienceOptions options) {
+        this(
+                delegate,
+                endpoint,
+                concurrencyLimiter,
+                circuitBreaker,
+                options,
+                System::nanoTime,
+                ResilientChatModel::sleep);
+    }
+
+    ResilientChatModel(
+            ChatModel delegate,
+            String endpoint,
+            ConcurrencyLimiter concurrencyLimiter,
+            CircuitBreaker circuitBreaker,
+            ChatResilienceOptions options,
+            LongSupplier nanoTime,
+            LongConsumer sleeper) {
+        this.delegate = delegate;
+        this.endpoint = endpoint;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.options = options;
+        this.nanoTime = nanoTime;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Determines whether a failure is one that this model retries, i.e., a transient failure or an open circuit
+     * breaker. If such a failure is thrown by this model, the request exhausted its retries or its deadline.
+     *
+     * @param failure The failure of a request
+     * @return {@code true} if the failure or one of its causes is retried by this model
+     */
+    static boolean isRetriedFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreakerOpenException) {
+                return true;
+            }
+        }
+        return isTransient(failure);
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        return send(() -> delegate.chat(chatRequest));
+    }
+
+    @Override
+    public String chat(String userMessage) {
+        return send(() -> delegate.chat(userMessage));
+    }
+
+    @Override
+    public ChatResponse chat(ChatMessage... messages) {
+        return send(() -> delegate.chat(messages));
+    }
+
+    @Override
+    public ChatResponse chat(List<ChatMessage> messages) {
+        return send(() -> delegate.chat(messages));
+    }
+
+    private <T> T send(Supplier<T> request) {
+        long start = nanoTime.getAsLong();
+        for (int attempt = 0; ; attempt++) {
+            long breakerWait = circuitBreaker.tryAcquire();
+            if (breakerWait > 0) {
+                if (attempt >= options.maxRetries() || exceedsDeadline(start, breakerWait)) {
+                    throw new CircuitBreakerOpenException("The circuit breaker of " + endpoint + " is open");
+                }
+                sleeper.accept(breakerWait);
+                continue;
+            }
+
+            RuntimeException failure;
+            try {
+                T response = concurrencyLimiter.call(request);
+                circuitBreaker.onSuccess();
+                return response;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            if (!isTransient(failure)) {
+                circuitBreaker.onSuccess();
+                throw failure;
+            }
+            circuitBreaker.onFailure();
+            long backoff = backoffNanos(attempt, failure);
+            if (attempt >= options.maxRetries() || exceedsDeadline(start, backoff)) {
+                throw failure;
+            }
+            logger.warn(
+                    "Request to {} failed ({}), retry {} of {} in {} ms",
+                    endpoint,
+                    failure.getMessage(),
+                    attempt + 1,
+                    options.maxRetries(),
+                    Duration.ofNanos(backoff).toMillis());
+            sleeper.accept(backoff);
+        }
+    }
+
+    private boolean exceedsDeadline(long start, long wait) {
+        return options.deadline() != null
+                && nanoTime.getAsLong() + wait - start > options.deadline().toNanos();
+    }
+
+    /**
+     * Returns the backoff before the next attempt: a random time up to the exponential backoff of the attempt
+     * (full jitter), or at least the time the platform asked for.
+     */
+    private long backoffNanos(int attempt, RuntimeException failure) {
+        long exponential = options.initialBackoff().toNanos() << Math.min(attempt, 20);
+        long capped = Math.min(Math.max(0, exponential), options.maxBackoff().toNanos());
+        long jittered = capped == 0 ? 0 : ThreadLocalRandom.current().nextLong(capped + 1);
+        Duration retryAfter = retryAfter(failure);
+        if (retryAfter == null) {
+            return jittered;
+        }
+        // Spread the retries of all workers that were told to wait the same time
+        return retryAfter.toNanos() + jittered / 4;
+    }
+
+    /**
+     * Extracts the time the platform asked to wait from the failure. The client library does not expose the
+     * headers of the response, so the {@code Retry-After} header is only found if the error message contains it,
+     * as well as the "Please try again in 1.5s" hint of OpenAI-compatible platforms.
+     */
+    private static Duration retryAfter(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message == null) {
+                continue;
+            }
+            String lowerCaseMessage = message.toLowerCase(Locale.ROOT);
+            Matcher retryAfter = RETRY_AFTER.matcher(lowerCaseMessage);
+            if (retryAfter.find()) {
+                return Duration.ofMillis((long) (Double.parseDouble(retryAfter.group(1)) * 1000));
+            }
+            Matcher tryAgainIn = TRY_AGAIN_IN.matcher(lowerCaseMessage);
+            if (tryAgainIn.find()) {
+                double value = Double.parseDouble(tryAgainIn.group(1));
+                return Duration.ofMillis((long) (tryAgainIn.group(2).equals("ms") ? value : value * 1000));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether a failure is transient, i.e., the same request may succeed if it is sent again.
+     */
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpException httpException) {
+                int status = httpException.statusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (cause instanceof NonRetriableException) {
+                return false;
+            }
+            if (cause instanceof RetriableException
+                    || cause instanceof IOException
+                    || cause instanceof UncheckedIOException
+                    || cause instanceof java.util.concurrent.TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry a request", e);
+        }
+    }
+
+    /**
+     * Thrown if a request is not sent because the circuit breaker of the model stays open.
+     */
+    static final class CircuitBreakerOpenException extends IllegalStateException {
+        CircuitBreakerOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -196,6 +196,28 @@ public final class ModuleConfiguration {
         return Boolean.parseBoolean(argumentAsString(key, String.valueOf(defaultValue)));
     }
 
+    /**
+     * Retrieves all arguments whose keys start with the given prefix, e.g., the arguments of a nested module.
+     *
+     * @param prefix The prefix of the keys
+     * @return The matching arguments, with the prefix removed from their keys
+     * @throws IllegalStateException If the configuration has been finalized
+     */
+    public Map<String, String> argumentsWithPrefix(String prefix) {
+        if (finalized) {
+            throw new IllegalStateException(ALREADY_FINALIZED_FOR_SERIALIZATION);
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (var argument : arguments.entrySet()) {
+            if (argument.getKey().startsWith(prefix) && argument.getValue() != null) {
+                retrievedArguments.put(argument.getKey(), argument.getValue());
+                result.put(argument.getKey().substring(prefix.length()), argument.getValue());
+            }
+        }
+        return result;
+    }
+
     /**
      * Retrieves an argument as a string by enum index.
      * The argument can be either a numeric index into the enum array or the
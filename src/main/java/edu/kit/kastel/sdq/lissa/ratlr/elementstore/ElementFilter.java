@@ -0,0 +1,78 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+/**
+ * Restricts a similarity search of an {@link ElementStore} to the elements that match all given criteria.
+ * A criterion that is {@code null} matches every element. As for unfiltered searches, only elements marked
+ * for comparison are retrieved.
+ * <p>
+ * The store resolves each criterion with a secondary index that it builds during setup, so a filtered search
+ * only scans the matching elements.
+ * </p>
+ */
+public record ElementFilter(
+        /**
+         * The identifier of the parent of the matching elements, or {@code null}.
+         */
+        String parentId,
+
+        /**
+         * The granularity of the matching elements, or {@code null}.
+         */
+        Integer granularity,
+
+        /**
+         * The type of the matching elements, or {@code null}.
+         */
+        String type) {
+
+    /**
+     * Creates a filter for the children of an element.
+     *
+     * @param parentId The identifier of the parent element
+     * @return A new filter
+     */
+    public static ElementFilter children(String parentId) {
+        return new ElementFilter(parentId, null, null);
+    }
+
+    /**
+     * Creates a filter for the elements of a granularity.
+     *
+     * @param granularity The granularity level
+     * @return A new filter
+     */
+    public static ElementFilter granularity(int granularity) {
+        return new ElementFilter(null, granularity, null);
+    }
+
+    /**
+     * Creates a filter for the elements of a type.
+     *
+     * @param type The type of the elements
+     * @return A new filter
+     */
+    public static ElementFilter type(String type) {
+        return new ElementFilter(null, null, type);
+    }
+
+    /**
+     * Additionally restricts this filter to a granularity.
+     *
+     * @param granularity The granularity level
+     * @return A new filter
+     */
+    public ElementFilter withGranularity(int granularity) {
+        return new ElementFilter(parentId, granularity, type);
+    }
+
+    /**
+     * Additionally restricts this filter to a type.
+     *
+     * @param type The type of the elements
+     * @return A new filter
+     */
+    public ElementFilter withType(String type) {
+        return new ElementFilter(parentId, granularity, type);
+    }
+}
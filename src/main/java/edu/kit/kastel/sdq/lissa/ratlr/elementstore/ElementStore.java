@@ -1,11 +1,27 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.RetrievalStrategy;
@@ -35,20 +51,91 @@ import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
  *         </ul>
  *     </li>
  * </ul>
+ * <p>
+ * Both roles support an optional persistent index ({@code index_file} argument) that stores the normalized
+ * embeddings and the search structure of the retrieval strategy. The index is created by the {@code index}
+ * command of the CLI and allows to set up the store without calculating or loading embeddings
+ * (see {@link #setupFromIndex(List, String)}).
+ * </p>
+ * <p>
+ * A store can also be {@link #setup(List, Function) set up lazily}: only the elements marked for comparison are
+ * embedded, as only they are searched or used as queries. The embeddings of the other elements (e.g., the whole
+ * files that are parents of compared methods) are calculated when they are first requested.
+ * </p>
+ * <p>
+ * After setup, elements can be {@link #add(List, List) added}, {@link #update(List, List) updated} and
+ * {@link #remove(Collection) removed} without rebuilding the store. Removed rows are kept as tombstones until the
+ * fraction of removed rows exceeds the {@code compaction_threshold} argument (default: 0.25), at which point the
+ * store is {@link #compact() compacted}.
+ * </p>
  */
 public class ElementStore {
+    private static final Logger logger = LoggerFactory.getLogger(ElementStore.class);
+
+    /**
+     * The argument that configures the path of the persistent index file of this store.
+     */
+    public static final String INDEX_FILE_KEY = "index_file";
+
+    private static final String COMPACTION_THRESHOLD_KEY = "compaction_threshold";
 
     /**
-     * Maps element identifiers to their corresponding elements and embeddings.
+     * Maps element identifiers to their row in the embedding matrix.
      * Used by LiSSA to maintain the relationship between elements and their vector representations.
      */
-    private final Map<String, Pair<Element, float[]>> idToElementWithEmbedding;
+    private final Map<String, Integer> idToRow;
 
     /**
-     * List of all elements and their embeddings.
+     * List of all elements, indexed by their row in the embedding matrix.
      * Used by LiSSA to maintain the order and full set of elements for processing.
      */
-    private final List<Pair<Element, float[]>> elementsWithEmbedding;
+    private final List<Element> elements;
+
+    /**
+     * All embeddings in a single row-major matrix: the embedding of the element in row {@code r}
+     * occupies the indices {@code [r * dimension, (r + 1) * dimension)}.
+     * Every row is normalized to unit length during setup, so similarities reduce to dot products.
+     * Added elements are appended; the matrix may have spare capacity beyond the last row.
+     * A store set up from its index file reads the mapped matrix of the file until it changes rows.
+     */
+    private EmbeddingMatrix vectors = EmbeddingMatrix.onHeap(new float[0], 0);
+
+    /**
+     * The dimension of the embeddings in this store.
+     */
+    private int dimension;
+
+    /**
+     * Read-only view on the rows of all elements marked for comparison.
+     * Precomputed during setup and handed to the retrieval strategy on every query.
+     * Replaced by an extended view whenever elements are added or removed.
+     */
+    private ElementVectors compareElements;
+
+    /**
+     * Rows of removed elements (tombstones). They stay in the matrix and in {@link #compareElements} until the
+     * store is {@link #compact() compacted}, so that the retrieval strategy can keep its search structure.
+     */
+    private final BitSet removedRows = new BitSet();
+
+    /**
+     * Fraction of removed rows above which the store is compacted automatically.
+     */
+    private final double compactionThreshold;
+
+    /**
+     * Secondary indexes from the identifier of a parent, a granularity and a type to the rows of the
+     * matching elements, in ascending order. Built during setup.
+     */
+    private Map<String, int[]> rowsByParentId = Map.of();
+
+    private Map<Integer, int[]> rowsByGranularity = Map.of();
+    private Map<String, int[]> rowsByType = Map.of();
+
+    /**
+     * Views for filtered searches, created on first use. A strategy sees the same view for the same filter.
+     */
+    private final Map<ElementFilter, ElementVectors> filteredViews = new ConcurrentHashMap<>();
 
     /**
      * Strategy to find similar elements.
@@ -56,6 +143,22 @@ public class ElementStore {
      */
     private final RetrievalStrategy retrievalStrategy;
 
+    /**
+     * Rows whose embeddings have not been calculated yet, see {@link #setup(List, Function)}. Their rows in the
+     * matrix are zero until they are {@link #embedPendingRows(int[]) embedded}.
+     */
+    private final BitSet pendingRows = new BitSet();
+
+    /**
+     * Calculates the embeddings of pending rows, {@code null} if the store was not set up lazily.
+     */
+    private Function<List<Element>, List<float[]>> embeddingFunction;
+
+    /**
+     * Path of the persistent index file, {@code null} if no index is configured.
+     */
+    private final Path indexFile;
+
     /**
      * Creates a new element store for the LiSSA framework.
      *
@@ -76,12 +179,26 @@ public class ElementStore {
             this.retrievalStrategy = null;
         }
 
-        elementsWithEmbedding = new ArrayList<>();
-        idToElementWithEmbedding = new HashMap<>();
+        this.indexFile = configuration.hasArgument(INDEX_FILE_KEY)
+                ? Path.of(configuration.argumentAsString(INDEX_FILE_KEY))
+                : null;
+        // Only read if present to keep the serialized configuration of existing stores unchanged
+        this.compactionThreshold = configuration.hasArgument(COMPACTION_THRESHOLD_KEY)
+                ? configuration.argumentAsDouble(COMPACTION_THRESHOLD_KEY)
+                : 0.25;
+        if (compactionThreshold <= 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("The compaction threshold must be in (0, 1].");
+        }
+
+        elements = new ArrayList<>();
+        idToRow = new HashMap<>();
     }
 
     /**
      * Initializes the element store with elements and their embeddings for LiSSA's processing.
+     * The embeddings are normalized to unit length when they are copied into the store; all embeddings
+     * returned by this store are therefore normalized.
+     * In target store mode, the retrieval strategy is prepared for the stored elements afterwards.
      *
      * @param elements List of elements to store
      * @param embeddings List of embeddings corresponding to the elements
@@ -89,23 +206,521 @@ public class ElementStore {
      * @throws IllegalArgumentException If the number of elements and embeddings don't match
      */
     public void setup(List<Element> elements, List<float[]> embeddings) {
-        if (!elementsWithEmbedding.isEmpty() || !idToElementWithEmbedding.isEmpty()) {
+        requireNotSetUp();
+        if (elements.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+
+        int embeddingDimension = embeddings.isEmpty() ? 0 : embeddings.getFirst().length;
+        float[] matrix = new float[elements.size() * embeddingDimension];
+        for (int row = 0; row < elements.size(); row++) {
+            var embedding = embeddings.get(row);
+            if (embedding.length != embeddingDimension) {
+                throw new IllegalArgumentException("All embeddings must have the same dimension.");
+            }
+            System.arraycopy(embedding, 0, matrix, row * embeddingDimension, embeddingDimension);
+            VectorMath.normalize(matrix, row * embeddingDimension, embeddingDimension);
+        }
+        initialize(elements, EmbeddingMatrix.onHeap(matrix, embeddingDimension));
+
+        if (retrievalStrategy != null) {
+            retrievalStrategy.setup(compareElements);
+        }
+    }
+
+    /**
+     * Initializes the element store like {@link #setup(List, List)}, but only calculates the embeddings of the
+     * elements marked for comparison. Only these elements are searched and used as queries; the embeddings of the
+     * other elements are calculated by the given function when they are first requested, e.g., by
+     * {@link #getById(String)}. If no element or every element is marked for comparison, all elements are embedded
+     * right away.
+     *
+     * @param elements List of elements to store
+     * @param embeddingFunction Calculates the embeddings of the given elements, in the same order
+     * @throws IllegalStateException If the store is already initialized
+     * @throws IllegalArgumentException If the function returns a wrong number of embeddings
+     */
+    public void setup(List<Element> elements, Function<List<Element>, List<float[]>> embeddingFunction) {
+        requireNotSetUp();
+        List<Element> compared = elements.stream().filter(Element::isCompare).toList();
+        if (compared.isEmpty() || compared.size() == elements.size()) {
+            setup(elements, embeddingFunction.apply(elements));
+            return;
+        }
+
+        List<float[]> comparedEmbeddings = embeddingFunction.apply(compared);
+        if (comparedEmbeddings.size() != compared.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        float[] pending = new float[comparedEmbeddings.getFirst().length];
+        List<float[]> embeddings = new ArrayList<>(elements.size());
+        int next = 0;
+        for (Element element : elements) {
+            embeddings.add(element.isCompare() ? comparedEmbeddings.get(next++) : pending);
+        }
+        setup(elements, embeddings);
+
+        for (int row = 0; row < elements.size(); row++) {
+            if (!elements.get(row).isCompare()) {
+                pendingRows.set(row);
+            }
+        }
+        this.embeddingFunction = embeddingFunction;
+        logger.info(
+                "Embedded {} elements to compare, {} other elements are embedded on demand",
+                compared.size(),
+                pendingRows.cardinality());
+    }
+
+    /**
+     * Calculates the embeddings of the given rows that are still pending and writes them to the matrix.
+     * The rows of pending elements are never part of a view of the retrieval strategy, so this does not interfere
+     * with searches.
+     *
+     * @param rows The rows whose embeddings are requested
+     */
+    private synchronized void embedPendingRows(int[] rows) {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+        List<Integer> missingRows = new ArrayList<>();
+        List<Element> missingElements = new ArrayList<>();
+        for (int row : rows) {
+            if (pendingRows.get(row)) {
+                missingRows.add(row);
+                missingElements.add(elements.get(row));
+            }
+        }
+        if (missingRows.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingFunction.apply(missingElements);
+        if (embeddings.size() != missingRows.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        for (int i = 0; i < missingRows.size(); i++) {
+            int row = missingRows.get(i);
+            float[] embedding = embeddings.get(i);
+            if (embedding.length != dimension) {
+                throw new IllegalArgumentException("All embeddings must have the same dimension.");
+            }
+            float[] matrix = vectors.array();
+            System.arraycopy(embedding, 0, matrix, row * dimension, dimension);
+            VectorMath.normalize(matrix, row * dimension, dimension);
+            pendingRows.clear(row);
+        }
+    }
+
+    private void embedAllPendingRows() {
+        embedPendingRows(pendingRows.stream().toArray());
+    }
+
+    /**
+     * Initializes the element store from its persistent index file instead of calculated embeddings.
+     * The index is only used if it was created for the same elements (identifiers, order and contents) and the
+     * same embedding creator. The search structure of the retrieval strategy is restored from the index if possible.
+     *
+     * @param elements List of elements to store
+     * @param embeddingFingerprint Fingerprint of the embedding creator, i.e., its configuration and the state it
+     *                             was prepared with
+     * @return {@code true} if the store was set up from the index; {@code false} if no usable index exists,
+     *         in which case the store remains uninitialized and {@link #setup(List, List)} has to be used
+     * @throws IllegalStateException If the store is already initialized
+     */
+    public boolean setupFromIndex(List<Element> elements, String embeddingFingerprint) {
+        requireNotSetUp();
+        if (indexFile == null) {
+            return false;
+        }
+        if (Files.notExists(indexFile)) {
+            logger.info("Index file {} does not exist yet. Create it with the index command.", indexFile);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        VectorIndexFile index;
+        try {
+            index = VectorIndexFile.read(indexFile);
+        } catch (IOException e) {
+            logger.warn("Could not read index file {}: {}", indexFile, e.getMessage());
+            return false;
+        }
+        if (!index.matches(elements, embeddingFingerprint)) {
+            logger.warn("Index file {} is outdated (elements or embedding creator changed), ignoring it.", indexFile);
+            return false;
+        }
+
+        initialize(elements, index.matrix());
+        if (retrievalStrategy != null) {
+            retrievalStrategy.setup(compareElements, index.strategyIndex());
+        }
+        logger.info(
+                "Loaded {} elements from index file {} in {} ms",
+                elements.size(),
+                indexFile,
+                System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /**
+     * Checks whether a persistent index file is configured for this store.
+     *
+     * @return {@code true} if the {@code index_file} argument is set
+     */
+    public boolean hasIndexFile() {
+        return indexFile != null;
+    }
+
+    /**
+     * Writes the persistent index file of this store, replacing an existing file.
+     *
+     * @param embeddingFingerprint Fingerprint of the embedding creator, i.e., its configuration and the state it
+     *                             was prepared with
+     * @throws IllegalStateException If no index file is configured or the store is not set up
+     * @throws UncheckedIOException If the index file cannot be written
+     */
+    public void writeIndex(String embeddingFingerprint) {
+        if (indexFile == null) {
+            throw new IllegalStateException("No index file configured for this element store.");
+        }
+        if (compareElements == null) {
+            throw new IllegalStateException("The element store is not set up.");
+        }
+        if (!removedRows.isEmpty()) {
+            compact();
+        }
+        // The index stores the embeddings of all elements
+        embedAllPendingRows();
+
+        try {
+            ByteArrayOutputStream strategyIndex = new ByteArrayOutputStream();
+            if (retrievalStrategy != null) {
+                try (DataOutputStream out = new DataOutputStream(strategyIndex)) {
+                    retrievalStrategy.writeIndex(out);
+                }
+            }
+            VectorIndexFile.write(
+                    indexFile, embeddingFingerprint, elements, vectors, strategyIndex.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info("Wrote index of {} elements to {}", elements.size(), indexFile);
+    }
+
+    private void requireNotSetUp() {
+        if (!this.elements.isEmpty() || !idToRow.isEmpty()) {
             throw new IllegalStateException("The element store is already set up.");
         }
+    }
+
+    /**
+     * Takes over the elements and their normalized embedding matrix, precomputes the view on the elements to compare
+     * and builds the secondary indexes.
+     */
+    private void initialize(List<Element> elements, EmbeddingMatrix matrix) {
+        this.dimension = matrix.dimension();
+        this.vectors = matrix;
+        int[] compareRows = new int[elements.size()];
+        int compareCount = 0;
+        for (int row = 0; row < elements.size(); row++) {
+            var element = elements.get(row);
+            this.elements.add(element);
+            idToRow.put(element.getIdentifier(), row);
+            if (element.isCompare()) {
+                compareRows[compareCount++] = row;
+            }
+        }
+        this.compareElements =
+                new ElementVectors(this.elements, vectors, Arrays.copyOf(compareRows, compareCount), null);
+        this.rowsByParentId = indexRows(elements, ElementStore::parentIdOf);
+        this.rowsByGranularity = indexRows(elements, Element::getGranularity);
+        this.rowsByType = indexRows(elements, Element::getType);
+    }
+
+    /**
+     * Groups the rows of the elements by a key. Elements whose key is {@code null} are not indexed.
+     *
+     * @return For each key, the rows of the elements with that key in ascending order
+     */
+    private static <K> Map<K, int[]> indexRows(List<Element> elements, Function<Element, K> key) {
+        Map<K, Integer> counts = new HashMap<>();
+        for (Element element : elements) {
+            K value = key.apply(element);
+            if (value != null) {
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        Map<K, int[]> rows = new HashMap<>();
+        Map<K, Integer> filled = new HashMap<>();
+        for (int row = 0; row < elements.size(); row++) {
+            K value = key.apply(elements.get(row));
+            if (value != null) {
+                int position = filled.merge(value, 1, Integer::sum) - 1;
+                rows.computeIfAbsent(value, ignored -> new int[counts.get(value)])[position] = row;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Adds elements to a store that is already set up, without rebuilding it. The embeddings are normalized and
+     * appended to the matrix, and the secondary indexes and the search structure of the retrieval strategy are
+     * extended (see {@link RetrievalStrategy#update(ElementVectors, int)}).
+     * Must not be called concurrently with searches.
+     *
+     * @param elements The elements to add; their identifiers must not be in the store yet
+     * @param embeddings The embeddings corresponding to the elements
+     * @throws IllegalStateException If the store is not set up
+     * @throws IllegalArgumentException If the number of elements and embeddings don't match, an identifier already
+     *                                  exists, or an embedding has another dimension than the stored ones
+     */
+    public void add(List<Element> elements, List<float[]> embeddings) {
+        requireSetUp();
+        Set<String> identifiers = new HashSet<>();
+        for (Element element : elements) {
+            if (idToRow.containsKey(element.getIdentifier()) || !identifiers.add(element.getIdentifier())) {
+                throw new IllegalArgumentException("The element " + element.getIdentifier() + " already exists.");
+            }
+        }
+        int previousSize = compareElements.size();
+        int firstNewRow = this.elements.size();
+        append(elements, embeddings);
+        refresh(previousSize, firstNewRow);
+    }
 
+    /**
+     * Replaces elements and their embeddings, e.g., after the underlying artifact changed. Each element replaces
+     * the stored element with the same identifier; the old version is {@link #remove(Collection) removed} and the
+     * new one is {@link #add(List, List) added}.
+     * Must not be called concurrently with searches.
+     *
+     * @param elements The new versions of the elements
+     * @param embeddings The embeddings corresponding to the elements
+     * @throws IllegalStateException If the store is not set up
+     * @throws IllegalArgumentException If an element is not in the store, is given more than once, or the arguments
+     *                                  are invalid as for {@link #add(List, List)}
+     */
+    public void update(List<Element> elements, List<float[]> embeddings) {
+        requireSetUp();
         if (elements.size() != embeddings.size()) {
             throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
         }
+        int previousSize = compareElements.size();
+        int firstNewRow = this.elements.size();
+        markRemoved(elements.stream().map(Element::getIdentifier).toList());
+        append(elements, embeddings);
+        refresh(previousSize, firstNewRow);
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes elements from the store. Their rows are only marked as removed (tombstones), so the retrieval
+     * strategy keeps its search structure and skips them. Once more than {@code compaction_threshold} of the rows
+     * are removed, the store is {@link #compact() compacted}.
+     * Must not be called concurrently with searches.
+     *
+     * @param identifiers The identifiers of the elements to remove
+     * @throws IllegalStateException If the store is not set up
+     * @throws IllegalArgumentException If an element is not in the store or is given more than once
+     */
+    public void remove(Collection<String> identifiers) {
+        requireSetUp();
+        int previousSize = compareElements.size();
+        markRemoved(identifiers);
+        refresh(previousSize, elements.size());
+        compactIfNeeded();
+    }
+
+    /**
+     * Drops the rows of removed elements from the matrix and renumbers the remaining rows. The search structure
+     * of the retrieval strategy is rebuilt for the new rows.
+     * Must not be called concurrently with searches.
+     *
+     * @throws IllegalStateException If the store is not set up
+     */
+    public void compact() {
+        requireSetUp();
+        long start = System.currentTimeMillis();
+        int removedCount = removedRows.cardinality();
+        List<Element> liveElements = new ArrayList<>(elements.size() - removedCount);
+        float[] matrix = new float[(elements.size() - removedCount) * dimension];
+        BitSet livePendingRows = new BitSet();
+        for (int row = removedRows.nextClearBit(0); row < elements.size(); row = removedRows.nextClearBit(row + 1)) {
+            vectors.copyRow(row, matrix, liveElements.size() * dimension);
+            if (pendingRows.get(row)) {
+                livePendingRows.set(liveElements.size());
+            }
+            liveElements.add(elements.get(row));
+        }
+        this.elements.clear();
+        idToRow.clear();
+        removedRows.clear();
+        pendingRows.clear();
+        pendingRows.or(livePendingRows);
+        filteredViews.clear();
+        initialize(liveElements, EmbeddingMatrix.onHeap(matrix, dimension));
+        if (retrievalStrategy != null) {
+            retrievalStrategy.update(compareElements, 0);
+        }
+        logger.info(
+                "Compacted element store: removed {} rows, {} elements remain ({} ms)",
+                removedCount,
+                liveElements.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void requireSetUp() {
+        if (compareElements == null) {
+            throw new IllegalStateException("The element store is not set up.");
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (removedRows.cardinality() > compactionThreshold * elements.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Validates, normalizes and appends the elements and their embeddings to the matrix and the indexes.
+     */
+    private void append(List<Element> newElements, List<float[]> embeddings) {
+        if (newElements.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        if (dimension == 0 && elements.isEmpty() && !embeddings.isEmpty()) {
+            this.dimension = embeddings.getFirst().length;
+        }
+        for (float[] embedding : embeddings) {
+            if (embedding.length != dimension) {
+                throw new IllegalArgumentException("All embeddings must have the same dimension.");
+            }
+        }
+
+        long required = (long) (elements.size() + newElements.size()) * dimension;
+        int length = vectors.isMapped() ? elements.size() * dimension : vectors.array().length;
+        if (required > length || vectors.isMapped()) {
+            // Grow geometrically, so that adding elements one by one costs amortized constant time per element.
+            // A mapped matrix is read-only, so it is copied to the heap first.
+            long capacity = Math.min(Integer.MAX_VALUE - 8L, Math.max(required, 2L * length));
+            vectors = EmbeddingMatrix.onHeap(vectors.toArray((int) capacity, elements.size()), dimension);
+        }
+        float[] matrix = vectors.array();
+        int firstNewRow = elements.size();
+        for (int i = 0; i < newElements.size(); i++) {
+            Element element = newElements.get(i);
+            int row = elements.size();
+            System.arraycopy(embeddings.get(i), 0, matrix, row * dimension, dimension);
+            VectorMath.normalize(matrix, row * dimension, dimension);
+            elements.add(element);
+            idToRow.put(element.getIdentifier(), row);
+        }
+        // The new rows are the largest ones, so appending them keeps the index arrays sorted
+        List<Element> appended = elements.subList(firstNewRow, elements.size());
+        appendRows(rowsByParentId, indexRows(appended, ElementStore::parentIdOf), firstNewRow);
+        appendRows(rowsByGranularity, indexRows(appended, Element::getGranularity), firstNewRow);
+        appendRows(rowsByType, indexRows(appended, Element::getType), firstNewRow);
+    }
+
+    /**
+     * Appends the rows of appended elements to a secondary index.
+     *
+     * @param index The secondary index
+     * @param appendedRows The index of the appended elements, with rows relative to the first appended row
+     * @param firstNewRow The row of the first appended element
+     */
+    private static <K> void appendRows(Map<K, int[]> index, Map<K, int[]> appendedRows, int firstNewRow) {
+        for (Map.Entry<K, int[]> entry : appendedRows.entrySet()) {
+            index.merge(entry.getKey(), offset(entry.getValue(), firstNewRow), ElementStore::concat);
+        }
+    }
+
+    /**
+     * Marks the rows of the elements as removed and drops them from the id map and the secondary indexes. The
+     * identifiers are validated before the store is changed.
+     */
+    private void markRemoved(Collection<String> identifiers) {
+        Set<String> distinctIdentifiers = new HashSet<>();
+        for (String identifier : identifiers) {
+            if (!idToRow.containsKey(identifier)) {
+                throw new IllegalArgumentException("The element " + identifier + " is not in the store.");
+            }
+            if (!distinctIdentifiers.add(identifier)) {
+                throw new IllegalArgumentException("The element " + identifier + " is given more than once.");
+            }
+        }
+        List<Element> removedElements = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers) {
+            int row = idToRow.remove(identifier);
+            removedRows.set(row);
+            removedElements.add(elements.get(row));
+        }
+        // Filter each affected index array once, however many of its rows were removed
+        for (Element element : removedElements) {
+            dropRemovedRows(rowsByParentId, parentIdOf(element));
+            dropRemovedRows(rowsByGranularity, element.getGranularity());
+            dropRemovedRows(rowsByType, element.getType());
+        }
+    }
+
+    /**
+     * Replaces the view on the elements to compare after elements were appended or removed and lets the retrieval
+     * strategy adapt. The new view keeps the indices of the previous view and appends the new rows.
+     *
+     * @param previousSize The size of the previous view
+     * @param firstNewRow The first row that was appended to the matrix since the previous view was created
+     */
+    private void refresh(int previousSize, int firstNewRow) {
+        int[] previousRows = compareElements.rows();
+        int[] rows = Arrays.copyOf(previousRows, previousRows.length + elements.size() - firstNewRow);
+        int count = previousRows.length;
+        for (int row = firstNewRow; row < elements.size(); row++) {
+            if (elements.get(row).isCompare()) {
+                rows[count++] = row;
+            }
+        }
+        filteredViews.clear();
+        this.compareElements =
+                new ElementVectors(elements, vectors, Arrays.copyOf(rows, count), removedSnapshot());
+        if (retrievalStrategy != null) {
+            retrievalStrategy.update(compareElements, previousSize);
+        }
+    }
+
+    private BitSet removedSnapshot() {
+        return removedRows.isEmpty() ? null : (BitSet) removedRows.clone();
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static int[] offset(int[] rows, int offset) {
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] += offset;
+        }
+        return rows;
+    }
 
-        for (int i = 0; i < elements.size(); i++) {
-            var element = elements.get(i);
-            var embedding = embeddings.get(i);
-            var pair = new Pair<>(element, embedding);
-            elementsWithEmbedding.add(pair);
-            idToElementWithEmbedding.put(element.getIdentifier(), pair);
+    private <K> void dropRemovedRows(Map<K, int[]> index, K key) {
+        int[] rows = key == null ? null : index.get(key);
+        if (rows == null) {
+            return;
+        }
+        int[] remaining = Arrays.stream(rows).filter(row -> !removedRows.get(row)).toArray();
+        if (remaining.length == 0) {
+            index.remove(key);
+        } else if (remaining.length < rows.length) {
+            index.put(key, remaining);
         }
     }
 
+    private static String parentIdOf(Element element) {
+        return element.getParent() == null ? null : element.getParent().getIdentifier();
+    }
+
     /**
      * Finds elements similar to the given query vector as part of LiSSA's similarity matching.
      * Only available in target store mode.
@@ -131,7 +746,119 @@ public class ElementStore {
         if (retrievalStrategy == null) {
             throw new IllegalStateException("You should set retriever to true to activate this feature.");
         }
-        return retrievalStrategy.findSimilarElements(query, getAllElementsIntern(true));
+        return retrievalStrategy.findSimilarElements(query, compareElements);
+    }
+
+    /**
+     * Finds elements similar to each of the given queries.
+     * Only available in target store mode.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @return For each query (in the same order), the similar elements, sorted by similarity
+     * @throws IllegalStateException If this is a source store (similarityRetriever = false)
+     * @see #findSimilarBatchWithDistances(List)
+     */
+    public final List<List<Element>> findSimilarBatch(List<Pair<Element, float[]>> queries) {
+        return findSimilarBatchWithDistances(queries).stream()
+                .map(result -> result.stream().map(Pair::first).toList())
+                .toList();
+    }
+
+    /**
+     * Finds elements similar to each of the given queries, including their similarity scores.
+     * Depending on the retrieval strategy, the queries are answered together, e.g., by scoring all of
+     * them against the store as one blocked matrix multiplication on all cores.
+     * Only available in target store mode.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @return For each query (in the same order), pairs of similar elements and their similarity scores
+     * @throws IllegalStateException If this is a source store (similarityRetriever = false)
+     */
+    public List<List<Pair<Element, Float>>> findSimilarBatchWithDistances(List<Pair<Element, float[]>> queries) {
+        if (retrievalStrategy == null) {
+            throw new IllegalStateException("You should set retriever to true to activate this feature.");
+        }
+        return retrievalStrategy.findSimilarElementsBatch(queries, compareElements);
+    }
+
+    /**
+     * Finds elements similar to the given query vector among the elements that match a filter, e.g., the
+     * children of an element or the elements of a granularity. Only the matching elements are scanned.
+     * Approximate retrieval strategies only index all elements to compare, so filtered searches are exact.
+     * Only available in target store mode.
+     *
+     * @param query The element and vector to find similar elements for
+     * @param filter The criteria the retrieved elements have to match
+     * @return List of pairs containing similar elements and their similarity scores
+     * @throws IllegalStateException If this is a source store (similarityRetriever = false)
+     */
+    public List<Pair<Element, Float>> findSimilarWithDistances(Pair<Element, float[]> query, ElementFilter filter) {
+        if (retrievalStrategy == null) {
+            throw new IllegalStateException("You should set retriever to true to activate this feature.");
+        }
+        return retrievalStrategy.findSimilarElements(query, filteredView(filter));
+    }
+
+    /**
+     * Finds elements similar to each of the given queries among the elements that match a filter.
+     * Only available in target store mode.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @param filter The criteria the retrieved elements have to match
+     * @return For each query (in the same order), pairs of similar elements and their similarity scores
+     * @throws IllegalStateException If this is a source store (similarityRetriever = false)
+     * @see #findSimilarWithDistances(Pair, ElementFilter)
+     */
+    public List<List<Pair<Element, Float>>> findSimilarBatchWithDistances(
+            List<Pair<Element, float[]>> queries, ElementFilter filter) {
+        if (retrievalStrategy == null) {
+            throw new IllegalStateException("You should set retriever to true to activate this feature.");
+        }
+        return retrievalStrategy.findSimilarElementsBatch(queries, filteredView(filter));
+    }
+
+    /**
+     * Returns the view on the elements to compare that match the filter, intersecting the secondary indexes.
+     */
+    private ElementVectors filteredView(ElementFilter filter) {
+        if (compareElements == null) {
+            throw new IllegalStateException("The element store is not set up.");
+        }
+        return filteredViews.computeIfAbsent(filter, key -> {
+            int[] rows = compareElements.rows();
+            if (key.parentId() != null) {
+                rows = intersect(rows, rowsByParentId.getOrDefault(key.parentId(), new int[0]));
+            }
+            if (key.granularity() != null) {
+                rows = intersect(rows, rowsByGranularity.getOrDefault(key.granularity(), new int[0]));
+            }
+            if (key.type() != null) {
+                rows = intersect(rows, rowsByType.getOrDefault(key.type(), new int[0]));
+            }
+            return new ElementVectors(elements, vectors, rows, removedSnapshot());
+        });
+    }
+
+    /**
+     * Intersects two ascending arrays of rows.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
     }
 
     /**
@@ -142,11 +869,12 @@ public class ElementStore {
      * @return A pair containing the element and its embedding, or null if not found
      */
     public Pair<Element, float[]> getById(String id) {
-        var element = idToElementWithEmbedding.get(id);
-        if (element == null) {
+        Integer row = idToRow.get(id);
+        if (row == null) {
             return null;
         }
-        return new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length));
+        embedPendingRows(new int[] {row});
+        return new Pair<>(elements.get(row), copyOfRow(row));
     }
 
     /**
@@ -157,14 +885,13 @@ public class ElementStore {
      * @return List of pairs containing elements and their embeddings
      */
     public List<Pair<Element, float[]>> getElementsByParentId(String parentId) {
-        List<Pair<Element, float[]>> elements = new ArrayList<>();
-        for (Pair<Element, float[]> element : elementsWithEmbedding) {
-            if (element.first().getParent() != null
-                    && element.first().getParent().getIdentifier().equals(parentId)) {
-                elements.add(new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length)));
-            }
+        int[] rows = rowsByParentId.getOrDefault(parentId, new int[0]);
+        embedPendingRows(rows);
+        List<Pair<Element, float[]>> children = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            children.add(new Pair<>(elements.get(row), copyOfRow(row)));
         }
-        return elements;
+        return children;
     }
 
     /**
@@ -190,12 +917,32 @@ public class ElementStore {
      * @return List of pairs containing elements and their embeddings
      */
     private List<Pair<Element, float[]>> getAllElementsIntern(boolean onlyCompare) {
-        List<Pair<Element, float[]>> elements = new ArrayList<>();
-        for (Pair<Element, float[]> element : elementsWithEmbedding) {
-            if (!onlyCompare || element.first().isCompare()) {
-                elements.add(new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length)));
+        if (compareElements == null) {
+            return new ArrayList<>();
+        }
+        if (!onlyCompare) {
+            embedAllPendingRows();
+        }
+        int size = onlyCompare ? compareElements.size() : elements.size();
+        List<Pair<Element, float[]>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int row = onlyCompare ? compareElements.row(i) : i;
+            if (!removedRows.get(row)) {
+                result.add(new Pair<>(elements.get(row), copyOfRow(row)));
             }
         }
-        return elements;
+        return result;
+    }
+
+    /**
+     * Copies the embedding in the given row out of the matrix.
+     *
+     * @param row The row of the element
+     * @return A copy of the embedding
+     */
+    private float[] copyOfRow(int row) {
+        float[] embedding = new float[dimension];
+        vectors.copyRow(row, embedding, 0);
+        return embedding;
     }
 }
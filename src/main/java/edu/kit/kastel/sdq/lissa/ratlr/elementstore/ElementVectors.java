@@ -0,0 +1,162 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.util.BitSet;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * A read-only view on a selection of rows of the embedding matrix of an {@link ElementStore}.
+ * <p>
+ * The element store keeps all embeddings in a single row-major {@link EmbeddingMatrix}. A view addresses
+ * the selected rows by a dense index from {@code 0} to {@link #size()} (exclusive), in the order
+ * of the rows in the store. Similarity computations read the matrix in place, so scanning a view
+ * neither copies vectors nor allocates per element. The underlying matrix is never handed out;
+ * {@link #vector(int)} returns a copy.
+ * </p>
+ * <p>
+ * All embeddings in the matrix are normalized to unit length, so the cosine similarity reduces to
+ * a {@link #dot(int, float[]) dot product}.
+ * </p>
+ * <p>
+ * Elements that were removed from the store stay in the views of the store until it is compacted, so that the
+ * indices of the remaining elements do not change. Retrieval strategies must not return
+ * {@link #isRemoved(int) removed} elements.
+ * </p>
+ */
+public final class ElementVectors {
+    private final List<Element> elementsByRow;
+    private final EmbeddingMatrix matrix;
+    private final int[] rows;
+
+    /**
+     * The removed rows of the matrix, {@code null} if no row is removed.
+     */
+    private final BitSet removedRows;
+
+    /**
+     * Creates a new view. Only the element store creates views, and it must not modify the selected rows of the
+     * matrix afterwards.
+     *
+     * @param elementsByRow The elements of the store, indexed by their row
+     * @param matrix The row-major embedding matrix of the store
+     * @param rows The rows of the matrix that are part of this view, in ascending order
+     * @param removedRows The rows of removed elements; {@code null} or empty if none. Not modified afterwards.
+     */
+    ElementVectors(List<Element> elementsByRow, EmbeddingMatrix matrix, int[] rows, BitSet removedRows) {
+        this.elementsByRow = elementsByRow;
+        this.matrix = matrix;
+        this.rows = rows;
+        this.removedRows = removedRows == null || removedRows.isEmpty() ? null : removedRows;
+    }
+
+    /**
+     * Returns the number of elements in this view, including {@link #isRemoved(int) removed} ones.
+     *
+     * @return The number of elements
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Checks whether the element at the given index of this view was removed from the store.
+     *
+     * @param index The index in this view
+     * @return {@code true} if the element must not be retrieved
+     */
+    public boolean isRemoved(int index) {
+        return removedRows != null && removedRows.get(rows[index]);
+    }
+
+    /**
+     * Returns the dimension of the embeddings.
+     *
+     * @return The embedding dimension
+     */
+    public int dimension() {
+        return matrix.dimension();
+    }
+
+    /**
+     * Returns the row in the store's matrix of the element at the given index of this view.
+     *
+     * @param index The index in this view
+     * @return The row in the matrix
+     */
+    public int row(int index) {
+        return rows[index];
+    }
+
+    /**
+     * Returns the rows of this view in ascending order. The array is shared and must not be modified.
+     *
+     * @return The rows of the matrix that are part of this view
+     */
+    int[] rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the element at the given index of this view.
+     *
+     * @param index The index in this view
+     * @return The element
+     */
+    public Element element(int index) {
+        return elementsByRow.get(rows[index]);
+    }
+
+    /**
+     * Returns a copy of the embedding of the element at the given index of this view.
+     *
+     * @param index The index in this view
+     * @return A copy of the embedding
+     */
+    public float[] vector(int index) {
+        float[] vector = new float[matrix.dimension()];
+        matrix.copyRow(rows[index], vector, 0);
+        return vector;
+    }
+
+    /**
+     * Computes the dot product between the query vector and the embedding at the given index of this view.
+     * As the store keeps its embeddings normalized, this is the cosine similarity if the query is normalized as well.
+     *
+     * @param index The index in this view
+     * @param query The query vector, normalized via {@link VectorMath#normalized(float[])}
+     * @return The dot product
+     * @throws IllegalArgumentException If the query has a different dimension than the embeddings
+     */
+    public float dot(int index, float[] query) {
+        if (query.length != matrix.dimension()) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        return matrix.dot(rows[index], query, 0);
+    }
+
+    /**
+     * Computes the dot product between the embedding at the given index of this view and a normalized query
+     * that is stored at an offset of a larger array, e.g., one row of a row-major matrix of queries.
+     *
+     * @param index The index in this view
+     * @param queries The array containing the query
+     * @param queryOffset The offset of the query in {@code queries}; the query has {@link #dimension()} entries
+     * @return The dot product
+     */
+    public float dot(int index, float[] queries, int queryOffset) {
+        return matrix.dot(rows[index], queries, queryOffset);
+    }
+
+    /**
+     * Computes the dot product, i.e., the cosine similarity, between the embeddings at two indices of this view.
+     *
+     * @param index The first index in this view
+     * @param otherIndex The second index in this view
+     * @return The dot product
+     */
+    public float dot(int index, int otherIndex) {
+        return matrix.dot(rows[index], rows[otherIndex]);
+    }
+}
@@ -0,0 +1,206 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * The row-major matrix of the normalized embeddings of an {@link ElementStore}: the embedding in row {@code r}
+ * occupies the entries {@code [r * dimension, (r + 1) * dimension)}.
+ * <p>
+ * The matrix is either held in a {@code float[]} on the heap, or backed by the memory-mapped matrix section of a
+ * {@link VectorIndexFile}. A mapped matrix is not copied: the operating system pages its rows in when they are
+ * first read, so loading an index does not depend on its size. As a mapping is limited to 2 GiB, a mapped matrix
+ * consists of chunks of whole rows. Dot products on a mapped matrix copy the rows to a scratch array of the
+ * calling thread first, so that they use the same kernel of {@link VectorMath} and yield exactly the same scores as
+ * on the heap.
+ * </p>
+ * <p>
+ * A mapped matrix is read-only. The store copies it to the heap ({@link #toArray(int)}) before it changes rows.
+ * </p>
+ */
+final class EmbeddingMatrix {
+    private final int dimension;
+
+    /**
+     * The entries of a heap matrix, {@code null} if the matrix is mapped. May have spare capacity at its end.
+     */
+    private final float[] heap;
+
+    /**
+     * The chunks of a mapped matrix, {@code null} if the matrix is on the heap. Every chunk but the last one
+     * holds {@link #rowsPerChunk} rows.
+     */
+    private final FloatBuffer[] chunks;
+
+    private final int rowsPerChunk;
+
+    /**
+     * Scratch arrays of the calling thread for rows of a mapped matrix, null if the matrix is on the heap.
+     */
+    private final ThreadLocal<float[]> scratch;
+
+    private EmbeddingMatrix(int dimension, float[] heap, FloatBuffer[] chunks, int rowsPerChunk) {
+        this.dimension = dimension;
+        this.heap = heap;
+        this.chunks = chunks;
+        this.rowsPerChunk = rowsPerChunk;
+        this.scratch = heap == null ? ThreadLocal.withInitial(() -> new float[2 * dimension]) : null;
+    }
+
+    /**
+     * Creates a matrix on the heap.
+     *
+     * @param entries The entries in row-major order; not copied, may have spare capacity at its end
+     * @param dimension The dimension of the embeddings
+     * @return The matrix
+     */
+    static EmbeddingMatrix onHeap(float[] entries, int dimension) {
+        return new EmbeddingMatrix(dimension, entries, null, 0);
+    }
+
+    /**
+     * Creates a matrix backed by mapped buffers.
+     *
+     * @param chunks The chunks of the matrix, each starting at position 0 and holding whole rows; not copied
+     * @param rowsPerChunk The number of rows of every chunk but the last one
+     * @param dimension The dimension of the embeddings
+     * @return The matrix
+     */
+    static EmbeddingMatrix mapped(FloatBuffer[] chunks, int rowsPerChunk, int dimension) {
+        return new EmbeddingMatrix(dimension, null, chunks, rowsPerChunk);
+    }
+
+    /**
+     * Returns the dimension of the embeddings.
+     *
+     * @return The embedding dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Checks whether the matrix is backed by a mapped file.
+     *
+     * @return {@code true} if the matrix is mapped and read-only
+     */
+    boolean isMapped() {
+        return heap == null;
+    }
+
+    /**
+     * Returns the entries of a heap matrix, e.g., to change rows.
+     *
+     * @return The entries; not copied
+     * @throws IllegalStateException If the matrix is mapped
+     */
+    float[] array() {
+        if (heap == null) {
+            throw new IllegalStateException("A mapped embedding matrix is read-only.");
+        }
+        return heap;
+    }
+
+    /**
+     * Copies the first rows of the matrix to a new array on the heap.
+     *
+     * @param capacity The length of the new array; at least {@code rows * dimension}, the remaining entries are 0
+     * @param rows The number of rows to copy
+     * @return The new array
+     */
+    float[] toArray(int capacity, int rows) {
+        if (heap != null) {
+            return Arrays.copyOf(heap, capacity);
+        }
+        float[] entries = new float[capacity];
+        for (int row = 0; row < rows; row += rowsPerChunk) {
+            int count = Math.min(rowsPerChunk, rows - row);
+            chunks[row / rowsPerChunk].get(0, entries, row * dimension, count * dimension);
+        }
+        return entries;
+    }
+
+    /**
+     * Copies the first rows of the matrix to a new array on the heap.
+     *
+     * @param rows The number of rows to copy
+     * @return The new array with exactly {@code rows * dimension} entries
+     */
+    float[] toArray(int rows) {
+        return toArray(rows * dimension, rows);
+    }
+
+    /**
+     * Copies a row into an array.
+     *
+     * @param row The row
+     * @param target The array to copy the row to
+     * @param targetOffset The offset in {@code target}
+     */
+    void copyRow(int row, float[] target, int targetOffset) {
+        if (heap != null) {
+            System.arraycopy(heap, row * dimension, target, targetOffset, dimension);
+        } else {
+            chunks[row / rowsPerChunk].get(offsetInChunk(row), target, targetOffset, dimension);
+        }
+    }
+
+    /**
+     * Copies consecutive rows into a buffer.
+     *
+     * @param fromRow The first row
+     * @param rows The number of rows
+     * @param target The buffer to write to at its position; the position is advanced
+     */
+    void copyRows(int fromRow, int rows, FloatBuffer target) {
+        if (heap != null) {
+            target.put(heap, fromRow * dimension, rows * dimension);
+            return;
+        }
+        for (int row = fromRow; row < fromRow + rows; ) {
+            int count = Math.min(rowsPerChunk - row % rowsPerChunk, fromRow + rows - row);
+            target.put(target.position(), chunks[row / rowsPerChunk], offsetInChunk(row), count * dimension);
+            target.position(target.position() + count * dimension);
+            row += count;
+        }
+    }
+
+    /**
+     * Computes the dot product between a row and a query stored at an offset of an array.
+     *
+     * @param row The row
+     * @param query The array containing the query
+     * @param queryOffset The offset of the query in {@code query}; the query has {@link #dimension()} entries
+     * @return The dot product
+     */
+    float dot(int row, float[] query, int queryOffset) {
+        if (heap != null) {
+            return VectorMath.dot(query, queryOffset, heap, row * dimension, dimension);
+        }
+        float[] rowCopy = scratch.get();
+        copyRow(row, rowCopy, 0);
+        return VectorMath.dot(query, queryOffset, rowCopy, 0, dimension);
+    }
+
+    /**
+     * Computes the dot product between two rows.
+     *
+     * @param row The first row
+     * @param otherRow The second row
+     * @return The dot product
+     */
+    float dot(int row, int otherRow) {
+        if (heap != null) {
+            return VectorMath.dot(heap, row * dimension, heap, otherRow * dimension, dimension);
+        }
+        float[] rowCopies = scratch.get();
+        copyRow(row, rowCopies, 0);
+        copyRow(otherRow, rowCopies, dimension);
+        return VectorMath.dot(rowCopies, 0, rowCopies, dimension, dimension);
+    }
+
+    private int offsetInChunk(int row) {
+        return row % rowsPerChunk * dimension;
+    }
+}
@@ -0,0 +1,266 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.KeyGenerator;
+
+/**
+ * A persistent, versioned index of the embeddings of an {@link ElementStore}.
+ * <p>
+ * The file consists of the following sections:
+ * <ol>
+ *     <li>A fixed header of {@value #HEADER_BYTES} bytes: the magic bytes {@code LISSAIDX}, the format version,
+ *         the embedding dimension, the number of elements, the length of the metadata section and the length
+ *         of the strategy section (little-endian)</li>
+ *     <li>The metadata: the fingerprint of the embedding creator, followed by the identifier and a key of
+ *         the content of every element (written by {@link DataOutputStream#writeUTF(String)})</li>
+ *     <li>The normalized embedding matrix in row-major order as little-endian floats, aligned to
+ *         {@value #MATRIX_ALIGNMENT} bytes</li>
+ *     <li>The serialized search structure of the retrieval strategy (e.g., an HNSW graph); may be empty</li>
+ * </ol>
+ * The file is read with {@link FileChannel#map memory mapping}. The matrix is not copied: the store reads the
+ * mapped rows in place, so loading an index only parses the metadata. The fingerprint and content keys allow to
+ * detect outdated index files.
+ * </p>
+ */
+final class VectorIndexFile {
+    /**
+     * The version of the file format. Increase on incompatible changes.
+     */
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "LISSAIDX".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = 32;
+    private static final int MATRIX_ALIGNMENT = 64;
+
+    /**
+     * Maximum number of bytes that are mapped or buffered at once.
+     */
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final String fingerprint;
+    private final List<String> identifiers;
+    private final List<String> contentKeys;
+    private final EmbeddingMatrix matrix;
+    private final ByteBuffer strategyIndex;
+
+    private VectorIndexFile(
+            String fingerprint,
+            List<String> identifiers,
+            List<String> contentKeys,
+            EmbeddingMatrix matrix,
+            ByteBuffer strategyIndex) {
+        this.fingerprint = fingerprint;
+        this.identifiers = identifiers;
+        this.contentKeys = contentKeys;
+        this.matrix = matrix;
+        this.strategyIndex = strategyIndex;
+    }
+
+    /**
+     * Returns the normalized embedding matrix, backed by the mapped file.
+     *
+     * @return The read-only embedding matrix; not copied
+     */
+    EmbeddingMatrix matrix() {
+        return matrix;
+    }
+
+    /**
+     * Returns the serialized search structure of the retrieval strategy.
+     *
+     * @return A read-only, big-endian buffer; empty if no search structure was stored
+     */
+    ByteBuffer strategyIndex() {
+        return strategyIndex.asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether this index was created for the given elements (same identifiers in the same order
+     * and same contents) and the embedding creator with the given fingerprint.
+     *
+     * @param elements The elements of the store
+     * @param embeddingFingerprint The fingerprint of the embedding creator
+     * @return {@code true} if the index can be used for the elements
+     */
+    boolean matches(List<Element> elements, String embeddingFingerprint) {
+        if (!fingerprint.equals(embeddingFingerprint) || elements.size() != identifiers.size()) {
+            return false;
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            Element element = elements.get(i);
+            if (!element.getIdentifier().equals(identifiers.get(i))
+                    || !KeyGenerator.generateKey(element.getContent()).equals(contentKeys.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param file The index file
+     * @return The index
+     * @throws IOException If the file cannot be read or is not a valid index file of the current version
+     */
+    static VectorIndexFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a LiSSA index file: " + file);
+            }
+            ByteBuffer header =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a LiSSA index file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(
+                        "Unsupported index file version " + version + " (expected " + VERSION + "): " + file);
+            }
+            int dimension = header.getInt();
+            int count = header.getInt();
+            int metadataLength = header.getInt();
+            long strategyLength = header.getLong();
+
+            long matrixOffset = align(HEADER_BYTES + (long) metadataLength);
+            long matrixLength = (long) count * dimension * Float.BYTES;
+            long strategyOffset = matrixOffset + matrixLength;
+            if (dimension < 0 || count < 0 || strategyOffset + strategyLength != channel.size()) {
+                throw new IOException("Corrupt LiSSA index file: " + file);
+            }
+
+            byte[] metadataBytes = new byte[metadataLength];
+            channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, metadataLength)
+                    .get(metadataBytes);
+            List<String> identifiers = new ArrayList<>(count);
+            List<String> contentKeys = new ArrayList<>(count);
+            String fingerprint;
+            try (DataInputStream metadata = new DataInputStream(new ByteArrayInputStream(metadataBytes))) {
+                fingerprint = metadata.readUTF();
+                for (int i = 0; i < count; i++) {
+                    identifiers.add(metadata.readUTF());
+                    contentKeys.add(metadata.readUTF());
+                }
+            }
+
+            // The mappings stay valid after the channel is closed
+            int rowsPerChunk = Math.max(1, CHUNK_BYTES / Math.max(1, dimension * Float.BYTES));
+            FloatBuffer[] chunks = new FloatBuffer[(count + rowsPerChunk - 1) / rowsPerChunk];
+            for (int row = 0; row < count; row += rowsPerChunk) {
+                int rows = Math.min(rowsPerChunk, count - row);
+                chunks[row / rowsPerChunk] = channel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                matrixOffset + (long) row * dimension * Float.BYTES,
+                                (long) rows * dimension * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+            }
+            EmbeddingMatrix matrix = EmbeddingMatrix.mapped(chunks, rowsPerChunk, dimension);
+
+            if (strategyLength > Integer.MAX_VALUE) {
+                throw new IOException("The strategy section of the index file is too large: " + file);
+            }
+            ByteBuffer strategyIndex = channel.map(FileChannel.MapMode.READ_ONLY, strategyOffset, strategyLength);
+            return new VectorIndexFile(fingerprint, identifiers, contentKeys, matrix, strategyIndex);
+        }
+    }
+
+    /**
+     * Writes an index file. The file is written to a temporary file first and then moved to the target location.
+     *
+     * @param file The index file
+     * @param embeddingFingerprint The fingerprint of the embedding creator
+     * @param elements The elements of the store, in the order of the rows of the matrix
+     * @param matrix The normalized embedding matrix
+     * @param strategyIndex The serialized search structure of the retrieval strategy; may be empty
+     * @throws IOException If the file cannot be written
+     */
+    static void write(
+            Path file,
+            String embeddingFingerprint,
+            List<Element> elements,
+            EmbeddingMatrix matrix,
+            byte[] strategyIndex)
+            throws IOException {
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+        try (DataOutputStream metadata = new DataOutputStream(metadataBytes)) {
+            metadata.writeUTF(embeddingFingerprint);
+            for (Element element : elements) {
+                metadata.writeUTF(element.getIdentifier());
+                metadata.writeUTF(KeyGenerator.generateKey(element.getContent()));
+            }
+        }
+
+        int dimension = matrix.dimension();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC)
+                .putInt(VERSION)
+                .putInt(dimension)
+                .putInt(elements.size())
+                .putInt(metadataBytes.size())
+                .putLong(strategyIndex.length)
+                .flip();
+        long padding = align(HEADER_BYTES + (long) metadataBytes.size()) - HEADER_BYTES - metadataBytes.size();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(metadataBytes.toByteArray()));
+                writeFully(channel, ByteBuffer.allocate((int) padding));
+
+                // The matrix of a store that grew by adding elements may have spare capacity at its end
+                int rowBytes = Math.max(1, dimension * Float.BYTES);
+                int rowsPerChunk = Math.max(1, Math.min(elements.size(), CHUNK_BYTES / 4 / rowBytes));
+                ByteBuffer chunk =
+                        ByteBuffer.allocate(rowsPerChunk * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int row = 0; row < elements.size(); row += rowsPerChunk) {
+                    int rows = Math.min(rowsPerChunk, elements.size() - row);
+                    chunk.clear();
+                    matrix.copyRows(row, rows, chunk.asFloatBuffer());
+                    chunk.limit(rows * dimension * Float.BYTES);
+                    writeFully(channel, chunk);
+                }
+
+                writeFully(channel, ByteBuffer.wrap(strategyIndex));
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + MATRIX_ALIGNMENT - 1) / MATRIX_ALIGNMENT * MATRIX_ALIGNMENT;
+    }
+}
@@ -0,0 +1,148 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Numeric kernels on embedding vectors used by the {@link ElementStore} and the retrieval strategies.
+ * <p>
+ * If the JVM runs with the incubating Vector API ({@code --add-modules jdk.incubator.vector}),
+ * the dot product is computed with SIMD instructions by {@code SimdVectorMath}. Otherwise, a
+ * scalar implementation is used. Both accumulate in single precision.
+ * </p>
+ * <p>
+ * {@code SimdVectorMath} is compiled separately (see {@code src/main/java-simd}), so that only it needs the
+ * incubating module at compile time. It is therefore loaded by name.
+ * </p>
+ */
+public final class VectorMath {
+    private static final Logger logger = LoggerFactory.getLogger(VectorMath.class);
+
+    private static final String SIMD_KERNEL_CLASS = VectorMath.class.getPackageName() + ".SimdVectorMath";
+
+    /**
+     * The SIMD dot product, or {@code null} if the Vector API module is not available in this JVM.
+     */
+    private static final DotKernel SIMD_KERNEL = loadSimdKernel();
+
+    private VectorMath() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * A dot product of two vectors stored at offsets of two arrays.
+     */
+    interface DotKernel {
+        float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+    }
+
+    private static DotKernel loadSimdKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            logger.info("Vector API not enabled (--add-modules jdk.incubator.vector), using scalar similarity kernel");
+            return null;
+        }
+        try {
+            DotKernel kernel = (DotKernel) Class.forName(SIMD_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+            logger.info("Using the Vector API for similarity computations");
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Could not load the SIMD similarity kernel, using scalar similarity kernel", e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the dot product is computed with the Vector API.
+     *
+     * @return {@code true} if the SIMD kernel is used, {@code false} if the scalar kernel is used
+     */
+    static boolean usesSimd() {
+        return SIMD_KERNEL != null;
+    }
+
+    /**
+     * Computes the dot product of two vectors stored at the given offsets of two arrays.
+     *
+     * @param a The array containing the first vector
+     * @param aOffset The offset of the first vector in {@code a}
+     * @param b The array containing the second vector
+     * @param bOffset The offset of the second vector in {@code b}
+     * @param length The length of the vectors
+     * @return The dot product
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (SIMD_KERNEL != null) {
+            return SIMD_KERNEL.dot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two vectors of equal length.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The dot product
+     * @throws IllegalArgumentException If the vectors have different lengths
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Returns a unit-length copy of the given vector. A zero vector is returned as a zero vector.
+     *
+     * @param vector The vector to normalize
+     * @return The normalized copy
+     */
+    public static float[] normalized(float[] vector) {
+        float[] copy = vector.clone();
+        normalize(copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Scales the vector at the given offset of the array to unit length in place.
+     * A zero vector is left unchanged.
+     *
+     * @param data The array containing the vector
+     * @param offset The offset of the vector in {@code data}
+     * @param length The length of the vector
+     */
+    public static void normalize(float[] data, int offset, int length) {
+        double norm = 0;
+        for (int i = offset; i < offset + length; i++) {
+            norm += (double) data[i] * data[i];
+        }
+        if (norm == 0) {
+            return;
+        }
+        double inverseNorm = 1 / Math.sqrt(norm);
+        for (int i = offset; i < offset + length; i++) {
+            data[i] = (float) (data[i] * inverseNorm);
+        }
+    }
+
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        // Four independent accumulators let the CPU pipeline the multiplications
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+            sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+}
@@ -0,0 +1,127 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A cosine similarity strategy that returns a variable number of elements per query, depending on the shape of
+ * the similarity scores. Each returned element is a candidate for a (costly) classification, so cutting off
+ * elements that are clearly less similar than the best ones reduces the number of classification tasks.
+ * <p>
+ * The {@code max_results} most similar elements are retrieved as by {@link CosineSimilarity}. They are then cut
+ * after the last element that satisfies all enabled criteria:
+ * </p>
+ * <ul>
+ *     <li>its similarity is at least {@code similarity_floor},</li>
+ *     <li>its similarity is at least {@code (1 - relative_drop)} times the best similarity, and</li>
+ *     <li>with {@code largest_gap}, it comes before the largest gap between two consecutive similarities.</li>
+ * </ul>
+ * At least {@code min_results} elements are returned if the store has that many.
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code min_results}: Minimum number of results per query (default: 1)</li>
+ *     <li>{@code similarity_floor}: Minimum cosine similarity; -1 disables the floor (default: -1)</li>
+ *     <li>{@code relative_drop}: Maximum drop from the best similarity as a fraction of it; 0 disables the
+ *     criterion (default: 0)</li>
+ *     <li>{@code largest_gap}: Whether to cut at the largest gap between consecutive similarities (default: false)</li>
+ * </ul>
+ * The quantization options of {@link CosineSimilarity} are supported as well.
+ */
+public class AdaptiveCutoff extends CosineSimilarity {
+    private final int minResults;
+    private final float similarityFloor;
+    private final float relativeDrop;
+    private final boolean largestGap;
+
+    public AdaptiveCutoff(ModuleConfiguration configuration) {
+        super(configuration);
+        this.minResults = configuration.argumentAsInt("min_results", 1);
+        this.similarityFloor = (float) configuration.argumentAsDouble("similarity_floor", -1);
+        this.relativeDrop = (float) configuration.argumentAsDouble("relative_drop", 0);
+        this.largestGap = configuration.argumentAsBoolean("largest_gap", false);
+        if (minResults < 0 || minResults > maxResults()) {
+            throw new IllegalArgumentException("min_results must be between 0 and max_results.");
+        }
+        if (relativeDrop < 0 || relativeDrop > 1) {
+            throw new IllegalArgumentException("relative_drop must be in [0, 1].");
+        }
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        return cut(super.findSimilarElements(query, elementsInStore));
+    }
+
+    /**
+     * Answers the queries with the batched scan of {@link CosineSimilarity}, cuts the results and logs how many
+     * candidates the cutoff saved compared with returning {@code max_results} elements per query.
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        List<List<Pair<Element, Float>>> fixedResults = super.findSimilarElementsBatch(queries, elementsInStore);
+        List<List<Pair<Element, Float>>> results = new ArrayList<>(fixedResults.size());
+        long fixedCount = 0;
+        long cutCount = 0;
+        for (List<Pair<Element, Float>> fixedResult : fixedResults) {
+            List<Pair<Element, Float>> result = cut(fixedResult);
+            fixedCount += fixedResult.size();
+            cutCount += result.size();
+            results.add(result);
+        }
+        if (fixedCount > 0) {
+            logger.info(
+                    "Adaptive cutoff kept {} of {} candidates for {} queries ({} fewer than max_results={})",
+                    cutCount,
+                    fixedCount,
+                    queries.size(),
+                    String.format(Locale.ROOT, "%.1f%%", 100.0 * (fixedCount - cutCount) / fixedCount),
+                    maxResults() == Integer.MAX_VALUE ? MAX_RESULTS_INFINITY_ARGUMENT : maxResults());
+        }
+        return results;
+    }
+
+    /**
+     * Cuts a list of elements sorted by descending similarity according to the configured criteria.
+     */
+    private List<Pair<Element, Float>> cut(List<Pair<Element, Float>> similarElements) {
+        if (similarElements.isEmpty()) {
+            return similarElements;
+        }
+        int lowerBound = Math.min(minResults, similarElements.size());
+        float best = similarElements.getFirst().second();
+        float threshold = similarityFloor;
+        if (relativeDrop > 0) {
+            threshold = Math.max(threshold, best - relativeDrop * Math.abs(best));
+        }
+        int count = lowerBound;
+        while (count < similarElements.size() && similarElements.get(count).second() >= threshold) {
+            count++;
+        }
+
+        // A single gap is always the largest one, so only cut if there are at least two to choose from
+        int firstGap = Math.max(1, lowerBound);
+        if (largestGap && count - firstGap > 1) {
+            int cutAfter = firstGap;
+            float largest = Float.NEGATIVE_INFINITY;
+            for (int i = firstGap; i < count; i++) {
+                float gap = similarElements.get(i - 1).second() - similarElements.get(i).second();
+                if (gap > largest) {
+                    largest = gap;
+                    cutAfter = i;
+                }
+            }
+            count = cutAfter;
+        }
+        return new ArrayList<>(similarElements.subList(0, count));
+    }
+}
@@ -0,0 +1,134 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A two-stage retrieval strategy: a scan over binary (sign-bit) codes of the embeddings selects a shortlist,
+ * which is then reranked with exact cosine similarity.
+ * <p>
+ * At setup, every embedding is packed into {@code ceil(dimension / 64)} {@code long}s holding the signs of its
+ * values. The distance of two codes is the Hamming distance ({@link Long#bitCount(long)} of their XOR), which
+ * approximates the angle between the embeddings. Scanning the codes reads 32 times less memory than scanning
+ * the float embeddings. The {@code oversampling * max_results} elements with the smallest Hamming distance
+ * are reranked exactly, so the returned scores are exact cosine similarities.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code oversampling}: Size of the shortlist as a multiple of {@code max_results} (default: 10)</li>
+ * </ul>
+ * If the shortlist would cover the whole store, the strategy scans exactly.
+ */
+public class BinaryRerank extends CosineSimilarity {
+    private final int oversampling;
+
+    private ElementVectors elements;
+    private long[] codes;
+    private int wordsPerCode;
+
+    public BinaryRerank(ModuleConfiguration configuration) {
+        super(configuration);
+        this.oversampling = configuration.argumentAsInt("oversampling", 10);
+        if (quantization() != QuantizedVectors.Quantization.NONE) {
+            throw new IllegalArgumentException("The binary_rerank strategy does not support quantization.");
+        }
+        if (oversampling < 1) {
+            throw new IllegalArgumentException("The oversampling factor must be greater than 0.");
+        }
+    }
+
+    /**
+     * Packs the signs of the embeddings of the given elements into binary codes.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (codes != null) {
+            throw new IllegalStateException("The binary codes are already built.");
+        }
+        this.wordsPerCode = (elementsInStore.dimension() + Long.SIZE - 1) / Long.SIZE;
+        this.codes = new long[elementsInStore.size() * wordsPerCode];
+        for (int i = 0; i < elementsInStore.size(); i++) {
+            pack(elementsInStore.vector(i), codes, i * wordsPerCode);
+        }
+        this.elements = elementsInStore;
+    }
+
+    /**
+     * Packs the codes of added elements; removed elements are skipped by the scan. After the store was compacted,
+     * all codes are packed again.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (previousSize == 0 || codes == null) {
+            this.codes = null;
+            setup(elementsInStore);
+            return;
+        }
+        this.codes = Arrays.copyOf(codes, elementsInStore.size() * wordsPerCode);
+        for (int i = previousSize; i < elementsInStore.size(); i++) {
+            pack(elementsInStore.vector(i), codes, i * wordsPerCode);
+        }
+        this.elements = elementsInStore;
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        long shortlistSize = (long) maxResults() * oversampling;
+        if (elementsInStore != elements || shortlistSize >= elementsInStore.size()) {
+            return super.findSimilarElements(query, elementsInStore);
+        }
+
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        if (normalizedQuery.length != elementsInStore.dimension()) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        long[] queryCode = new long[wordsPerCode];
+        pack(normalizedQuery, queryCode, 0);
+
+        TopKSelector shortlist = new TopKSelector((int) shortlistSize, elementsInStore.size());
+        for (int i = 0; i < elementsInStore.size(); i++) {
+            if (elementsInStore.isRemoved(i)) {
+                continue;
+            }
+            int offset = i * wordsPerCode;
+            int distance = 0;
+            for (int w = 0; w < wordsPerCode; w++) {
+                distance += Long.bitCount(codes[offset + w] ^ queryCode[w]);
+            }
+            shortlist.offer(i, -distance);
+        }
+        return toSimilarElements(
+                rerankExactly(shortlist, maxResults(), normalizedQuery, 0, elementsInStore), elementsInStore);
+    }
+
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (elementsInStore != elements || (long) maxResults() * oversampling >= elementsInStore.size()) {
+            return super.findSimilarElementsBatch(queries, elementsInStore);
+        }
+        return findSimilarElementsInParallel(queries, elementsInStore);
+    }
+
+    /**
+     * Sets bit {@code j} of the code if value {@code j} of the vector is positive.
+     */
+    private static void pack(float[] vector, long[] target, int offset) {
+        for (int j = 0; j < vector.length; j++) {
+            if (vector[j] > 0) {
+                target[offset + (j >>> 6)] |= 1L << j;
+            }
+        }
+    }
+}
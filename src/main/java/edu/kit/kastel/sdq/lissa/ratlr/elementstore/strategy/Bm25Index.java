@@ -0,0 +1,215 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+
+/**
+ * An in-memory inverted index over the contents of the elements of a store that ranks them with Okapi BM25.
+ * <p>
+ * Contents are split into identifier-like tokens (letters, digits and underscores). Each token is indexed in
+ * lower case, and compound identifiers ({@code getUserName}, {@code user_name}, {@code HTTPServer2}) are
+ * additionally indexed by their parts, so a query matches both the exact identifier and its words.
+ * The posting list of a term is kept as two parallel {@code int[]}s of document indices (ascending) and term
+ * frequencies. Documents are identified by their index in the list the index was built from, followed by the
+ * indices of {@link #add(List) added} documents.
+ * </p>
+ * Searches do not modify the index and can run concurrently.
+ */
+final class Bm25Index {
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}_]+");
+    private static final Pattern IDENTIFIER_PART_BOUNDARY = Pattern.compile(
+            "_+|(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{Lu})(?=\\p{Lu}\\p{Ll})|(?<=\\p{L})(?=\\p{N})|(?<=\\p{N})(?=\\p{L})");
+
+    private final float k1;
+    private final float b;
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private int[][] postingDocuments = new int[0][];
+    private int[][] postingFrequencies = new int[0][];
+    private int[] documentLengths = new int[0];
+    private long totalLength;
+
+    /**
+     * Builds the index.
+     *
+     * @param documents The contents to index
+     * @param k1 The term frequency saturation of BM25
+     * @param b The document length normalization of BM25
+     */
+    Bm25Index(List<String> documents, float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+        add(documents);
+    }
+
+    /**
+     * Appends documents to the index. They get the indices following the indices of the documents indexed so far.
+     * Must not be called concurrently with searches.
+     *
+     * @param documents The contents to index
+     */
+    void add(List<String> documents) {
+        int firstDocument = documentLengths.length;
+        documentLengths = Arrays.copyOf(documentLengths, firstDocument + documents.size());
+
+        // First pass: term ids and frequencies per document
+        int[][] documentTerms = new int[documents.size()][];
+        int[][] documentFrequencies = new int[documents.size()][];
+        int[] addedPostings = new int[Math.max(16, termIds.size())];
+        for (int document = 0; document < documents.size(); document++) {
+            Map<Integer, Integer> frequencies = new LinkedHashMap<>();
+            List<String> tokens = tokenize(documents.get(document));
+            for (String token : tokens) {
+                Integer termId = termIds.computeIfAbsent(token, ignored -> termIds.size());
+                frequencies.merge(termId, 1, Integer::sum);
+            }
+            documentLengths[firstDocument + document] = tokens.size();
+            totalLength += tokens.size();
+
+            documentTerms[document] = new int[frequencies.size()];
+            documentFrequencies[document] = new int[frequencies.size()];
+            int position = 0;
+            for (Map.Entry<Integer, Integer> entry : frequencies.entrySet()) {
+                int termId = entry.getKey();
+                documentTerms[document][position] = termId;
+                documentFrequencies[document][position++] = entry.getValue();
+                if (termId >= addedPostings.length) {
+                    addedPostings = Arrays.copyOf(addedPostings, Math.max(termId + 1, 2 * addedPostings.length));
+                }
+                addedPostings[termId]++;
+            }
+        }
+
+        // Second pass: append to the posting lists in ascending document order
+        int previousTerms = postingDocuments.length;
+        postingDocuments = Arrays.copyOf(postingDocuments, termIds.size());
+        postingFrequencies = Arrays.copyOf(postingFrequencies, termIds.size());
+        int[] filled = new int[termIds.size()];
+        for (int termId = 0; termId < termIds.size(); termId++) {
+            int previousLength = termId < previousTerms ? postingDocuments[termId].length : 0;
+            filled[termId] = previousLength;
+            if (termId < addedPostings.length && addedPostings[termId] > 0) {
+                postingDocuments[termId] = termId < previousTerms
+                        ? Arrays.copyOf(postingDocuments[termId], previousLength + addedPostings[termId])
+                        : new int[addedPostings[termId]];
+                postingFrequencies[termId] = termId < previousTerms
+                        ? Arrays.copyOf(postingFrequencies[termId], previousLength + addedPostings[termId])
+                        : new int[addedPostings[termId]];
+            }
+        }
+        for (int document = 0; document < documents.size(); document++) {
+            for (int i = 0; i < documentTerms[document].length; i++) {
+                int termId = documentTerms[document][i];
+                int position = filled[termId]++;
+                postingDocuments[termId][position] = firstDocument + document;
+                postingFrequencies[termId][position] = documentFrequencies[document][i];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct terms in the index.
+     *
+     * @return The vocabulary size
+     */
+    int vocabularySize() {
+        return termIds.size();
+    }
+
+    /**
+     * Returns the total number of postings in the index.
+     *
+     * @return The number of (term, document) pairs
+     */
+    long postingCount() {
+        long count = 0;
+        for (int[] documents : postingDocuments) {
+            count += documents.length;
+        }
+        return count;
+    }
+
+    /**
+     * Selects the {@code k} documents with the highest BM25 score for the query. Documents that contain none of
+     * the query terms are not selected. Every distinct query term is counted once.
+     *
+     * @param query The query text, tokenized like the documents
+     * @param k The number of documents to select
+     * @param documents The view whose indices are the documents, used to skip removed elements
+     * @return The selected documents with their scores; not sorted yet
+     */
+    TopKSelector search(String query, int k, ElementVectors documents) {
+        int documentTotal = documentLengths.length;
+        float averageDocumentLength = (float) totalLength / documentTotal;
+        TopKSelector selector = new TopKSelector(k, documentTotal);
+        float[] scores = null;
+        for (String token : new LinkedHashSet<>(tokenize(query))) {
+            Integer termId = termIds.get(token);
+            if (termId == null) {
+                continue;
+            }
+            if (scores == null) {
+                scores = new float[documentTotal];
+            }
+            int[] postings = postingDocuments[termId];
+            int[] frequencies = postingFrequencies[termId];
+            float idf = (float) Math.log(1 + (documentTotal - postings.length + 0.5) / (postings.length + 0.5));
+            for (int i = 0; i < postings.length; i++) {
+                int document = postings[i];
+                float frequency = frequencies[i];
+                float norm = k1 * (1 - b + b * documentLengths[document] / averageDocumentLength);
+                scores[document] += idf * frequency * (k1 + 1) / (frequency + norm);
+            }
+        }
+        if (scores != null) {
+            for (int document = 0; document < documentTotal; document++) {
+                if (scores[document] > 0 && !documents.isRemoved(document)) {
+                    selector.offer(document, scores[document]);
+                }
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * Splits a text into lower-case tokens. Compound identifiers are emitted as a whole, followed by their parts.
+     * Tokens with fewer than two characters are dropped.
+     *
+     * @param text The text to tokenize
+     * @return The tokens, in order of occurrence
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group();
+            addToken(tokens, token);
+            String[] parts = IDENTIFIER_PART_BOUNDARY.split(token);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    addToken(tokens, part);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static void addToken(List<String> tokens, String token) {
+        if (token.length() >= 2) {
+            tokens.add(token.toLowerCase(Locale.ROOT));
+        }
+    }
+}
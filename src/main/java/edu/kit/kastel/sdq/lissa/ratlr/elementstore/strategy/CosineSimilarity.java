@@ -2,9 +2,19 @@
 package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.QuantizedVectors.Quantization;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
@@ -13,6 +23,25 @@ import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
  * vectors of elements in the store. This strategy is used for finding similar elements
  * based on their vector embeddings.
  * It supports a configurable maximum number of results to return.
+ * <p>
+ * The embeddings in the store are normalized when the store is set up. The query is normalized
+ * once per call, so each comparison is a single (SIMD-accelerated, see {@link VectorMath}) dot product.
+ * Only the {@code max_results} best elements are kept while scanning (see {@link TopKSelector}); elements
+ * with equal similarity keep the order of the store.
+ * </p>
+ * <p>
+ * Optionally, the embeddings are scalar-quantized at setup ({@link QuantizedVectors}) and scored directly on their
+ * codes, which reduces the bytes read per scan; the best candidates can then be rescored in full precision.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code quantization}: {@code none}, {@code fp16} or {@code int8} (default: none)</li>
+ *     <li>{@code rescore_candidates}: With quantization, the number of best quantized candidates that are
+ *         rescored in full precision; 0 disables rescoring (default: 0)</li>
+ *     <li>{@code recall_sample}: With quantization, the number of stored embeddings used as queries to report the
+ *         recall@max_results compared with exact scoring at setup; 0 disables the report (default: 32)</li>
+ * </ul>
  */
 public class CosineSimilarity implements RetrievalStrategy {
     /**
@@ -21,7 +50,27 @@ public class CosineSimilarity implements RetrievalStrategy {
      */
     public static final String MAX_RESULTS_INFINITY_ARGUMENT = "infinity";
 
+    /**
+     * Maximum number of queries that are scored together against a tile of elements in batch retrieval.
+     */
+    private static final int QUERY_BLOCK_SIZE = 16;
+
+    /**
+     * Approximate size of a tile of element embeddings in batch retrieval, chosen to stay in the L2 cache.
+     */
+    private static final int TILE_BYTES = 256 * 1024;
+
+    private static final String QUANTIZATION_KEY = "quantization";
+
     private final int maxResults;
+    private final Quantization quantization;
+    private final int rescoreCandidates;
+    private final int recallSample;
+
+    /**
+     * Quantized copy of the embeddings of the view this strategy was set up with; {@code null} without quantization.
+     */
+    private QuantizedVectors quantizedVectors;
 
     public CosineSimilarity(ModuleConfiguration configuration) {
         final String maxResultsKey = "max_results";
@@ -36,34 +85,399 @@ public class CosineSimilarity implements RetrievalStrategy {
                 throw new IllegalArgumentException("The maximum number of results must be greater than 0.");
             }
         }
+
+        // Only read if present to keep the serialized configuration of unquantized stores unchanged
+        this.quantization = configuration.hasArgument(QUANTIZATION_KEY)
+                ? Quantization.fromArgument(configuration.argumentAsString(QUANTIZATION_KEY))
+                : Quantization.NONE;
+        if (quantization == Quantization.NONE) {
+            this.rescoreCandidates = 0;
+            this.recallSample = 0;
+        } else {
+            this.rescoreCandidates = configuration.argumentAsInt("rescore_candidates", 0);
+            this.recallSample = configuration.argumentAsInt("recall_sample", 32);
+            if (rescoreCandidates < 0 || recallSample < 0) {
+                throw new IllegalArgumentException("rescore_candidates and recall_sample must not be negative.");
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of results per query.
+     *
+     * @return The maximum number of results, {@link Integer#MAX_VALUE} if unlimited
+     */
+    protected final int maxResults() {
+        return maxResults;
+    }
+
+    /**
+     * Returns the configured quantization mode.
+     *
+     * @return The quantization mode
+     */
+    final Quantization quantization() {
+        return quantization;
+    }
+
+    /**
+     * Quantizes the embeddings if a quantization mode is configured and reports the recall of the quantized
+     * scoring compared with exact scoring.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (quantization == Quantization.NONE) {
+            return;
+        }
+        this.quantizedVectors = QuantizedVectors.quantize(elementsInStore, quantization);
+        logger.info(
+                "Quantized {} embeddings to {} ({} KiB scanned per query instead of {} KiB)",
+                elementsInStore.size(),
+                quantization.name().toLowerCase(Locale.ROOT),
+                quantizedVectors.sizeInBytes() / 1024,
+                (long) elementsInStore.size() * elementsInStore.dimension() * Float.BYTES / 1024);
+        reportRecall(elementsInStore);
+    }
+
+    /**
+     * Quantizes the added embeddings, or all embeddings after the store was compacted.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (quantization == Quantization.NONE) {
+            return;
+        }
+        if (previousSize == 0 || quantizedVectors == null) {
+            this.quantizedVectors = null;
+            setup(elementsInStore);
+        } else {
+            this.quantizedVectors = quantizedVectors.extend(elementsInStore, previousSize);
+        }
     }
 
     @Override
     public List<Pair<Element, Float>> findSimilarElements(
-            Pair<Element, float[]> query, List<Pair<Element, float[]>> allElementsInStore) {
-        List<Pair<Element, Float>> similarElements = new ArrayList<>();
-        for (var element : allElementsInStore) {
-            float[] elementVector = element.second();
-            float similarity = cosineSimilarity(query.second(), elementVector);
-            similarElements.add(new Pair<>(element.first(), similarity));
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        QuantizedVectors scoring = quantizedVectorsFor(elementsInStore);
+        TopKSelector selector = new TopKSelector(candidatesPerQuery(scoring), elementsInStore.size());
+        if (scoring == null) {
+            for (int i = 0; i < elementsInStore.size(); i++) {
+                if (!elementsInStore.isRemoved(i)) {
+                    selector.offer(i, elementsInStore.dot(i, normalizedQuery));
+                }
+            }
+        } else {
+            scoreQuantized(scoring, normalizedQuery, 0, elementsInStore, selector);
+        }
+        return toSimilarElements(rescore(selector, scoring, normalizedQuery, 0, elementsInStore), elementsInStore);
+    }
+
+    /**
+     * Scores all queries against all elements as a blocked matrix multiplication.
+     * <p>
+     * The queries are split into blocks of at most {@value #QUERY_BLOCK_SIZE} queries, which are scored in
+     * parallel on the common {@link ForkJoinPool}. Each block walks over the elements in tiles of about
+     * {@value #TILE_BYTES} bytes and scores every query of the block against the tile before moving on,
+     * so a tile is loaded into the cache once per block instead of once per query. Every query has its own
+     * {@link TopKSelector} that is fed by ascending element index, so the results equal those of
+     * {@link #findSimilarElements(Pair, ElementVectors)}.
+     * </p>
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (elementsInStore.size() == 0) {
+            // The dimension of an empty store is unknown (0), like the single-query search, find nothing
+            List<List<Pair<Element, Float>>> results = new ArrayList<>(queries.size());
+            for (int q = 0; q < queries.size(); q++) {
+                results.add(new ArrayList<>());
+            }
+            return results;
+        }
+        int dimension = elementsInStore.dimension();
+        float[] normalizedQueries = new float[queries.size() * dimension];
+        for (int q = 0; q < queries.size(); q++) {
+            float[] query = queries.get(q).second();
+            if (query.length != dimension) {
+                throw new IllegalArgumentException(
+                        "The length of the query vector and the element vector must be equal.");
+            }
+            System.arraycopy(query, 0, normalizedQueries, q * dimension, dimension);
+            VectorMath.normalize(normalizedQueries, q * dimension, dimension);
+        }
+
+        QuantizedVectors scoring = quantizedVectorsFor(elementsInStore);
+        TopKSelector[] selectors = new TopKSelector[queries.size()];
+        for (int q = 0; q < selectors.length; q++) {
+            selectors[q] = new TopKSelector(candidatesPerQuery(scoring), elementsInStore.size());
+        }
+        int tileSize = tileSize(dimension);
+        ForkJoinPool.commonPool()
+                .invoke(new ScoreQueryBlocks(
+                        0, selectors.length, normalizedQueries, elementsInStore, scoring, selectors, tileSize));
+
+        List<List<Pair<Element, Float>>> results = new ArrayList<>(selectors.length);
+        for (int q = 0; q < selectors.length; q++) {
+            TopKSelector selector = rescore(selectors[q], scoring, normalizedQueries, q * dimension, elementsInStore);
+            results.add(toSimilarElements(selector, elementsInStore));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the quantized embeddings if they can be used to score the given view.
+     * Views this strategy was not set up with are always scored exactly.
+     */
+    private QuantizedVectors quantizedVectorsFor(ElementVectors elementsInStore) {
+        return quantizedVectors != null && quantizedVectors.isFor(elementsInStore) ? quantizedVectors : null;
+    }
+
+    /**
+     * Returns the number of candidates to select per query; more than {@code max_results} if quantized
+     * candidates are rescored.
+     */
+    private int candidatesPerQuery(QuantizedVectors scoring) {
+        return scoring == null ? maxResults : Math.max(maxResults, rescoreCandidates);
+    }
+
+    /**
+     * Rescores the candidates selected with quantized scores in full precision and keeps the best {@code max_results}.
+     * Without quantization or rescoring, the selector is returned unchanged.
+     */
+    private TopKSelector rescore(
+            TopKSelector selector,
+            QuantizedVectors scoring,
+            float[] queries,
+            int queryOffset,
+            ElementVectors elementsInStore) {
+        if (scoring == null || rescoreCandidates == 0) {
+            return selector;
         }
-        similarElements.sort((a, b) -> Float.compare(b.second(), a.second()));
-        return similarElements.subList(0, Math.min(maxResults, similarElements.size()));
+        return rerankExactly(selector, maxResults, queries, queryOffset, elementsInStore);
     }
 
-    private float cosineSimilarity(float[] queryVector, float[] elementVector) {
-        if (queryVector.length != elementVector.length) {
-            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+    /**
+     * Scores the candidates of a selector with exact cosine similarity and keeps the best {@code k}.
+     *
+     * @param candidates The selected candidates; the selector is sorted by this method
+     * @param k The number of candidates to keep
+     * @param queries The array containing the normalized query
+     * @param queryOffset The offset of the query in {@code queries}
+     * @param elementsInStore The view the candidate indices refer to
+     * @return A new selector with the best {@code k} candidates and their exact scores
+     */
+    static TopKSelector rerankExactly(
+            TopKSelector candidates, int k, float[] queries, int queryOffset, ElementVectors elementsInStore) {
+        candidates.sort();
+        int[] indices = new int[candidates.size()];
+        for (int rank = 0; rank < indices.length; rank++) {
+            indices[rank] = candidates.index(rank);
+        }
+        // Offer by ascending index to keep the tie order of an exact scan
+        Arrays.sort(indices);
+        TopKSelector reranked = new TopKSelector(k, indices.length);
+        for (int index : indices) {
+            reranked.offer(index, elementsInStore.dot(index, queries, queryOffset));
         }
+        return reranked;
+    }
+
+    /**
+     * Answers the queries independently with {@link #findSimilarElements(Pair, ElementVectors)}, in parallel on the
+     * common {@link ForkJoinPool}. Used by subclasses whose single-query search does not benefit from blocking.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @param elementsInStore Read-only view on the elements that can be retrieved
+     * @return For each query (in the same order), the similar elements with their similarity scores
+     */
+    protected final List<List<Pair<Element, Float>>> findSimilarElementsInParallel(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        List<List<Pair<Element, Float>>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        ForkJoinPool.commonPool().invoke(new FindEach(0, queries.size(), queries, elementsInStore, results));
+        return results;
+    }
 
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        for (int i = 0; i < queryVector.length; i++) {
-            dotProduct += queryVector[i] * elementVector[i];
-            normA += Math.pow(queryVector[i], 2);
-            normB += Math.pow(elementVector[i], 2);
+    /**
+     * Logs the recall@k of the quantized scoring (including rescoring) compared with exact scoring, using a sample
+     * of the stored embeddings as queries.
+     */
+    private void reportRecall(ElementVectors elementsInStore) {
+        int sampleSize = Math.min(recallSample, elementsInStore.size());
+        if (sampleSize == 0) {
+            return;
+        }
+        int k = Math.min(maxResults, elementsInStore.size());
+        long found = 0;
+        for (int sample = 0; sample < sampleSize; sample++) {
+            int queryIndex = (int) ((long) sample * elementsInStore.size() / sampleSize);
+            float[] query = elementsInStore.vector(queryIndex);
+
+            TopKSelector exact = new TopKSelector(k, elementsInStore.size());
+            for (int i = 0; i < elementsInStore.size(); i++) {
+                if (!elementsInStore.isRemoved(i)) {
+                    exact.offer(i, elementsInStore.dot(i, query));
+                }
+            }
+            TopKSelector approximate = new TopKSelector(candidatesPerQuery(quantizedVectors), elementsInStore.size());
+            scoreQuantized(quantizedVectors, query, 0, elementsInStore, approximate);
+            approximate = rescore(approximate, quantizedVectors, query, 0, elementsInStore);
+            exact.sort();
+            approximate.sort();
+
+            Set<Integer> exactIndices = new HashSet<>();
+            for (int rank = 0; rank < exact.size(); rank++) {
+                exactIndices.add(exact.index(rank));
+            }
+            for (int rank = 0; rank < Math.min(k, approximate.size()); rank++) {
+                if (exactIndices.contains(approximate.index(rank))) {
+                    found++;
+                }
+            }
+        }
+        logger.info(
+                "Recall@{} of {} scoring (rescore_candidates={}) compared with exact cosine similarity: {}"
+                        + " ({} sample queries)",
+                k,
+                quantization.name().toLowerCase(Locale.ROOT),
+                rescoreCandidates,
+                String.format(Locale.ROOT, "%.4f", (double) found / ((long) k * sampleSize)),
+                sampleSize);
+    }
+
+    /**
+     * Scores a single query against all quantized embeddings.
+     */
+    private static void scoreQuantized(
+            QuantizedVectors scoring,
+            float[] query,
+            int queryOffset,
+            ElementVectors elementsInStore,
+            TopKSelector selector) {
+        for (int i = 0; i < elementsInStore.size(); i++) {
+            if (!elementsInStore.isRemoved(i)) {
+                selector.offer(i, scoring.dot(i, query, queryOffset));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of embeddings in a tile of about {@value #TILE_BYTES} bytes.
+     */
+    private static int tileSize(int dimension) {
+        return Math.max(1, TILE_BYTES / Math.max(1, dimension * Float.BYTES));
+    }
+
+    static List<Pair<Element, Float>> toSimilarElements(TopKSelector selector, ElementVectors elementsInStore) {
+        selector.sort();
+        List<Pair<Element, Float>> similarElements = new ArrayList<>(selector.size());
+        for (int rank = 0; rank < selector.size(); rank++) {
+            similarElements.add(new Pair<>(elementsInStore.element(selector.index(rank)), selector.score(rank)));
+        }
+        return similarElements;
+    }
+
+    /**
+     * Answers the queries {@code [from, to)} one by one, recursively splitting the range into single queries.
+     * Each task writes only the result slots of its own queries.
+     */
+    private final class FindEach extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final List<Pair<Element, float[]>> queries;
+        private final ElementVectors elementsInStore;
+        private final List<List<Pair<Element, Float>>> results;
+
+        private FindEach(
+                int from,
+                int to,
+                List<Pair<Element, float[]>> queries,
+                ElementVectors elementsInStore,
+                List<List<Pair<Element, Float>>> results) {
+            this.from = from;
+            this.to = to;
+            this.queries = queries;
+            this.elementsInStore = elementsInStore;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new FindEach(from, middle, queries, elementsInStore, results),
+                        new FindEach(middle, to, queries, elementsInStore, results));
+                return;
+            }
+            if (from < to) {
+                results.set(from, findSimilarElements(queries.get(from), elementsInStore));
+            }
+        }
+    }
+
+    /**
+     * Scores the queries {@code [from, to)} by recursively splitting them into blocks of at most
+     * {@value #QUERY_BLOCK_SIZE} queries. Each selector is only touched by the task that owns its query.
+     */
+    private static final class ScoreQueryBlocks extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final float[] normalizedQueries;
+        private final ElementVectors elementsInStore;
+        private final QuantizedVectors scoring;
+        private final TopKSelector[] selectors;
+        private final int tileSize;
+
+        private ScoreQueryBlocks(
+                int from,
+                int to,
+                float[] normalizedQueries,
+                ElementVectors elementsInStore,
+                QuantizedVectors scoring,
+                TopKSelector[] selectors,
+                int tileSize) {
+            this.from = from;
+            this.to = to;
+            this.normalizedQueries = normalizedQueries;
+            this.elementsInStore = elementsInStore;
+            this.scoring = scoring;
+            this.selectors = selectors;
+            this.tileSize = tileSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > QUERY_BLOCK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new ScoreQueryBlocks(
+                                from, middle, normalizedQueries, elementsInStore, scoring, selectors, tileSize),
+                        new ScoreQueryBlocks(
+                                middle, to, normalizedQueries, elementsInStore, scoring, selectors, tileSize));
+                return;
+            }
+
+            int dimension = elementsInStore.dimension();
+            for (int tileStart = 0; tileStart < elementsInStore.size(); tileStart += tileSize) {
+                int tileEnd = Math.min(tileStart + tileSize, elementsInStore.size());
+                for (int q = from; q < to; q++) {
+                    TopKSelector selector = selectors[q];
+                    int queryOffset = q * dimension;
+                    for (int i = tileStart; i < tileEnd; i++) {
+                        if (elementsInStore.isRemoved(i)) {
+                            continue;
+                        }
+                        selector.offer(
+                                i,
+                                scoring == null
+                                        ? elementsInStore.dot(i, normalizedQueries, queryOffset)
+                                        : scoring.dot(i, normalizedQueries, queryOffset));
+                    }
+                }
+            }
         }
-        return (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)));
     }
 }
@@ -0,0 +1,223 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A coarse-to-fine retrieval strategy for stores whose elements form a hierarchy, e.g., the file (0), class (1)
+ * and method (2) elements of the {@code code_method} preprocessor.
+ * <p>
+ * At setup, every element is assigned to its ancestor (or itself) with granularity {@code parent_granularity}.
+ * The ancestors are usually not compared themselves, so each of them is represented by the normalized mean of
+ * the embeddings of its assigned elements. A query first scores these pooled embeddings, then scores only the
+ * elements of the {@code expanded_parents} most similar ancestors exactly, plus the elements without such an
+ * ancestor. On a large codebase, this scores a small fraction of the elements per query. The returned scores are
+ * exact cosine similarities; an element is missed if its ancestor is not among the expanded ones.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code parent_granularity}: Granularity of the ancestors that are ranked first (default: 0)</li>
+ *     <li>{@code expanded_parents}: Number of most similar ancestors whose elements are searched (default: 10)</li>
+ * </ul>
+ * If all ancestors would be expanded, if {@code max_results} covers the whole store, or if another view than the
+ * one the strategy was set up with is searched (e.g., a filtered view), the strategy scans exactly.
+ */
+public class Hierarchical extends CosineSimilarity {
+    private final int parentGranularity;
+    private final int expandedParents;
+
+    private ElementVectors elements;
+    private int dimension;
+
+    private final Map<String, Integer> parentIds = new HashMap<>();
+
+    /**
+     * Sum of the embeddings of the elements of each parent, row-major by parent id. Like {@link #members} and
+     * {@link #memberCounts}, it has spare capacity for parents that are added later.
+     */
+    private float[] parentSums = new float[0];
+
+    /**
+     * The normalized {@link #parentSums}, i.e., the pooled embedding of each parent.
+     */
+    private float[] parentVectors = new float[0];
+
+    private int[][] members = new int[0][];
+    private int[] memberCounts = new int[0];
+    private int[] orphans = new int[0];
+    private int orphanCount;
+
+    public Hierarchical(ModuleConfiguration configuration) {
+        super(configuration);
+        this.parentGranularity = configuration.argumentAsInt("parent_granularity", 0);
+        this.expandedParents = configuration.argumentAsInt("expanded_parents", 10);
+        if (quantization() != QuantizedVectors.Quantization.NONE) {
+            throw new IllegalArgumentException("The hierarchical strategy does not support quantization.");
+        }
+        if (parentGranularity < 0 || expandedParents < 1) {
+            throw new IllegalArgumentException(
+                    "parent_granularity must not be negative and expanded_parents must be greater than 0.");
+        }
+    }
+
+    /**
+     * Assigns the elements to their ancestors and pools the embeddings of each ancestor.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (elements != null) {
+            throw new IllegalStateException("The hierarchical strategy is already set up.");
+        }
+        this.dimension = elementsInStore.dimension();
+        assign(elementsInStore, 0);
+        logger.info(
+                "Grouped {} elements under {} parents of granularity {} ({} without such a parent)",
+                elementsInStore.size(),
+                parentIds.size(),
+                parentGranularity,
+                orphanCount);
+    }
+
+    /**
+     * Assigns added elements to their ancestors; removed elements are skipped by searches, but stay part of the
+     * pooled embeddings. After the store was compacted, the elements are assigned again.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (previousSize == 0 || elements == null) {
+            parentIds.clear();
+            this.parentSums = new float[0];
+            this.parentVectors = new float[0];
+            this.members = new int[0][];
+            this.memberCounts = new int[0];
+            this.orphans = new int[0];
+            this.orphanCount = 0;
+            this.elements = null;
+            setup(elementsInStore);
+            return;
+        }
+        assign(elementsInStore, previousSize);
+    }
+
+    /**
+     * Assigns the elements {@code [from, size)} of the view and recomputes the pooled embeddings.
+     */
+    private void assign(ElementVectors elementsInStore, int from) {
+        for (int i = from; i < elementsInStore.size(); i++) {
+            Element parent = ancestorAtParentGranularity(elementsInStore.element(i));
+            if (parent == null) {
+                orphans = append(orphans, orphanCount++, i);
+                continue;
+            }
+            int parentId = parentIds.computeIfAbsent(parent.getIdentifier(), ignored -> addParent());
+            members[parentId] = append(members[parentId], memberCounts[parentId]++, i);
+            float[] vector = elementsInStore.vector(i);
+            for (int d = 0; d < dimension; d++) {
+                parentSums[parentId * dimension + d] += vector[d];
+            }
+        }
+        this.parentVectors = Arrays.copyOf(parentSums, parentIds.size() * dimension);
+        for (int parentId = 0; parentId < parentIds.size(); parentId++) {
+            VectorMath.normalize(parentVectors, parentId * dimension, dimension);
+        }
+        this.elements = elementsInStore;
+    }
+
+    private int addParent() {
+        int parentId = parentIds.size();
+        if (parentId == members.length) {
+            int capacity = Math.max(16, 2 * members.length);
+            parentSums = Arrays.copyOf(parentSums, capacity * dimension);
+            members = Arrays.copyOf(members, capacity);
+            memberCounts = Arrays.copyOf(memberCounts, capacity);
+        }
+        members[parentId] = new int[4];
+        return parentId;
+    }
+
+    private Element ancestorAtParentGranularity(Element element) {
+        Element current = element;
+        while (current != null && current.getGranularity() > parentGranularity) {
+            current = current.getParent();
+        }
+        return current != null && current.getGranularity() == parentGranularity ? current : null;
+    }
+
+    private static int[] append(int[] array, int size, int value) {
+        int[] result = size < array.length ? array : Arrays.copyOf(array, Math.max(4, 2 * array.length));
+        result[size] = value;
+        return result;
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        if (elements == null) {
+            throw new IllegalStateException(
+                    "The hierarchical strategy has not been set up. Set up the element store first.");
+        }
+        if (scansExactly(elementsInStore)) {
+            return super.findSimilarElements(query, elementsInStore);
+        }
+
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        int parentCount = parentIds.size();
+        TopKSelector parents = new TopKSelector(expandedParents, parentCount);
+        for (int parentId = 0; parentId < parentCount; parentId++) {
+            parents.offer(parentId, VectorMath.dot(normalizedQuery, 0, parentVectors, parentId * dimension, dimension));
+        }
+        parents.sort();
+
+        int candidateCount = orphanCount;
+        for (int rank = 0; rank < parents.size(); rank++) {
+            candidateCount += memberCounts[parents.index(rank)];
+        }
+        int[] candidates = Arrays.copyOf(orphans, candidateCount);
+        int filled = orphanCount;
+        for (int rank = 0; rank < parents.size(); rank++) {
+            int parentId = parents.index(rank);
+            System.arraycopy(members[parentId], 0, candidates, filled, memberCounts[parentId]);
+            filled += memberCounts[parentId];
+        }
+        // Offer by ascending index to keep the tie order of an exact scan
+        Arrays.sort(candidates);
+
+        TopKSelector selector = new TopKSelector(maxResults(), candidateCount);
+        for (int index : candidates) {
+            if (!elementsInStore.isRemoved(index)) {
+                selector.offer(index, elementsInStore.dot(index, normalizedQuery));
+            }
+        }
+        return toSimilarElements(selector, elementsInStore);
+    }
+
+    /**
+     * Answers the queries in parallel, or by a batched exact scan if the strategy would scan exactly anyway.
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (elements != null && scansExactly(elementsInStore)) {
+            return super.findSimilarElementsBatch(queries, elementsInStore);
+        }
+        return findSimilarElementsInParallel(queries, elementsInStore);
+    }
+
+    private boolean scansExactly(ElementVectors elementsInStore) {
+        return elementsInStore != elements
+                || expandedParents >= parentIds.size()
+                || maxResults() >= elementsInStore.size();
+    }
+}
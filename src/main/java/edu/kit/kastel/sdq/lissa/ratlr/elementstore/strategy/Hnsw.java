@@ -0,0 +1,163 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A retrieval strategy that finds the most similar elements approximately using a
+ * {@link HnswGraph hierarchical navigable small world graph} over the normalized embeddings.
+ * The graph is built once when the element store is set up, so a query only visits a small
+ * fraction of the elements instead of scanning all of them as {@link CosineSimilarity} does.
+ * <p>
+ * The similarity scores of the returned elements are exact cosine similarities; only the
+ * selection of the candidates is approximate. If {@code max_results} covers the whole store, or
+ * if another view than the one the graph was built for is searched (e.g., a filtered view), the
+ * strategy falls back to an exact scan.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code m}: Number of neighbours per node in the graph (default: 16)</li>
+ *     <li>{@code ef_construction}: Size of the candidate list while building the graph (default: 200)</li>
+ *     <li>{@code ef_search}: Size of the candidate list while searching; raised to {@code max_results} if smaller
+ *     (default: 100)</li>
+ * </ul>
+ */
+public class Hnsw extends CosineSimilarity {
+    /**
+     * Seed for the random layer assignment, fixed to keep the graph (and thus the results) reproducible.
+     */
+    private static final long SEED = 133742243;
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    private ElementVectors elements;
+    private HnswGraph graph;
+
+    public Hnsw(ModuleConfiguration configuration) {
+        super(configuration);
+        this.m = configuration.argumentAsInt("m", 16);
+        this.efConstruction = configuration.argumentAsInt("ef_construction", 200);
+        this.efSearch = configuration.argumentAsInt("ef_search", 100);
+        if (quantization() != QuantizedVectors.Quantization.NONE) {
+            throw new IllegalArgumentException("The hnsw strategy does not support quantization.");
+        }
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("m must be at least 2, ef_construction and ef_search at least 1.");
+        }
+    }
+
+    /**
+     * Builds the graph over the (already normalized) embeddings of the given elements.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (graph != null) {
+            throw new IllegalStateException("The HNSW graph is already built.");
+        }
+        long start = System.currentTimeMillis();
+        this.graph = new HnswGraph(elementsInStore, m, efConstruction, SEED);
+        this.elements = elementsInStore;
+        logger.info(
+                "Built HNSW graph over {} elements in {} ms (m={}, ef_construction={})",
+                elementsInStore.size(),
+                System.currentTimeMillis() - start,
+                m,
+                efConstruction);
+    }
+
+    /**
+     * Restores the graph from the persistent index of the element store if it was built with the same
+     * parameters; otherwise, the graph is built as in {@link #setup(ElementVectors)}.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     * @param index The graph as written by {@link #writeIndex(DataOutput)}; may be empty
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore, ByteBuffer index) {
+        if (graph != null) {
+            throw new IllegalStateException("The HNSW graph is already built.");
+        }
+        if (index.remaining() < 2 * Integer.BYTES + Long.BYTES
+                || index.getInt() != m
+                || index.getInt() != efConstruction
+                || index.getLong() != SEED) {
+            logger.info("The index does not contain an HNSW graph with the configured parameters, building it.");
+            setup(elementsInStore);
+            return;
+        }
+        this.graph = HnswGraph.read(elementsInStore, index);
+        this.elements = elementsInStore;
+    }
+
+    /**
+     * Inserts added elements into the graph; removed elements are skipped by searches. After the store was
+     * compacted, the graph is rebuilt.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (previousSize == 0 || graph == null) {
+            this.graph = null;
+            setup(elementsInStore);
+            return;
+        }
+        graph.add(elementsInStore, SEED);
+        this.elements = elementsInStore;
+    }
+
+    @Override
+    public void writeIndex(DataOutput out) throws IOException {
+        if (graph == null) {
+            throw new IllegalStateException("The HNSW graph has not been built. Set up the element store first.");
+        }
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeLong(SEED);
+        graph.write(out);
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        if (graph == null) {
+            throw new IllegalStateException("The HNSW graph has not been built. Set up the element store first.");
+        }
+        if (elementsInStore != elements || maxResults() >= graph.size()) {
+            return super.findSimilarElements(query, elementsInStore);
+        }
+
+        HnswGraph.SearchResult result = graph.search(VectorMath.normalized(query.second()), maxResults(), efSearch);
+        List<Pair<Element, Float>> similarElements = new ArrayList<>(result.nodes().length);
+        for (int i = 0; i < result.nodes().length; i++) {
+            similarElements.add(new Pair<>(elements.element(result.nodes()[i]), result.similarities()[i]));
+        }
+        return similarElements;
+    }
+
+    /**
+     * Answers the queries by searching the graph in parallel, or by a batched exact scan if
+     * {@code max_results} covers the whole store or the view is not the one the graph was built for.
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (graph != null && (elementsInStore != elements || maxResults() >= graph.size())) {
+            return super.findSimilarElementsBatch(queries, elementsInStore);
+        }
+        return findSimilarElementsInParallel(queries, elementsInStore);
+    }
+}
@@ -0,0 +1,518 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+
+/**
+ * A hierarchical navigable small world (HNSW) graph for approximate nearest neighbour search,
+ * following Malkov and Yashunin (2018).
+ * <p>
+ * The graph operates on the normalized embeddings of an {@link ElementVectors} view, so the similarity
+ * of two nodes is their dot product, which equals their cosine similarity. Nodes are identified by
+ * their index in the view; the vectors are read in place and not copied.
+ * </p>
+ * The graph is built sequentially with a seeded random generator. Building it twice from the same
+ * vectors therefore yields the same graph and the same search results, which keeps LiSSA runs reproducible.
+ * <p>
+ * Nodes can be {@link #add(ElementVectors, long) added} to a built graph. Nodes of elements that were removed
+ * from the store stay in the graph, so that it remains navigable, but are never returned by a search.
+ * </p>
+ */
+public final class HnswGraph {
+    /**
+     * Maximum number of neighbours of a node on the layers above the base layer.
+     */
+    private final int maxConnections;
+
+    /**
+     * Maximum number of neighbours of a node on the base layer (twice {@link #maxConnections}).
+     */
+    private final int maxConnectionsBaseLayer;
+
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private ElementVectors vectors;
+
+    /**
+     * Adjacency lists: {@code links[node][level]} holds the number of neighbours at index 0,
+     * followed by the neighbour ids.
+     */
+    private int[][][] links;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * Builds a new graph over the given vectors.
+     *
+     * @param vectors The view on the unit-length vectors to index
+     * @param maxConnections The number of neighbours per node (M)
+     * @param efConstruction The size of the dynamic candidate list during construction
+     * @param seed The seed of the random generator that assigns the layers of the nodes
+     */
+    public HnswGraph(ElementVectors vectors, int maxConnections, int efConstruction, long seed) {
+        this(vectors, maxConnections, efConstruction, new int[vectors.size()][][]);
+        SplittableRandom random = new SplittableRandom(seed);
+        VisitedSet visited = new VisitedSet(vectors.size());
+        for (int node = 0; node < vectors.size(); node++) {
+            insert(node, randomLevel(random), visited);
+        }
+    }
+
+    private HnswGraph(ElementVectors vectors, int maxConnections, int efConstruction, int[][][] links) {
+        if (maxConnections < 2) {
+            throw new IllegalArgumentException("The number of connections per node must be at least 2.");
+        }
+        if (efConstruction < 1) {
+            throw new IllegalArgumentException("The construction candidate list size must be greater than 0.");
+        }
+        this.vectors = vectors;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsBaseLayer = 2 * maxConnections;
+        this.efConstruction = Math.max(efConstruction, maxConnections);
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+        this.links = links;
+    }
+
+    /**
+     * Restores a graph that was written by {@link #write(DataOutput)}.
+     *
+     * @param vectors The view on the unit-length vectors the graph was built for
+     * @param in The serialized graph (big-endian)
+     * @return The restored graph
+     * @throws IllegalArgumentException If the graph was built for a different number of vectors
+     */
+    public static HnswGraph read(ElementVectors vectors, ByteBuffer in) {
+        int maxConnections = in.getInt();
+        int efConstruction = in.getInt();
+        int size = in.getInt();
+        if (size != vectors.size()) {
+            throw new IllegalArgumentException(
+                    "The HNSW graph has " + size + " nodes, but there are " + vectors.size() + " vectors.");
+        }
+        int[][][] links = new int[size][][];
+        for (int node = 0; node < size; node++) {
+            links[node] = new int[in.getInt()][];
+            for (int level = 0; level < links[node].length; level++) {
+                int[] nodeLinks = new int[(level == 0 ? 2 * maxConnections : maxConnections) + 1];
+                nodeLinks[0] = in.getInt();
+                for (int i = 1; i <= nodeLinks[0]; i++) {
+                    nodeLinks[i] = in.getInt();
+                }
+                links[node][level] = nodeLinks;
+            }
+        }
+        HnswGraph graph = new HnswGraph(vectors, maxConnections, efConstruction, links);
+        graph.entryPoint = in.getInt();
+        graph.maxLevel = in.getInt();
+        return graph;
+    }
+
+    /**
+     * Serializes the links of this graph. The vectors are not written.
+     *
+     * @param out The output to write to
+     * @throws IOException If writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(maxConnections);
+        out.writeInt(efConstruction);
+        out.writeInt(links.length);
+        for (int[][] nodeLinks : links) {
+            out.writeInt(nodeLinks.length);
+            for (int[] levelLinks : nodeLinks) {
+                for (int i = 0; i <= levelLinks[0]; i++) {
+                    out.writeInt(levelLinks[i]);
+                }
+            }
+        }
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+    }
+
+    /**
+     * Inserts the vectors of an extended view into the graph: the indices {@code [size(), extended.size())} of
+     * the view become new nodes.
+     *
+     * @param extended The new view; its first {@link #size()} indices address the same vectors as before
+     * @param seed The seed of the random generator that assigns the layers of the new nodes
+     */
+    public void add(ElementVectors extended, long seed) {
+        int previousSize = links.length;
+        this.links = Arrays.copyOf(links, extended.size());
+        this.vectors = extended;
+        SplittableRandom random = new SplittableRandom(seed + previousSize);
+        VisitedSet visited = new VisitedSet(extended.size());
+        for (int node = previousSize; node < extended.size(); node++) {
+            insert(node, randomLevel(random), visited);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return The number of nodes
+     */
+    public int size() {
+        return vectors.size();
+    }
+
+    /**
+     * Searches the approximate {@code k} nearest neighbours of the query.
+     *
+     * @param query The unit-length query vector
+     * @param k The number of neighbours to return
+     * @param ef The size of the dynamic candidate list on the base layer; values below {@code k} are raised to
+     *           {@code k}
+     * @return The neighbours, sorted by descending similarity; nodes of removed elements are skipped during the
+     *         search, so that up to {@code k} other nodes are returned
+     */
+    public SearchResult search(float[] query, int k, int ef) {
+        if (entryPoint == -1 || k < 1) {
+            return new SearchResult(new int[0], new float[0]);
+        }
+
+        int current = entryPoint;
+        float currentSimilarity = similarity(query, current);
+        for (int level = maxLevel; level > 0; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbours = links[current][level];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float similarity = similarity(query, neighbours[i]);
+                    if (similarity > currentSimilarity) {
+                        currentSimilarity = similarity;
+                        current = neighbours[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        NodeHeap results =
+                searchLayer(query, new int[] {current}, Math.max(ef, k), 0, new VisitedSet(vectors.size()), true);
+        while (results.size() > k) {
+            results.pop();
+        }
+        int[] nodes = new int[results.size()];
+        float[] similarities = new float[results.size()];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = results.topNode();
+            similarities[i] = results.topScore();
+            results.pop();
+        }
+        return new SearchResult(nodes, similarities);
+    }
+
+    private int randomLevel(SplittableRandom random) {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void insert(int node, int level, VisitedSet visited) {
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+
+        if (entryPoint == -1) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = vectors.vector(node);
+        int current = entryPoint;
+        float currentSimilarity = similarity(vector, current);
+        for (int l = maxLevel; l > level; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbours = links[current][l];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float similarity = similarity(vector, neighbours[i]);
+                    if (similarity > currentSimilarity) {
+                        currentSimilarity = similarity;
+                        current = neighbours[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        int[] entryPoints = {current};
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            visited.clear();
+            NodeHeap candidates = searchLayer(vector, entryPoints, efConstruction, l, visited, false);
+            entryPoints = candidates.nodes();
+
+            int[] neighbours = selectNeighbours(node, candidates, maxConnections);
+            int[] nodeLinks = links[node][l];
+            System.arraycopy(neighbours, 0, nodeLinks, 1, neighbours.length);
+            nodeLinks[0] = neighbours.length;
+
+            for (int neighbour : neighbours) {
+                connect(neighbour, node, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Adds a link from {@code node} to {@code newNeighbour} on the given level.
+     * If the neighbour list is full, it is shrunk with the neighbour selection heuristic.
+     */
+    private void connect(int node, int newNeighbour, int level) {
+        int[] nodeLinks = links[node][level];
+        int capacity = maxConnections(level);
+        if (nodeLinks[0] < capacity) {
+            nodeLinks[++nodeLinks[0]] = newNeighbour;
+            return;
+        }
+
+        NodeHeap candidates = new NodeHeap(capacity + 1, false);
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            candidates.push(nodeLinks[i], vectors.dot(node, nodeLinks[i]));
+        }
+        candidates.push(newNeighbour, vectors.dot(node, newNeighbour));
+
+        int[] selected = selectNeighbours(node, candidates, capacity);
+        System.arraycopy(selected, 0, nodeLinks, 1, selected.length);
+        nodeLinks[0] = selected.length;
+    }
+
+    /**
+     * Selects up to {@code count} neighbours from the candidates using the heuristic of the HNSW paper:
+     * a candidate is only kept if it is more similar to the base node than to every neighbour selected so far.
+     * This keeps links pointing in diverse directions and the graph navigable.
+     *
+     * @param node The node to select neighbours for
+     * @param candidates The candidates with their similarity to the node; the heap is consumed
+     * @param count The maximum number of neighbours
+     * @return The selected neighbours, most similar first
+     */
+    private int[] selectNeighbours(int node, NodeHeap candidates, int count) {
+        int[] sorted = new int[candidates.size()];
+        float[] sortedSimilarities = new float[candidates.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = candidates.topNode();
+            sortedSimilarities[i] = candidates.topScore();
+            candidates.pop();
+        }
+
+        int[] selected = new int[Math.min(count, sorted.length)];
+        int selectedCount = 0;
+        for (int i = 0; i < sorted.length && selectedCount < selected.length; i++) {
+            int candidate = sorted[i];
+            if (candidate == node) {
+                continue;
+            }
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (vectors.dot(candidate, selected[j]) > sortedSimilarities[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+            }
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * Performs a best-first search on a single layer.
+     * <p>
+     * If removed nodes are skipped, they are still traversed, so that the graph stays navigable, but they do not
+     * enter the results. The search thus continues until it found {@code ef} nodes that are not removed, and
+     * removals do not reduce the number of results.
+     * </p>
+     *
+     * @return A min-heap of the (at most {@code ef}) most similar nodes found
+     */
+    private NodeHeap searchLayer(
+            float[] query, int[] entryPoints, int ef, int level, VisitedSet visited, boolean skipRemoved) {
+        NodeHeap candidates = new NodeHeap(ef, true);
+        NodeHeap results = new NodeHeap(ef + 1, false);
+        for (int entry : entryPoints) {
+            if (visited.add(entry)) {
+                float similarity = similarity(query, entry);
+                candidates.push(entry, similarity);
+                if (!skipRemoved || !vectors.isRemoved(entry)) {
+                    results.push(entry, similarity);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+
+        while (candidates.size() > 0) {
+            int candidate = candidates.topNode();
+            float candidateSimilarity = candidates.topScore();
+            if (results.size() >= ef && candidateSimilarity < results.topScore()) {
+                break;
+            }
+            candidates.pop();
+
+            int[] neighbours = links[candidate][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float similarity = similarity(query, neighbour);
+                if (results.size() < ef || similarity > results.topScore()) {
+                    candidates.push(neighbour, similarity);
+                    if (!skipRemoved || !vectors.isRemoved(neighbour)) {
+                        results.push(neighbour, similarity);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnectionsBaseLayer : maxConnections;
+    }
+
+    private float similarity(float[] query, int node) {
+        return vectors.dot(node, query);
+    }
+
+    /**
+     * The result of a search in the graph.
+     *
+     * @param nodes The ids of the found nodes, most similar first
+     * @param similarities The similarities of the found nodes to the query, in the same order
+     */
+    public record SearchResult(int[] nodes, float[] similarities) {}
+
+    /**
+     * A binary heap of nodes ordered by their score, backed by parallel primitive arrays.
+     * Depending on {@code maxHeap}, the top is the node with the highest or the lowest score.
+     */
+    private static final class NodeHeap {
+        private final boolean maxHeap;
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        NodeHeap(int initialCapacity, boolean maxHeap) {
+            this.maxHeap = maxHeap;
+            this.nodes = new int[Math.max(1, initialCapacity)];
+            this.scores = new float[nodes.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int topNode() {
+            return nodes[0];
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        int[] nodes() {
+            return Arrays.copyOf(nodes, size);
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!above(score, scores[parent])) {
+                    break;
+                }
+                nodes[index] = nodes[parent];
+                scores[index] = scores[parent];
+                index = parent;
+            }
+            nodes[index] = node;
+            scores[index] = score;
+        }
+
+        void pop() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            int node = nodes[size];
+            float score = scores[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], score)) {
+                    break;
+                }
+                nodes[index] = nodes[child];
+                scores[index] = scores[child];
+                index = child;
+            }
+            nodes[index] = node;
+            scores[index] = score;
+        }
+
+        private boolean above(float a, float b) {
+            return maxHeap ? a > b : a < b;
+        }
+    }
+
+    /**
+     * A reusable set of visited nodes backed by a bit set.
+     */
+    private static final class VisitedSet {
+        private final long[] bits;
+
+        VisitedSet(int size) {
+            this.bits = new long[(size + 63) >>> 6];
+        }
+
+        /**
+         * Marks the node as visited.
+         *
+         * @return {@code true} if the node was not visited before
+         */
+        boolean add(int node) {
+            int word = node >>> 6;
+            long mask = 1L << node;
+            if ((bits[word] & mask) != 0) {
+                return false;
+            }
+            bits[word] |= mask;
+            return true;
+        }
+
+        void clear() {
+            Arrays.fill(bits, 0);
+        }
+    }
+}
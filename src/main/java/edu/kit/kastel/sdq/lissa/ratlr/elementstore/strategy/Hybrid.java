@@ -0,0 +1,165 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A retrieval strategy that combines lexical and dense retrieval. It ranks the elements by the BM25 score of their
+ * content ({@link Bm25Index}) for the content of the query element and by the cosine similarity of their
+ * embeddings, and fuses both rankings with reciprocal rank fusion (RRF):
+ * {@code score(e) = Σ 1 / (rrf_k + rank(e))} over the rankings that contain {@code e} among their best
+ * {@code candidates}.
+ * <p>
+ * Identifiers that embeddings blur (e.g., class or method names in code) are matched exactly by BM25, so
+ * relevant elements reach the top {@code max_results} even if their embedding is not among the most similar.
+ * The inverted index is built over {@link Element#getContent()} when the element store is set up.
+ * The results are ordered by their fused RRF score, but are returned with their cosine similarity to the query,
+ * so the scores mean the same as for the other strategies. Views the strategy was not set up with, and a
+ * {@code max_results} that covers the whole store, are answered by cosine similarity only.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code candidates}: Number of best elements of each ranking that are fused; raised to
+ *     {@code max_results} if smaller (default: 100)</li>
+ *     <li>{@code rrf_k}: Rank offset of reciprocal rank fusion (default: 60)</li>
+ *     <li>{@code bm25_k1}: Term frequency saturation of BM25 (default: 1.2)</li>
+ *     <li>{@code bm25_b}: Document length normalization of BM25 (default: 0.75)</li>
+ * </ul>
+ */
+public class Hybrid extends CosineSimilarity {
+    private final int candidates;
+    private final int rrfK;
+    private final float k1;
+    private final float b;
+
+    private ElementVectors elements;
+    private Bm25Index lexicalIndex;
+
+    public Hybrid(ModuleConfiguration configuration) {
+        super(configuration);
+        this.candidates = Math.max(maxResults(), configuration.argumentAsInt("candidates", 100));
+        this.rrfK = configuration.argumentAsInt("rrf_k", 60);
+        this.k1 = (float) configuration.argumentAsDouble("bm25_k1", 1.2);
+        this.b = (float) configuration.argumentAsDouble("bm25_b", 0.75);
+        if (quantization() != QuantizedVectors.Quantization.NONE) {
+            throw new IllegalArgumentException("The hybrid strategy does not support quantization.");
+        }
+        if (rrfK < 0 || k1 < 0 || b < 0 || b > 1) {
+            throw new IllegalArgumentException("rrf_k and bm25_k1 must not be negative, bm25_b must be in [0, 1].");
+        }
+    }
+
+    /**
+     * Builds the inverted index over the contents of the given elements.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (lexicalIndex != null) {
+            throw new IllegalStateException("The inverted index is already built.");
+        }
+        long start = System.currentTimeMillis();
+        List<String> contents = new ArrayList<>(elementsInStore.size());
+        for (int i = 0; i < elementsInStore.size(); i++) {
+            contents.add(elementsInStore.element(i).getContent());
+        }
+        this.lexicalIndex = new Bm25Index(contents, k1, b);
+        this.elements = elementsInStore;
+        logger.info(
+                "Built inverted index over {} elements in {} ms ({} terms, {} postings)",
+                elementsInStore.size(),
+                System.currentTimeMillis() - start,
+                lexicalIndex.vocabularySize(),
+                lexicalIndex.postingCount());
+    }
+
+    /**
+     * Adds the contents of added elements to the inverted index; removed elements are skipped by searches but
+     * still count for the BM25 statistics until the store is compacted, which rebuilds the index.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (previousSize == 0 || lexicalIndex == null) {
+            this.lexicalIndex = null;
+            setup(elementsInStore);
+            return;
+        }
+        List<String> contents = new ArrayList<>(elementsInStore.size() - previousSize);
+        for (int i = previousSize; i < elementsInStore.size(); i++) {
+            contents.add(elementsInStore.element(i).getContent());
+        }
+        lexicalIndex.add(contents);
+        this.elements = elementsInStore;
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        if (lexicalIndex == null) {
+            throw new IllegalStateException("The inverted index has not been built. Set up the element store first.");
+        }
+        if (elementsInStore != elements || maxResults() >= elementsInStore.size()) {
+            return super.findSimilarElements(query, elementsInStore);
+        }
+
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        if (normalizedQuery.length != elementsInStore.dimension()) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        TopKSelector dense = new TopKSelector(candidates, elementsInStore.size());
+        for (int i = 0; i < elementsInStore.size(); i++) {
+            if (!elementsInStore.isRemoved(i)) {
+                dense.offer(i, elementsInStore.dot(i, normalizedQuery));
+            }
+        }
+        TopKSelector lexical = lexicalIndex.search(query.first().getContent(), candidates, elementsInStore);
+
+        Map<Integer, Float> fused = new HashMap<>();
+        addReciprocalRanks(dense, fused);
+        addReciprocalRanks(lexical, fused);
+        // Offer by ascending index to break ties like an exact scan
+        int[] indices = fused.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        TopKSelector selector = new TopKSelector(maxResults(), indices.length);
+        for (int index : indices) {
+            selector.offer(index, fused.get(index));
+        }
+        selector.sort();
+        List<Pair<Element, Float>> similarElements = new ArrayList<>(selector.size());
+        for (int rank = 0; rank < selector.size(); rank++) {
+            int index = selector.index(rank);
+            similarElements.add(
+                    new Pair<>(elementsInStore.element(index), elementsInStore.dot(index, normalizedQuery)));
+        }
+        return similarElements;
+    }
+
+    /**
+     * Answers the queries in parallel, or by a batched exact scan if {@code max_results} covers the whole store.
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (elementsInStore != elements || maxResults() >= elementsInStore.size()) {
+            return super.findSimilarElementsBatch(queries, elementsInStore);
+        }
+        return findSimilarElementsInParallel(queries, elementsInStore);
+    }
+
+    private void addReciprocalRanks(TopKSelector ranking, Map<Integer, Float> fused) {
+        ranking.sort();
+        for (int rank = 0; rank < ranking.size(); rank++) {
+            fused.merge(ranking.index(rank), 1f / (rrfK + rank + 1), Float::sum);
+        }
+    }
+}
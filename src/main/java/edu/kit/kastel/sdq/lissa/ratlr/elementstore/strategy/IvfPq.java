@@ -0,0 +1,202 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A retrieval strategy for large stores that searches an {@link IvfPqIndex inverted file index with
+ * product-quantized residuals}. The index is trained when the element store is set up, or restored from the
+ * persistent index of the store.
+ * <p>
+ * A query only scores the members of the {@code nprobe} inverted lists closest to it, using {@code pq_m} table
+ * lookups per element instead of a full dot product. The best {@code max(max_results, rescore_candidates)}
+ * candidates are reranked exactly, so the returned scores are exact cosine similarities; only the selection of
+ * the candidates is approximate. If {@code max_results} covers the whole store, the strategy scans exactly.
+ * </p>
+ * Configuration options:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results per query, or "infinity" (default: 10)</li>
+ *     <li>{@code nlist}: Number of inverted lists; 0 uses the square root of the number of elements (default: 0)</li>
+ *     <li>{@code nprobe}: Number of inverted lists searched per query (default: 8)</li>
+ *     <li>{@code pq_m}: Number of subquantizers (bytes per element); must divide the embedding dimension.
+ *     0 uses the largest divisor of the dimension that is at most {@code min(64, dimension / 4)} (default: 0)</li>
+ *     <li>{@code rescore_candidates}: Number of candidates per query that are reranked exactly (default: 0)</li>
+ *     <li>{@code training_sample}: Maximum number of elements used to train the quantizers (default: 65536)</li>
+ *     <li>{@code kmeans_iterations}: Number of k-means iterations while training (default: 10)</li>
+ * </ul>
+ */
+public class IvfPq extends CosineSimilarity {
+    /**
+     * Seed for sampling and k-means initialization, fixed to keep the index (and thus the results) reproducible.
+     */
+    private static final long SEED = 133742243;
+
+    private final int nlist;
+    private final int nprobe;
+    private final int subquantizers;
+    private final int rescoreCandidates;
+    private final int trainingSample;
+    private final int iterations;
+
+    private ElementVectors elements;
+    private IvfPqIndex index;
+
+    public IvfPq(ModuleConfiguration configuration) {
+        super(configuration);
+        this.nlist = configuration.argumentAsInt("nlist", 0);
+        this.nprobe = configuration.argumentAsInt("nprobe", 8);
+        this.subquantizers = configuration.argumentAsInt("pq_m", 0);
+        this.rescoreCandidates = configuration.argumentAsInt("rescore_candidates", 0);
+        this.trainingSample = configuration.argumentAsInt("training_sample", 65536);
+        this.iterations = configuration.argumentAsInt("kmeans_iterations", 10);
+        if (quantization() != QuantizedVectors.Quantization.NONE) {
+            throw new IllegalArgumentException("The ivf_pq strategy does not support quantization.");
+        }
+        if (nlist < 0 || subquantizers < 0 || rescoreCandidates < 0) {
+            throw new IllegalArgumentException("nlist, pq_m and rescore_candidates must not be negative.");
+        }
+        if (nprobe < 1 || trainingSample < 1 || iterations < 1) {
+            throw new IllegalArgumentException("nprobe, training_sample and kmeans_iterations must be at least 1.");
+        }
+    }
+
+    /**
+     * Trains the quantizers on the (already normalized) embeddings of the given elements and encodes them.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore) {
+        if (index != null) {
+            throw new IllegalStateException("The IVF-PQ index is already trained.");
+        }
+        this.elements = elementsInStore;
+        if (elementsInStore.size() == 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int lists = nlist == 0 ? (int) Math.round(Math.sqrt(elementsInStore.size())) : nlist;
+        int m = subquantizers == 0 ? defaultSubquantizers(elementsInStore.dimension()) : subquantizers;
+        this.index = IvfPqIndex.train(
+                elementsInStore, Math.min(lists, elementsInStore.size()), m, trainingSample, iterations, SEED);
+        logger.info(
+                "Trained IVF-PQ index over {} elements in {} ms (nlist={}, pq_m={}, {} MiB of codes)",
+                elementsInStore.size(),
+                System.currentTimeMillis() - start,
+                index.listCount(),
+                m,
+                index.codeSizeInBytes() >> 20);
+    }
+
+    /**
+     * Restores the index from the persistent index of the element store if it was trained with the same
+     * parameters; otherwise, the index is trained as in {@link #setup(ElementVectors)}.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     * @param persistentIndex The index as written by {@link #writeIndex(DataOutput)}; may be empty
+     */
+    @Override
+    public void setup(ElementVectors elementsInStore, ByteBuffer persistentIndex) {
+        if (index != null) {
+            throw new IllegalStateException("The IVF-PQ index is already trained.");
+        }
+        if (elementsInStore.size() == 0
+                || persistentIndex.remaining() < 5 * Integer.BYTES + Long.BYTES
+                || persistentIndex.getInt() != nlist
+                || persistentIndex.getInt() != subquantizers
+                || persistentIndex.getInt() != trainingSample
+                || persistentIndex.getInt() != iterations
+                || persistentIndex.getLong() != SEED
+                || persistentIndex.getInt() != 1) {
+            logger.info("The index does not contain an IVF-PQ index with the configured parameters, training it.");
+            setup(elementsInStore);
+            return;
+        }
+        this.index = IvfPqIndex.read(elementsInStore, persistentIndex);
+        this.elements = elementsInStore;
+    }
+
+    /**
+     * Encodes added elements with the trained quantizers; removed elements are skipped by searches. After the
+     * store was compacted, the quantizers are trained again.
+     */
+    @Override
+    public void update(ElementVectors elementsInStore, int previousSize) {
+        if (previousSize == 0 || index == null) {
+            this.index = null;
+            this.elements = null;
+            setup(elementsInStore);
+            return;
+        }
+        index.add(elementsInStore, previousSize);
+        this.elements = elementsInStore;
+    }
+
+    @Override
+    public void writeIndex(DataOutput out) throws IOException {
+        if (elements == null) {
+            throw new IllegalStateException("The IVF-PQ index has not been trained. Set up the element store first.");
+        }
+        out.writeInt(nlist);
+        out.writeInt(subquantizers);
+        out.writeInt(trainingSample);
+        out.writeInt(iterations);
+        out.writeLong(SEED);
+        out.writeInt(index == null ? 0 : 1);
+        if (index != null) {
+            index.write(out);
+        }
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, ElementVectors elementsInStore) {
+        if (elements == null) {
+            throw new IllegalStateException("The IVF-PQ index has not been trained. Set up the element store first.");
+        }
+        if (elementsInStore != elements || maxResults() >= elementsInStore.size()) {
+            return super.findSimilarElements(query, elementsInStore);
+        }
+
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        int candidates = Math.min(elementsInStore.size(), Math.max(maxResults(), rescoreCandidates));
+        TopKSelector shortlist = index.search(normalizedQuery, nprobe, candidates, elementsInStore);
+        return toSimilarElements(
+                rerankExactly(shortlist, maxResults(), normalizedQuery, 0, elementsInStore), elementsInStore);
+    }
+
+    /**
+     * Answers the queries by searching the index in parallel, or by a batched exact scan if
+     * {@code max_results} covers the whole store.
+     */
+    @Override
+    public List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        if (elementsInStore != elements || maxResults() >= elementsInStore.size()) {
+            return super.findSimilarElementsBatch(queries, elementsInStore);
+        }
+        return findSimilarElementsInParallel(queries, elementsInStore);
+    }
+
+    /**
+     * Chooses the largest divisor of the dimension that is at most {@code min(64, dimension / 4)}, i.e.,
+     * subvectors of at least four values.
+     */
+    private static int defaultSubquantizers(int dimension) {
+        for (int m = Math.min(64, dimension / 4); m > 1; m--) {
+            if (dimension % m == 0) {
+                return m;
+            }
+        }
+        return 1;
+    }
+}
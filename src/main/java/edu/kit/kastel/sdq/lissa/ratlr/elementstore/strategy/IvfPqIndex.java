@@ -0,0 +1,450 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+
+/**
+ * An inverted file index with product-quantized residuals (IVF-PQ) for approximate maximum inner product search,
+ * following J&eacute;gou et al. (2011).
+ * <p>
+ * A coarse k-means quantizer partitions the vectors into {@code nlist} inverted lists. The residual of each vector
+ * to its list centroid is split into {@code m} subvectors, each of which is encoded as the index (one byte) of the
+ * nearest of {@value #CODEBOOK_SIZE} subspace centroids. A vector therefore occupies {@code m} bytes instead of
+ * {@code 4 * dimension}. Nodes are identified by their index in the {@link ElementVectors} view the index was
+ * trained on.
+ * </p>
+ * <p>
+ * A search probes the {@code nprobe} lists whose centroids are closest to the query and scores their members
+ * asymmetrically: the query stays in full precision, and {@code q·x ≈ q·c + Σ q_j·r̂_j} is computed with one
+ * lookup table of subspace dot products per query.
+ * </p>
+ */
+public final class IvfPqIndex {
+    /**
+     * Number of centroids per subspace (8 bit codes).
+     */
+    private static final int CODEBOOK_SIZE = 256;
+
+    private final int dimension;
+    private final int listCount;
+    private final int subquantizers;
+    private final int subDimension;
+    private final int codebookSize;
+
+    /** Coarse centroids, {@code listCount × dimension}, row-major */
+    private final float[] centroids;
+
+    private final float[] centroidNorms;
+
+    /** Subspace centroids, {@code subquantizers × codebookSize × subDimension}, row-major */
+    private final float[] codebooks;
+
+    /** Indices of the members of each inverted list, ascending */
+    private final int[][] listMembers;
+
+    /** Codes of the members of each inverted list, {@code subquantizers} bytes per member */
+    private final byte[][] listCodes;
+
+    private IvfPqIndex(
+            int dimension,
+            int subquantizers,
+            int codebookSize,
+            float[] centroids,
+            float[] codebooks,
+            int[][] listMembers,
+            byte[][] listCodes) {
+        this.dimension = dimension;
+        this.listCount = listMembers.length;
+        this.subquantizers = subquantizers;
+        this.subDimension = dimension / subquantizers;
+        this.codebookSize = codebookSize;
+        this.centroids = centroids;
+        this.centroidNorms = KMeans.squaredNorms(centroids, listCount, dimension);
+        this.codebooks = codebooks;
+        this.listMembers = listMembers;
+        this.listCodes = listCodes;
+    }
+
+    /**
+     * Trains the quantizers on a sample of the vectors and encodes all vectors.
+     *
+     * @param vectors The view on the unit-length vectors to index
+     * @param listCount The number of inverted lists (clamped to the number of vectors)
+     * @param subquantizers The number of subvectors; must divide the dimension
+     * @param trainingSample The maximum number of vectors used for training
+     * @param iterations The number of k-means iterations
+     * @param seed The seed of the random generator for sampling and initialization
+     * @return The trained index
+     * @throws IllegalArgumentException If the store is empty or the dimension is not divisible by {@code subquantizers}
+     */
+    public static IvfPqIndex train(
+            ElementVectors vectors, int listCount, int subquantizers, int trainingSample, int iterations, long seed) {
+        int size = vectors.size();
+        int dimension = vectors.dimension();
+        if (size == 0 || dimension == 0) {
+            throw new IllegalArgumentException("Cannot train an IVF-PQ index without vectors.");
+        }
+        if (subquantizers < 1 || dimension % subquantizers != 0) {
+            throw new IllegalArgumentException(
+                    "The number of subquantizers must divide the embedding dimension " + dimension + ".");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+
+        int sampleSize = Math.min(size, trainingSample);
+        int[] sampleRows = sample(size, sampleSize, random);
+        float[] sample = new float[sampleSize * dimension];
+        for (int i = 0; i < sampleSize; i++) {
+            System.arraycopy(vectors.vector(sampleRows[i]), 0, sample, i * dimension, dimension);
+        }
+
+        int lists = Math.min(listCount, sampleSize);
+        float[] centroids = KMeans.train(sample, sampleSize, dimension, lists, iterations, random);
+        float[] norms = KMeans.squaredNorms(centroids, lists, dimension);
+        for (int i = 0; i < sampleSize; i++) {
+            int list = KMeans.nearest(centroids, norms, lists, sample, i * dimension, dimension);
+            for (int j = 0; j < dimension; j++) {
+                sample[i * dimension + j] -= centroids[list * dimension + j];
+            }
+        }
+
+        int subDimension = dimension / subquantizers;
+        int codebookSize = Math.min(CODEBOOK_SIZE, sampleSize);
+        float[] codebooks = new float[subquantizers * codebookSize * subDimension];
+        float[] subvectors = new float[sampleSize * subDimension];
+        for (int m = 0; m < subquantizers; m++) {
+            for (int i = 0; i < sampleSize; i++) {
+                System.arraycopy(
+                        sample, i * dimension + m * subDimension, subvectors, i * subDimension, subDimension);
+            }
+            float[] codebook = KMeans.train(subvectors, sampleSize, subDimension, codebookSize, iterations, random);
+            System.arraycopy(codebook, 0, codebooks, m * codebookSize * subDimension, codebook.length);
+        }
+
+        int[][] listMembers = new int[lists][0];
+        byte[][] listCodes = new byte[lists][0];
+        IvfPqIndex index =
+                new IvfPqIndex(dimension, subquantizers, codebookSize, centroids, codebooks, listMembers, listCodes);
+        index.add(vectors, 0);
+        return index;
+    }
+
+    /**
+     * Encodes the vectors at the indices {@code [from, vectors.size())} with the trained quantizers and appends
+     * them to their inverted lists. The quantizers are not retrained.
+     *
+     * @param vectors The view on the unit-length vectors; its first {@code from} indices are already indexed
+     * @param from The first index to add
+     */
+    void add(ElementVectors vectors, int from) {
+        int count = vectors.size() - from;
+        int[] assignments = new int[count];
+        byte[] codes = new byte[count * subquantizers];
+        ForkJoinPool.commonPool()
+                .invoke(new Encode(
+                        from,
+                        from,
+                        vectors.size(),
+                        vectors,
+                        centroids,
+                        centroidNorms,
+                        listCount,
+                        codebooks,
+                        KMeans.squaredNorms(codebooks, subquantizers * codebookSize, subDimension),
+                        subquantizers,
+                        codebookSize,
+                        assignments,
+                        codes));
+
+        int[] added = new int[listCount];
+        for (int assignment : assignments) {
+            added[assignment]++;
+        }
+        int[] filled = new int[listCount];
+        for (int list = 0; list < listCount; list++) {
+            filled[list] = listMembers[list].length;
+            listMembers[list] = Arrays.copyOf(listMembers[list], filled[list] + added[list]);
+            listCodes[list] = Arrays.copyOf(listCodes[list], (filled[list] + added[list]) * subquantizers);
+        }
+        for (int i = 0; i < count; i++) {
+            int list = assignments[i];
+            int position = filled[list]++;
+            listMembers[list][position] = from + i;
+            System.arraycopy(codes, i * subquantizers, listCodes[list], position * subquantizers, subquantizers);
+        }
+    }
+
+    /**
+     * Returns the number of inverted lists.
+     *
+     * @return The number of lists
+     */
+    public int listCount() {
+        return listCount;
+    }
+
+    /**
+     * Returns the memory used by the codes and member indices of the inverted lists.
+     *
+     * @return The size in bytes
+     */
+    public long codeSizeInBytes() {
+        long bytes = 0;
+        for (int list = 0; list < listCount; list++) {
+            bytes += listCodes[list].length + (long) listMembers[list].length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Searches the members of the {@code nprobe} closest inverted lists with approximate inner products.
+     *
+     * @param query The unit-length query vector
+     * @param nprobe The number of lists to probe
+     * @param candidates The number of candidates to select
+     * @param vectors The view the index was built for, used to skip removed elements
+     * @return The selected candidates (view indices) with their approximate scores; not sorted yet
+     */
+    TopKSelector search(float[] query, int nprobe, int candidates, ElementVectors vectors) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        TopKSelector probed = new TopKSelector(Math.min(nprobe, listCount), listCount);
+        float[] centroidScores = new float[listCount];
+        for (int list = 0; list < listCount; list++) {
+            centroidScores[list] = VectorMath.dot(query, 0, centroids, list * dimension, dimension);
+            // Same criterion as the assignment: the centroid with the smallest Euclidean distance
+            probed.offer(list, centroidScores[list] - centroidNorms[list] / 2);
+        }
+        probed.sort();
+
+        float[] table = new float[subquantizers * codebookSize];
+        for (int m = 0; m < subquantizers; m++) {
+            for (int code = 0; code < codebookSize; code++) {
+                table[m * codebookSize + code] = VectorMath.dot(
+                        query, m * subDimension, codebooks, (m * codebookSize + code) * subDimension, subDimension);
+            }
+        }
+
+        TopKSelector selector = new TopKSelector(candidates, candidates);
+        for (int rank = 0; rank < probed.size(); rank++) {
+            int list = probed.index(rank);
+            int[] members = listMembers[list];
+            byte[] codes = listCodes[list];
+            float base = centroidScores[list];
+            for (int i = 0; i < members.length; i++) {
+                if (vectors.isRemoved(members[i])) {
+                    continue;
+                }
+                float score = base;
+                int offset = i * subquantizers;
+                for (int m = 0; m < subquantizers; m++) {
+                    score += table[m * codebookSize + (codes[offset + m] & 0xFF)];
+                }
+                selector.offer(members[i], score);
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * Serializes the trained quantizers and the inverted lists.
+     *
+     * @param out The output to write to
+     * @throws IOException If writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(dimension);
+        out.writeInt(listCount);
+        out.writeInt(subquantizers);
+        out.writeInt(codebookSize);
+        for (float value : centroids) {
+            out.writeFloat(value);
+        }
+        for (float value : codebooks) {
+            out.writeFloat(value);
+        }
+        for (int list = 0; list < listCount; list++) {
+            out.writeInt(listMembers[list].length);
+            for (int member : listMembers[list]) {
+                out.writeInt(member);
+            }
+            out.write(listCodes[list]);
+        }
+    }
+
+    /**
+     * Restores an index that was written by {@link #write(DataOutput)}.
+     *
+     * @param vectors The view the index was trained on
+     * @param in The serialized index (big-endian)
+     * @return The restored index
+     * @throws IllegalArgumentException If the index was trained for vectors of another dimension or count
+     */
+    public static IvfPqIndex read(ElementVectors vectors, ByteBuffer in) {
+        int dimension = in.getInt();
+        int listCount = in.getInt();
+        int subquantizers = in.getInt();
+        int codebookSize = in.getInt();
+        if (dimension != vectors.dimension()) {
+            throw new IllegalArgumentException("The IVF-PQ index was trained for another embedding dimension.");
+        }
+        float[] centroids = new float[listCount * dimension];
+        in.asFloatBuffer().get(centroids);
+        in.position(in.position() + centroids.length * Float.BYTES);
+        float[] codebooks = new float[subquantizers * codebookSize * (dimension / subquantizers)];
+        in.asFloatBuffer().get(codebooks);
+        in.position(in.position() + codebooks.length * Float.BYTES);
+
+        int[][] listMembers = new int[listCount][];
+        byte[][] listCodes = new byte[listCount][];
+        int members = 0;
+        for (int list = 0; list < listCount; list++) {
+            listMembers[list] = new int[in.getInt()];
+            in.asIntBuffer().get(listMembers[list]);
+            in.position(in.position() + listMembers[list].length * Integer.BYTES);
+            listCodes[list] = new byte[listMembers[list].length * subquantizers];
+            in.get(listCodes[list]);
+            members += listMembers[list].length;
+        }
+        if (members != vectors.size()) {
+            throw new IllegalArgumentException(
+                    "The IVF-PQ index has " + members + " vectors, but there are " + vectors.size() + ".");
+        }
+        return new IvfPqIndex(dimension, subquantizers, codebookSize, centroids, codebooks, listMembers, listCodes);
+    }
+
+    /**
+     * Draws {@code count} distinct indices from {@code [0, size)} in ascending order.
+     */
+    private static int[] sample(int size, int count, SplittableRandom random) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int swap = i + random.nextInt(size - i);
+            int index = indices[swap];
+            indices[swap] = indices[i];
+            indices[i] = index;
+        }
+        int[] sample = Arrays.copyOf(indices, count);
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    /**
+     * Assigns the vectors {@code [from, to)} to their inverted list and encodes their residuals. The results of
+     * vector {@code i} are written at position {@code i - base} of the output arrays.
+     */
+    private static final class Encode extends RecursiveAction {
+        private static final int BATCH_SIZE = 256;
+
+        private final int base;
+        private final int from;
+        private final int to;
+        private final ElementVectors vectors;
+        private final float[] centroids;
+        private final float[] norms;
+        private final int lists;
+        private final float[] codebooks;
+        private final float[] codebookNorms;
+        private final int subquantizers;
+        private final int codebookSize;
+        private final int[] assignments;
+        private final byte[] codes;
+
+        private Encode(
+                int base,
+                int from,
+                int to,
+                ElementVectors vectors,
+                float[] centroids,
+                float[] norms,
+                int lists,
+                float[] codebooks,
+                float[] codebookNorms,
+                int subquantizers,
+                int codebookSize,
+                int[] assignments,
+                byte[] codes) {
+            this.base = base;
+            this.from = from;
+            this.to = to;
+            this.vectors = vectors;
+            this.centroids = centroids;
+            this.norms = norms;
+            this.lists = lists;
+            this.codebooks = codebooks;
+            this.codebookNorms = codebookNorms;
+            this.subquantizers = subquantizers;
+            this.codebookSize = codebookSize;
+            this.assignments = assignments;
+            this.codes = codes;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(split(from, middle), split(middle, to));
+                return;
+            }
+            int dimension = vectors.dimension();
+            int subDimension = dimension / subquantizers;
+            for (int i = from; i < to; i++) {
+                float[] residual = vectors.vector(i);
+                int list = KMeans.nearest(centroids, norms, lists, residual, 0, dimension);
+                assignments[i - base] = list;
+                for (int j = 0; j < dimension; j++) {
+                    residual[j] -= centroids[list * dimension + j];
+                }
+                for (int m = 0; m < subquantizers; m++) {
+                    int best = 0;
+                    float bestScore = Float.NEGATIVE_INFINITY;
+                    for (int code = 0; code < codebookSize; code++) {
+                        int centroid = m * codebookSize + code;
+                        float score = 2
+                                        * VectorMath.dot(
+                                                residual,
+                                                m * subDimension,
+                                                codebooks,
+                                                centroid * subDimension,
+                                                subDimension)
+                                - codebookNorms[centroid];
+                        if (score > bestScore) {
+                            bestScore = score;
+                            best = code;
+                        }
+                    }
+                    codes[(i - base) * subquantizers + m] = (byte) best;
+                }
+            }
+        }
+
+        private Encode split(int start, int end) {
+            return new Encode(
+                    base,
+                    start,
+                    end,
+                    vectors,
+                    centroids,
+                    norms,
+                    lists,
+                    codebooks,
+                    codebookNorms,
+                    subquantizers,
+                    codebookSize,
+                    assignments,
+                    codes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+
+/**
+ * Lloyd's k-means clustering with squared Euclidean distance on row-major float matrices.
+ * Used to train the coarse quantizer and the product quantizer of {@link IvfPqIndex}.
+ */
+final class KMeans {
+    private KMeans() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Clusters the rows of a matrix. The centroids are initialized with distinct random rows; a centroid that
+     * loses all its rows is moved to a random row.
+     *
+     * @param data The rows to cluster, in row-major order
+     * @param count The number of rows
+     * @param dimension The dimension of the rows
+     * @param k The number of clusters; must not exceed {@code count}
+     * @param iterations The number of iterations
+     * @param random The random generator for the initialization
+     * @return The centroids, in row-major order
+     */
+    static float[] train(float[] data, int count, int dimension, int k, int iterations, SplittableRandom random) {
+        if (k < 1 || k > count) {
+            throw new IllegalArgumentException("The number of clusters must be between 1 and the number of rows.");
+        }
+        float[] centroids = new float[k * dimension];
+        int[] rows = IntStream.range(0, count).toArray();
+        for (int c = 0; c < k; c++) {
+            int swap = c + random.nextInt(count - c);
+            int row = rows[swap];
+            rows[swap] = rows[c];
+            rows[c] = row;
+            System.arraycopy(data, row * dimension, centroids, c * dimension, dimension);
+        }
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float[] norms = squaredNorms(centroids, k, dimension);
+            int[] assignments = IntStream.range(0, count)
+                    .parallel()
+                    .map(i -> nearest(centroids, norms, k, data, i * dimension, dimension))
+                    .toArray();
+
+            double[] sums = new double[k * dimension];
+            int[] sizes = new int[k];
+            for (int i = 0; i < count; i++) {
+                int c = assignments[i];
+                sizes[c]++;
+                for (int j = 0; j < dimension; j++) {
+                    sums[c * dimension + j] += data[i * dimension + j];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    System.arraycopy(data, random.nextInt(count) * dimension, centroids, c * dimension, dimension);
+                    continue;
+                }
+                for (int j = 0; j < dimension; j++) {
+                    centroids[c * dimension + j] = (float) (sums[c * dimension + j] / sizes[c]);
+                }
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Returns the squared Euclidean norms of the centroids.
+     *
+     * @param centroids The centroids, in row-major order
+     * @param k The number of centroids
+     * @param dimension The dimension of the centroids
+     * @return The squared norm of each centroid
+     */
+    static float[] squaredNorms(float[] centroids, int k, int dimension) {
+        float[] norms = new float[k];
+        for (int c = 0; c < k; c++) {
+            norms[c] = VectorMath.dot(centroids, c * dimension, centroids, c * dimension, dimension);
+        }
+        return norms;
+    }
+
+    /**
+     * Finds the centroid with the smallest squared Euclidean distance to a row, i.e., the centroid maximizing
+     * {@code 2 x·c - |c|²}.
+     *
+     * @param centroids The centroids, in row-major order
+     * @param norms The squared norms of the centroids
+     * @param k The number of centroids
+     * @param data The array containing the row
+     * @param offset The offset of the row in {@code data}
+     * @param dimension The dimension of the row
+     * @return The index of the nearest centroid
+     */
+    static int nearest(float[] centroids, float[] norms, int k, float[] data, int offset, int dimension) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float score = 2 * VectorMath.dot(data, offset, centroids, c * dimension, dimension) - norms[c];
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
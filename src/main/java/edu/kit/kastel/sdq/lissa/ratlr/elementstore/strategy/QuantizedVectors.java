@@ -0,0 +1,189 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
+
+/**
+ * A scalar-quantized copy of the (normalized) embeddings of an {@link ElementVectors} view.
+ * <p>
+ * With {@link Quantization#FP16}, every value is stored as an IEEE 754 half-precision float. With
+ * {@link Quantization#INT8}, every vector is scaled by its own factor ({@code max |v_i| / 127}) to signed
+ * bytes. Queries stay in full precision (asymmetric scoring), so the only error stems from the stored vectors.
+ * Queries are {@link #dot(int, float[], int) scored} directly on the codes, so a scan reads a half (fp16) or a
+ * quarter (int8) of the bytes of the full-precision embeddings. The full-precision embeddings stay with the
+ * {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementStore}, which serves them by id and for rescoring.
+ * </p>
+ */
+final class QuantizedVectors {
+    /**
+     * The supported quantization modes of the {@code quantization} argument.
+     */
+    enum Quantization {
+        NONE,
+        FP16,
+        INT8;
+
+        static Quantization fromArgument(String argument) {
+            return valueOf(argument.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final ElementVectors elements;
+    private final Quantization quantization;
+    private final int dimension;
+    private final short[] float16Values;
+    private final byte[] int8Values;
+    private final float[] scales;
+
+    private QuantizedVectors(
+            ElementVectors elements,
+            Quantization quantization,
+            short[] float16Values,
+            byte[] int8Values,
+            float[] scales) {
+        this.elements = elements;
+        this.quantization = quantization;
+        this.dimension = elements.dimension();
+        this.float16Values = float16Values;
+        this.int8Values = int8Values;
+        this.scales = scales;
+    }
+
+    /**
+     * Quantizes the embeddings of the given view.
+     *
+     * @param elements The view on the normalized embeddings
+     * @param quantization The quantization mode; must not be {@link Quantization#NONE}
+     * @return The quantized embeddings
+     */
+    static QuantizedVectors quantize(ElementVectors elements, Quantization quantization) {
+        int dimension = elements.dimension();
+        return switch (quantization) {
+            case FP16 -> {
+                short[] values = new short[elements.size() * dimension];
+                encodeFloat16(elements, 0, values);
+                yield new QuantizedVectors(elements, quantization, values, null, null);
+            }
+            case INT8 -> {
+                byte[] values = new byte[elements.size() * dimension];
+                float[] scales = new float[elements.size()];
+                encodeInt8(elements, 0, values, scales);
+                yield new QuantizedVectors(elements, quantization, null, values, scales);
+            }
+            case NONE -> throw new IllegalArgumentException("Cannot quantize without a quantization mode.");
+        };
+    }
+
+    /**
+     * Creates the quantized embeddings of a view that extends the view of these quantized embeddings, reusing the
+     * codes of the first {@code previousSize} embeddings and quantizing the remaining ones.
+     *
+     * @param extended The new view; its first {@code previousSize} indices address the same embeddings as before
+     * @param previousSize The number of embeddings of the previous view
+     * @return The quantized embeddings of the new view
+     */
+    QuantizedVectors extend(ElementVectors extended, int previousSize) {
+        if (quantization == Quantization.INT8) {
+            byte[] values = Arrays.copyOf(int8Values, extended.size() * dimension);
+            float[] extendedScales = Arrays.copyOf(scales, extended.size());
+            encodeInt8(extended, previousSize, values, extendedScales);
+            return new QuantizedVectors(extended, quantization, null, values, extendedScales);
+        }
+        short[] values = Arrays.copyOf(float16Values, extended.size() * dimension);
+        encodeFloat16(extended, previousSize, values);
+        return new QuantizedVectors(extended, quantization, values, null, null);
+    }
+
+    private static void encodeFloat16(ElementVectors elements, int from, short[] values) {
+        int dimension = elements.dimension();
+        for (int i = from; i < elements.size(); i++) {
+            float[] vector = elements.vector(i);
+            for (int j = 0; j < dimension; j++) {
+                values[i * dimension + j] = Float.floatToFloat16(vector[j]);
+            }
+        }
+    }
+
+    private static void encodeInt8(ElementVectors elements, int from, byte[] values, float[] scales) {
+        int dimension = elements.dimension();
+        for (int i = from; i < elements.size(); i++) {
+            float[] vector = elements.vector(i);
+            float maxAbs = 0;
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            if (maxAbs == 0) {
+                continue;
+            }
+            scales[i] = maxAbs / Byte.MAX_VALUE;
+            for (int j = 0; j < dimension; j++) {
+                values[i * dimension + j] = (byte) Math.round(vector[j] / scales[i]);
+            }
+        }
+    }
+
+    /**
+     * Checks whether these quantized embeddings were created for the given view.
+     *
+     * @param view The view
+     * @return {@code true} if the indices of the view address these quantized embeddings
+     */
+    boolean isFor(ElementVectors view) {
+        return elements == view;
+    }
+
+    /**
+     * Computes the dot product between a full-precision query and the quantized embedding at an index of the view,
+     * without decoding the embedding first.
+     *
+     * @param index The index in the view
+     * @param query The array containing the query
+     * @param queryOffset The offset of the query in {@code query}
+     * @return The approximate dot product
+     */
+    float dot(int index, float[] query, int queryOffset) {
+        int offset = index * dimension;
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int j = 0;
+        if (quantization == Quantization.INT8) {
+            for (; j + 3 < dimension; j += 4) {
+                sum0 += query[queryOffset + j] * int8Values[offset + j];
+                sum1 += query[queryOffset + j + 1] * int8Values[offset + j + 1];
+                sum2 += query[queryOffset + j + 2] * int8Values[offset + j + 2];
+                sum3 += query[queryOffset + j + 3] * int8Values[offset + j + 3];
+            }
+            for (; j < dimension; j++) {
+                sum0 += query[queryOffset + j] * int8Values[offset + j];
+            }
+            // The scale of the embedding is applied once instead of per value
+            return ((sum0 + sum1) + (sum2 + sum3)) * scales[index];
+        }
+        for (; j + 3 < dimension; j += 4) {
+            sum0 += query[queryOffset + j] * Float.float16ToFloat(float16Values[offset + j]);
+            sum1 += query[queryOffset + j + 1] * Float.float16ToFloat(float16Values[offset + j + 1]);
+            sum2 += query[queryOffset + j + 2] * Float.float16ToFloat(float16Values[offset + j + 2]);
+            sum3 += query[queryOffset + j + 3] * Float.float16ToFloat(float16Values[offset + j + 3]);
+        }
+        for (; j < dimension; j++) {
+            sum0 += query[queryOffset + j] * Float.float16ToFloat(float16Values[offset + j]);
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Returns the memory used by the quantized embeddings, i.e., the bytes a scan reads.
+     *
+     * @return The size in bytes
+     */
+    long sizeInBytes() {
+        return quantization == Quantization.INT8
+                ? (long) int8Values.length + (long) scales.length * Float.BYTES
+                : (long) float16Values.length * Short.BYTES;
+    }
+}
@@ -1,24 +1,110 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementVectors;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
 public interface RetrievalStrategy {
     Logger logger = LoggerFactory.getLogger(RetrievalStrategy.class);
 
-    List<Pair<Element, Float>> findSimilarElements(
-            Pair<Element, float[]> query, List<Pair<Element, float[]>> allElementsInStore);
+    /**
+     * Finds the elements most similar to the query.
+     *
+     * @param query The element and vector to find similar elements for
+     * @param elementsInStore Read-only view on the elements that can be retrieved
+     * @return The similar elements with their similarity scores, most similar first
+     */
+    List<Pair<Element, Float>> findSimilarElements(Pair<Element, float[]> query, ElementVectors elementsInStore);
+
+    /**
+     * Finds the elements most similar to each of the queries.
+     * The default implementation answers the queries one after another; strategies may override it to
+     * process the queries together.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @param elementsInStore Read-only view on the elements that can be retrieved
+     * @return For each query (in the same order), the similar elements with their similarity scores, most similar first
+     */
+    default List<List<Pair<Element, Float>>> findSimilarElementsBatch(
+            List<Pair<Element, float[]>> queries, ElementVectors elementsInStore) {
+        List<List<Pair<Element, Float>>> results = new ArrayList<>(queries.size());
+        for (Pair<Element, float[]> query : queries) {
+            results.add(findSimilarElements(query, elementsInStore));
+        }
+        return results;
+    }
+
+    /**
+     * Prepares the strategy for the elements of the store, e.g., by building an index over their embeddings.
+     * Called once by the {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementStore} after it has been set up.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     */
+    default void setup(ElementVectors elementsInStore) {
+        // Most strategies do not need any preparation
+    }
+
+    /**
+     * Prepares the strategy for the elements of the store from a persistent index file.
+     * The buffer contains what {@link #writeIndex(DataOutput)} wrote when the index was created.
+     * The default implementation ignores the buffer and calls {@link #setup(ElementVectors)}.
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy
+     * @param index The serialized search structure (big-endian); empty if the index does not contain one
+     */
+    default void setup(ElementVectors elementsInStore, ByteBuffer index) {
+        setup(elementsInStore);
+    }
+
+    /**
+     * Adapts the strategy after elements were added to or removed from the store, without setting it up again.
+     * The new view extends the view the strategy was last set up or updated with: its first {@code previousSize}
+     * indices address the same elements as before, some of which may now be
+     * {@link ElementVectors#isRemoved(int) removed}; the remaining indices address added elements. After the store
+     * was compacted, {@code previousSize} is 0 and all indices changed.
+     * <p>
+     * The default implementation does nothing. Strategies that keep a search structure for the view they were set
+     * up with treat the new view like any other view, i.e., they scan it exactly.
+     * </p>
+     *
+     * @param elementsInStore Read-only view on the elements that will be searched by this strategy from now on
+     * @param previousSize The number of indices that are retained from the previous view
+     */
+    default void update(ElementVectors elementsInStore, int previousSize) {
+        // Stateless strategies search whatever view they are given
+    }
+
+    /**
+     * Serializes the search structure built in {@link #setup(ElementVectors)}, so that it can be stored in the
+     * persistent index file of the element store. Strategies without a search structure write nothing.
+     *
+     * @param out The output to write to
+     * @throws IOException If writing fails
+     */
+    default void writeIndex(DataOutput out) throws IOException {
+        // Most strategies do not have a search structure
+    }
 
     static RetrievalStrategy createStrategy(ModuleConfiguration configuration) {
         return switch (configuration.name()) {
             case "cosine_similarity" -> new CosineSimilarity(configuration);
+            case "hnsw" -> new Hnsw(configuration);
+            case "binary_rerank" -> new BinaryRerank(configuration);
+            case "ivf_pq" -> new IvfPq(configuration);
+            case "hybrid" -> new Hybrid(configuration);
+            case "adaptive_cutoff" -> new AdaptiveCutoff(configuration);
+            case "hierarchical" -> new Hierarchical(configuration);
             case "custom" -> {
                 logger.warn("For backwards compatibility: Using cosine similarity as default retrieval strategy.");
                 yield new CosineSimilarity(configuration);
@@ -0,0 +1,165 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.Arrays;
+
+/**
+ * Selects the {@code k} highest scoring candidates from a stream of (index, score) pairs without
+ * materializing or sorting all of them.
+ * <p>
+ * The selector keeps a binary min-heap of at most {@code k} candidates in parallel primitive arrays,
+ * so offering a candidate that does not make it into the top {@code k} costs a single comparison.
+ * Candidates are ranked by descending score as defined by {@link Float#compare(float, float)}; among
+ * equal scores, the lower index ranks higher. This is the order a stable sort by descending score
+ * produces if the candidates are offered by ascending index.
+ * </p>
+ * A selector is not thread-safe and is meant to be used for a single query.
+ */
+public final class TopKSelector {
+    private final int k;
+    private int[] indices;
+    private float[] scores;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * Creates a new selector.
+     *
+     * @param k The number of candidates to keep; {@link Integer#MAX_VALUE} keeps all of them
+     * @param expectedCandidates The expected number of offered candidates, used to size the heap
+     * @throws IllegalArgumentException If {@code k} is less than 1
+     */
+    public TopKSelector(int k, int expectedCandidates) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of candidates to select must be greater than 0.");
+        }
+        this.k = k;
+        int capacity = Math.max(1, Math.min(k, expectedCandidates));
+        this.indices = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    /**
+     * Offers a candidate to the selector.
+     *
+     * @param index The index of the candidate
+     * @param score The score of the candidate
+     * @throws IllegalStateException If the selection has already been sorted
+     */
+    public void offer(int index, float score) {
+        if (sorted) {
+            throw new IllegalStateException("The selection has already been sorted.");
+        }
+        if (size < k) {
+            if (size == indices.length) {
+                int capacity = (int) Math.min(k, 2L * size);
+                indices = Arrays.copyOf(indices, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            siftUp(size++, index, score);
+        } else if (ranksHigher(score, index, scores[0], indices[0])) {
+            siftDown(0, size, index, score);
+        }
+    }
+
+    /**
+     * Returns the number of selected candidates.
+     *
+     * @return The number of selected candidates, at most {@code k}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the selected candidates by rank. Afterwards, {@link #index(int)} and {@link #score(int)} can be
+     * used to read them; no further candidates may be offered.
+     */
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        // Heap sort: moving the lowest ranked candidate to the end in each step leaves the best one first
+        for (int end = size - 1; end > 0; end--) {
+            int index = indices[end];
+            float score = scores[end];
+            indices[end] = indices[0];
+            scores[end] = scores[0];
+            siftDown(0, end, index, score);
+        }
+        sorted = true;
+    }
+
+    /**
+     * Returns the index of the candidate with the given rank.
+     *
+     * @param rank The rank, {@code 0} being the highest scoring candidate
+     * @return The index of the candidate
+     * @throws IllegalStateException If the selection has not been sorted
+     */
+    public int index(int rank) {
+        requireSorted();
+        return indices[rank];
+    }
+
+    /**
+     * Returns the score of the candidate with the given rank.
+     *
+     * @param rank The rank, {@code 0} being the highest scoring candidate
+     * @return The score of the candidate
+     * @throws IllegalStateException If the selection has not been sorted
+     */
+    public float score(int rank) {
+        requireSorted();
+        return scores[rank];
+    }
+
+    private void requireSorted() {
+        if (!sorted) {
+            throw new IllegalStateException("The selection has not been sorted.");
+        }
+    }
+
+    private void siftUp(int position, int index, float score) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!ranksHigher(scores[parent], indices[parent], score, index)) {
+                break;
+            }
+            indices[position] = indices[parent];
+            scores[position] = scores[parent];
+            position = parent;
+        }
+        indices[position] = index;
+        scores[position] = score;
+    }
+
+    private void siftDown(int position, int heapSize, int index, float score) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && ranksHigher(scores[child], indices[child], scores[child + 1], indices[child + 1])) {
+                child++;
+            }
+            if (!ranksHigher(score, index, scores[child], indices[child])) {
+                break;
+            }
+            indices[position] = indices[child];
+            scores[position] = scores[child];
+            position = child;
+        }
+        indices[position] = index;
+        scores[position] = score;
+    }
+
+    /**
+     * Whether candidate {@code a} ranks higher than candidate {@code b}.
+     */
+    private static boolean ranksHigher(float scoreA, int indexA, float scoreB, int indexB) {
+        int comparison = Float.compare(scoreA, scoreB);
+        return comparison > 0 || (comparison == 0 && indexA < indexB);
+    }
+}
@@ -10,14 +10,20 @@ import org.slf4j.LoggerFactory;
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
 
 import edu.kit.kastel.sdq.lissa.ratlr.cache.Cache;
 import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheKey;
 import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.ConcurrencyLimiter;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Futures;
 
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 
 /**
@@ -25,6 +31,7 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
  * This class provides a framework for creating and caching embeddings with support for:
  * <ul>
  *     <li>Multi-threaded embedding generation</li>
+ *     <li>Batching of cache misses into few {@link EmbeddingModel#embedAll(List)} requests</li>
  *     <li>Automatic caching of embeddings to improve performance</li>
  *     <li>Handling of long texts through token length management</li>
  *     <li>Fallback mechanisms for failed embedding generation</li>
@@ -33,38 +40,101 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
  * The class uses a cache to store previously generated embeddings and implements
  * a sophisticated mechanism to handle texts that exceed the maximum token length
  * of the underlying embedding model.
+ * <p>
+ * The cached embeddings of all elements are fetched in bulk before any model is called. Elements with the same
+ * content share one embedding, so each distinct content is embedded only once, even by concurrent calls.
+ * Elements whose embeddings are not cached are sent in batches of at most {@code batch_size} elements and
+ * {@code batch_tokens} tokens (counted with the tokenizer of the model if jtokkit knows it, otherwise with
+ * {@code cl100k_base}). If a batch fails, it is split in halves that are retried separately, down to single
+ * elements, which are handled as before (including the token length fix).
+ * </p>
+ * <p>
+ * Contents that exceed the token limit of the model are truncated to the limit by a single encode and decode,
+ * or embedded as the mean of overlapping windows (see {@link EmbeddingRequestOptions}). If jtokkit knows the
+ * tokenizer of the model, such contents are detected before the model is called.
+ * </p>
+ * <p>
+ * All requests to the model are sent via a {@link ConcurrencyLimiter} that is shared by all creators of the same
+ * class and model. It starts with the number of threads of the creator and adapts the number of concurrent
+ * requests to the capacity of the model, up to {@code max_concurrency}.
+ * </p>
  */
 abstract class CachedEmbeddingCreator extends EmbeddingCreator {
     // TODO Handle Token Length better .. 8192 is the length for ada
     private static final int MAX_TOKEN_LENGTH = 8000;
 
+    private static final EncodingRegistry ENCODING_REGISTRY = Encodings.newDefaultEncodingRegistry();
+
     private static final Logger STATIC_LOGGER = LoggerFactory.getLogger(CachedEmbeddingCreator.class);
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final Cache cache;
     private final EmbeddingModel embeddingModel;
     private final String rawNameOfModel;
-    private final int threads;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final EmbeddingRequestOptions options;
+
+    /**
+     * The tokenizer of the model; {@code null} if jtokkit does not know the model.
+     */
+    private final Encoding modelEncoding;
 
     /**
-     * Creates a new cached embedding creator with the specified model and thread count.
+     * The tokenizer used to estimate the size of batches: the one of the model, or {@code cl100k_base}.
+     */
+    private final Encoding batchEncoding;
+
+    /**
+     * The contents that are currently being embedded by some call, identified by their cache key. Other calls wait
+     * for these embeddings instead of requesting them again.
+     */
+    private final ConcurrentMap<CacheKey, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new cached embedding creator with the specified model and thread count and the default request options.
      *
      * @param contextStore The shared context store for pipeline components
      * @param model The name of the embedding model to use
-     * @param threads The number of threads to use for parallel embedding generation
+     * @param threads The number of concurrent requests to start with
      * @param params Additional parameters for the embedding model
      */
     protected CachedEmbeddingCreator(ContextStore contextStore, String model, int threads, String... params) {
+        this(contextStore, model, threads, EmbeddingRequestOptions.DEFAULT, params);
+    }
+
+    /**
+     * Creates a new cached embedding creator with the specified model, thread count and request options.
+     *
+     * @param contextStore The shared context store for pipeline components
+     * @param model The name of the embedding model to use
+     * @param threads The number of concurrent requests to start with
+     * @param options The batch limits, the handling of long contents and the maximum number of concurrent requests
+     * @param params Additional parameters for the embedding model
+     */
+    protected CachedEmbeddingCreator(
+            ContextStore contextStore, String model, int threads, EmbeddingRequestOptions options, String... params) {
         super(contextStore);
         this.cache = CacheManager.getDefaultInstance().getCache(this, new String[] {model});
         this.embeddingModel = Objects.requireNonNull(createEmbeddingModel(model, params));
         this.rawNameOfModel = model;
-        this.threads = Math.max(1, threads);
+        this.options = Objects.requireNonNull(options);
+        int initialConcurrency = Math.max(1, threads);
+        int maxConcurrency = options.maxConcurrency() > 0
+                ? options.maxConcurrency()
+                : ConcurrencyLimiter.defaultMaxLimit(initialConcurrency);
+        this.concurrencyLimiter = ConcurrencyLimiter.forEndpoint(
+                getClass().getSimpleName() + ":" + model,
+                Math.min(initialConcurrency, maxConcurrency),
+                maxConcurrency);
+        this.modelEncoding = ENCODING_REGISTRY.getEncodingForModel(model).orElse(null);
+        this.batchEncoding =
+                modelEncoding != null ? modelEncoding : ENCODING_REGISTRY.getEncoding(EncodingType.CL100K_BASE);
     }
 
     /**
      * Creates an instance of the embedding model with the specified parameters.
      * This method must be implemented by concrete subclasses to provide the actual
-     * model creation logic.
+     * model creation logic. It is called once by the constructor; the model is shared by all concurrent requests
+     * and must be thread-safe.
      *
      * @param model The name of the model to create
      * @param params Additional parameters for model creation
@@ -73,73 +143,240 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
     protected abstract EmbeddingModel createEmbeddingModel(String model, String... params);
 
     /**
-     * Calculates embeddings for a list of elements, using either sequential or parallel processing
-     * based on the configured thread count.
+     * Calculates embeddings for a list of elements.
+     * All cached embeddings are fetched with a single {@link Cache#getAll(List, Class) bulk lookup} first. The
+     * elements without cached embedding are deduplicated by their content (i.e., their cache key), and each
+     * distinct content is passed to the model once (see {@link #calculateMissingEmbeddings(List)}). Contents that
+     * another call is embedding at the same time are awaited instead.
      *
      * @param elements The list of elements to create embeddings for
      * @return A list of vector embeddings, in the same order as the input elements
      */
     @Override
     public final List<float[]> calculateEmbeddings(List<Element> elements) {
-        if (threads == 1) return calculateEmbeddingsSequential(elements);
-
-        int threadCount = Math.min(threads, elements.size());
-        int numberOfElementsPerThread = elements.size() / threadCount;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        List<Future<List<float[]>>> futureResults = new ArrayList<>();
-
-        for (int i = 0; i < threadCount; i++) {
-            int start = i * numberOfElementsPerThread;
-            int end = i == threadCount - 1 ? elements.size() : (i + 1) * numberOfElementsPerThread;
-            List<Element> subList = elements.subList(start, end);
-            futureResults.add(executor.submit(() -> {
-                var embeddingModelInstance = createEmbeddingModel(this.rawNameOfModel);
-                return calculateEmbeddingsSequential(embeddingModelInstance, subList);
-            }));
+        List<CacheKey> keys = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            keys.add(cacheKey(rawNameOfModel, element));
+        }
+        List<float[]> embeddings = new ArrayList<>(cache.getAll(keys, float[].class));
+        Map<CacheKey, List<Integer>> missingIndicesByKey = new LinkedHashMap<>();
+        int misses = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            if (embeddings.get(i) == null) {
+                missingIndicesByKey.computeIfAbsent(keys.get(i), key -> new ArrayList<>()).add(i);
+                misses++;
+            }
+        }
+        if (!elements.isEmpty()) {
+            int hits = elements.size() - misses;
+            logger.info(
+                    "Found {} of {} embeddings in the cache (hit ratio {}), {} distinct contents are missing",
+                    hits,
+                    elements.size(),
+                    String.format(Locale.ROOT, "%.1f%%", 100.0 * hits / elements.size()),
+                    missingIndicesByKey.size());
+        }
+        if (missingIndicesByKey.isEmpty()) {
+            return embeddings;
+        }
+
+        // Claim the contents that no other call is embedding right now
+        Map<CacheKey, CompletableFuture<float[]>> claimed = new LinkedHashMap<>();
+        Map<CacheKey, CompletableFuture<float[]>> awaited = new LinkedHashMap<>();
+        List<Element> claimedElements = new ArrayList<>();
+        for (var entry : missingIndicesByKey.entrySet()) {
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            CompletableFuture<float[]> running = inFlight.putIfAbsent(entry.getKey(), future);
+            if (running == null) {
+                claimed.put(entry.getKey(), future);
+                claimedElements.add(elements.get(entry.getValue().getFirst()));
+            } else {
+                awaited.put(entry.getKey(), running);
+            }
         }
-        logger.info("Waiting for classification to finish. Elements in queue: {}", futureResults.size());
 
         try {
-            executor.shutdown();
-            boolean success = executor.awaitTermination(1, TimeUnit.DAYS);
-            if (!success) {
-                logger.error("Embedding did not finish in time.");
+            List<float[]> calculatedEmbeddings = calculateMissingEmbeddings(claimedElements);
+            int claimedIndex = 0;
+            for (CompletableFuture<float[]> future : claimed.values()) {
+                future.complete(calculatedEmbeddings.get(claimedIndex++));
+            }
+        } catch (RuntimeException | Error e) {
+            // Release the concurrent calls that wait for the claimed contents, whatever went wrong
+            for (CompletableFuture<float[]> future : claimed.values()) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            for (var entry : claimed.entrySet()) {
+                inFlight.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!awaited.isEmpty()) {
+            logger.info("Waiting for {} embeddings that are calculated concurrently", awaited.size());
+        }
+
+        for (var entry : missingIndicesByKey.entrySet()) {
+            CompletableFuture<float[]> future = claimed.containsKey(entry.getKey())
+                    ? claimed.get(entry.getKey())
+                    : awaited.get(entry.getKey());
+            float[] embedding = Futures.getLogged(future, logger);
+            for (int index : entry.getValue()) {
+                embeddings.set(index, embedding);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
+        return embeddings;
+    }
 
-        executor.close();
+    /**
+     * Calculates embeddings for elements that are not cached.
+     * <p>
+     * The elements are split into batches (see {@link #batches(List)}), which are put into a shared queue, largest
+     * batch (by tokens) first. The queue is drained by at most {@code max_concurrency} workers on virtual threads,
+     * which share the (thread-safe) embedding model of this creator; the concurrency limiter of the model decides how
+     * many of their requests are in flight at a time. A worker that is done with a batch takes the next one, so a few
+     * large batches do not leave the other workers idle.
+     * With a single worker, the batches are embedded one after another.
+     * </p>
+     *
+     * @param elements The elements to create embeddings for
+     * @return A list of vector embeddings, in the same order as the input elements
+     */
+    private List<float[]> calculateMissingEmbeddings(List<Element> elements) {
+        float[][] embeddings = new float[elements.size()][];
+        List<List<Integer>> batches = batches(elements);
+        int workerCount = Math.min(concurrencyLimiter.maxLimit(), batches.size());
+        logger.info(
+                "Calculating embeddings for {} elements in {} requests with up to {} concurrent requests",
+                elements.size(),
+                batches.size(),
+                workerCount);
+        if (workerCount <= 1) {
+            for (List<Integer> batch : batches) {
+                embedBatch(embeddingModel, elements, batch, embeddings);
+            }
+            return Arrays.asList(embeddings);
+        }
 
-        return futureResults.stream()
-                .map(f -> Futures.getLogged(f, logger))
-                .flatMap(Collection::stream)
-                .toList();
+        Queue<List<Integer>> queue = new ConcurrentLinkedQueue<>(batches);
+        List<Future<?>> workers = new ArrayList<>(workerCount);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    List<Integer> batch;
+                    while ((batch = queue.poll()) != null) {
+                        embedBatch(embeddingModel, elements, batch, embeddings);
+                    }
+                }));
+            }
+        }
+        for (Future<?> worker : workers) {
+            Futures.getLogged(worker, logger);
+        }
+        return Arrays.asList(embeddings);
     }
 
     /**
-     * Calculates embeddings sequentially using the default embedding model.
+     * Splits the elements into batches of at most {@code batch_size} elements and {@code batch_tokens} tokens,
+     * keeping their order. An element with more tokens than the budget, or with more tokens than the model
+     * accepts, forms a batch of its own.
      *
-     * @param elements The list of elements to create embeddings for
-     * @return A list of vector embeddings
+     * @param elements The elements to split
+     * @return The indices of the elements of each batch, sorted by the number of tokens of the batch (descending)
      */
-    private List<float[]> calculateEmbeddingsSequential(List<Element> elements) {
-        return this.calculateEmbeddingsSequential(this.embeddingModel, elements);
+    private List<List<Integer>> batches(List<Element> elements) {
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Long> batchTokenCounts = new ArrayList<>();
+        List<Integer> batch = new ArrayList<>();
+        long tokensInBatch = 0;
+        for (int index = 0; index < elements.size(); index++) {
+            int tokens = batchEncoding.countTokens(elements.get(index).getContent());
+            if (modelEncoding != null && tokens >= MAX_TOKEN_LENGTH) {
+                // Known to exceed the token limit of the model, see calculateFinalEmbedding
+                batches.add(List.of(index));
+                batchTokenCounts.add((long) tokens);
+                continue;
+            }
+            if (!batch.isEmpty()
+                    && (batch.size() == options.batchSize() || tokensInBatch + tokens > options.batchTokens())) {
+                batches.add(batch);
+                batchTokenCounts.add(tokensInBatch);
+                batch = new ArrayList<>();
+                tokensInBatch = 0;
+            }
+            batch.add(index);
+            tokensInBatch += tokens;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+            batchTokenCounts.add(tokensInBatch);
+        }
+
+        Integer[] order = new Integer[batches.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(batchTokenCounts::get, Comparator.reverseOrder()));
+        List<List<Integer>> sortedBatches = new ArrayList<>(batches.size());
+        for (int i : order) {
+            sortedBatches.add(batches.get(i));
+        }
+        return sortedBatches;
     }
 
     /**
-     * Calculates embeddings sequentially using the specified embedding model.
+     * Embeds the given elements with a single {@link EmbeddingModel#embedAll(List)} request and caches the results.
+     * If the request fails, the batch is split in halves that are embedded separately. A single element is
+     * embedded via {@link #calculateFinalEmbedding(EmbeddingModel, Element)}, which handles contents that exceed
+     * the token limit of the model.
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param elements The list of elements to create embeddings for
-     * @return A list of vector embeddings
+     * @param elements The elements to embed in the current call
+     * @param batch The indices of the elements to embed in this batch
+     * @param embeddings The embeddings of the elements of the current call, filled at the indices of the batch
      */
-    private List<float[]> calculateEmbeddingsSequential(EmbeddingModel embeddingModel, List<Element> elements) {
-        List<float[]> embeddings = new ArrayList<>();
-        for (Element element : elements) {
-            embeddings.add(calculateFinalEmbedding(embeddingModel, cache, rawNameOfModel, element));
+    private void embedBatch(
+            EmbeddingModel embeddingModel, List<Element> elements, List<Integer> batch, float[][] embeddings) {
+        if (batch.size() == 1) {
+            int index = batch.getFirst();
+            embeddings[index] = calculateFinalEmbedding(embeddingModel, elements.get(index));
+            return;
         }
-        return embeddings;
+
+        List<Embedding> batchEmbeddings;
+        try {
+            List<TextSegment> segments = new ArrayList<>(batch.size());
+            for (int index : batch) {
+                segments.add(TextSegment.from(elements.get(index).getContent()));
+            }
+            batchEmbeddings = concurrencyLimiter
+                    .call(() -> embeddingModel.embedAll(segments))
+                    .content();
+            if (batchEmbeddings.size() != batch.size()) {
+                throw new IllegalStateException(
+                        "Expected %d embeddings but got %d".formatted(batch.size(), batchEmbeddings.size()));
+            }
+        } catch (Exception e) {
+            logger.warn(
+                    "Error while calculating embeddings for a batch of {} elements, splitting it: {}",
+                    batch.size(),
+                    e.getMessage());
+            int middle = batch.size() / 2;
+            embedBatch(embeddingModel, elements, batch.subList(0, middle), embeddings);
+            embedBatch(embeddingModel, elements, batch.subList(middle, batch.size()), embeddings);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            int index = batch.get(i);
+            float[] embedding = batchEmbeddings.get(i).vector();
+            cache.put(cacheKey(rawNameOfModel, elements.get(index)), embedding);
+            embeddings[index] = embedding;
+        }
+    }
+
+    private static CacheKey cacheKey(String rawNameOfModel, Element element) {
+        return CacheKey.of(rawNameOfModel, -1, -1, CacheKey.Mode.EMBEDDING, element.getContent());
     }
 
     /**
@@ -151,7 +388,9 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
      *     <li>If cached, returns the existing embedding immediately</li>
      *     <li>If not cached:
      *         <ul>
-     *             <li>Attempts to generate a new embedding using the provided model</li>
+     *             <li>If the tokenizer of the model is known and the content exceeds the token limit, embeds it
+     *                 via {@link #embedLongContent(EmbeddingModel, CacheKey, String)} without trying it first</li>
+     *             <li>Otherwise, attempts to generate a new embedding using the provided model</li>
      *             <li>If successful, caches the result and returns it</li>
      *             <li>If generation fails (e.g., due to token length), attempts to fix the issue
      *                 using {@link #tryToFixWithLength}</li>
@@ -168,93 +407,130 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
      * </ul>
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param cache The cache to use for storing and retrieving embeddings
-     * @param rawNameOfModel The name of the model being used
      * @param element The element to create an embedding for
      * @return The vector embedding of the element, either from cache or newly generated
      */
-    private static float[] calculateFinalEmbedding(
-            EmbeddingModel embeddingModel, Cache cache, String rawNameOfModel, Element element) {
+    private float[] calculateFinalEmbedding(EmbeddingModel embeddingModel, Element element) {
 
-        CacheKey cacheKey = CacheKey.of(rawNameOfModel, -1, -1, CacheKey.Mode.EMBEDDING, element.getContent());
+        CacheKey cacheKey = cacheKey(rawNameOfModel, element);
 
         float[] cachedEmbedding = cache.get(cacheKey, float[].class);
         if (cachedEmbedding != null) {
             return cachedEmbedding;
+        } else if (modelEncoding != null && modelEncoding.countTokens(element.getContent()) >= MAX_TOKEN_LENGTH) {
+            return embedLongContent(embeddingModel, cacheKey, element.getContent());
         } else {
             STATIC_LOGGER.info("Calculating embedding for: {}", element.getIdentifier());
             try {
                 float[] embedding =
-                        embeddingModel.embed(element.getContent()).content().vector();
+                        concurrencyLimiter
+                                .call(() -> embeddingModel.embed(element.getContent()))
+                                .content()
+                                .vector();
                 cache.put(cacheKey, embedding);
                 return embedding;
             } catch (Exception e) {
                 STATIC_LOGGER.error(
                         "Error while calculating embedding for .. try to fix ..: {}", element.getIdentifier());
                 // Probably the length was too long .. check that
-                return tryToFixWithLength(embeddingModel, cache, rawNameOfModel, cacheKey, element.getContent());
+                return tryToFixWithLength(embeddingModel, cacheKey, element.getContent());
             }
         }
     }
 
     /**
-     * Attempts to fix embedding generation for content that exceeds the maximum token length.
-     * This method uses binary search to find the maximum content length that fits within
-     * the token limit and generates an embedding for that truncated content.
+     * Attempts to fix embedding generation for content that exceeds the maximum token length after the model
+     * rejected it.
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param cache The cache to use for storing and retrieving embeddings
-     * @param rawNameOfModel The name of the model being used
      * @param key The original cache key
      * @param content The content that exceeded the token limit
-     * @return The vector embedding of the truncated content
+     * @return The vector embedding of the content, see {@link #embedLongContent(EmbeddingModel, CacheKey, String)}
      * @throws IllegalArgumentException If the token length was not the cause of the failure
      */
-    private static float[] tryToFixWithLength(
-            EmbeddingModel embeddingModel, Cache cache, String rawNameOfModel, CacheKey key, String content) {
-        String newKey = key.localKey() + "_fixed_" + MAX_TOKEN_LENGTH;
-
-        // We need the old keys for backwards compatibility
-        @SuppressWarnings("deprecation")
-        CacheKey newCacheKey = CacheKey.ofRaw(
-                rawNameOfModel,
-                -1,
-                -1,
-                CacheKey.Mode.EMBEDDING,
-                "(FIXED::%d): %s".formatted(MAX_TOKEN_LENGTH, content),
-                newKey);
-
-        float[] cachedEmbedding = cache.get(newCacheKey, float[].class);
-        if (cachedEmbedding != null) {
-            STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
-            return cachedEmbedding;
+    private float[] tryToFixWithLength(EmbeddingModel embeddingModel, CacheKey key, String content) {
+        if (modelEncoding == null) {
+            throw new IllegalArgumentException("Unknown Embedding Model. Don't know how to handle previous exception");
         }
-        EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
-        Encoding encoding = registry.getEncodingForModel(rawNameOfModel)
-                .orElseThrow(() -> new IllegalArgumentException(
-                        "Unknown Embedding Model. Don't know how to handle previous exception"));
-        int tokens = encoding.countTokens(content);
+        int tokens = modelEncoding.countTokens(content);
         if (tokens < MAX_TOKEN_LENGTH)
             throw new IllegalArgumentException(
                     "Token length was not too long. Don't know how to handle previous exception");
+        return embedLongContent(embeddingModel, key, content);
+    }
 
-        // Binary search for max length of string
-        int left = 0;
-        int right = content.length();
-        while (left < right) {
-            int mid = left + (right - left) / 2;
-            String subContent = content.substring(0, mid);
-            int subTokens = encoding.countTokens(subContent);
-            if (subTokens >= MAX_TOKEN_LENGTH) {
-                right = mid;
-            } else {
-                left = mid + 1;
+    /**
+     * Embeds a content that exceeds the maximum token length, as configured by {@code long_content}:
+     * <ul>
+     *     <li>{@code truncate}: The content is encoded once, cut after {@value #MAX_TOKEN_LENGTH} tokens and decoded
+     *     again, and the resulting prefix is embedded.</li>
+     *     <li>{@code windows}: The tokens of the content are split into windows of {@value #MAX_TOKEN_LENGTH}
+     *     tokens that overlap by {@code window_overlap} tokens. The windows are embedded with one request, and the
+     *     mean of their embeddings is returned.</li>
+     * </ul>
+     * The result is cached under a key that includes the handling, so that the modes do not share embeddings.
+     * Earlier versions truncated contents by characters and cached them under {@code <key>_fixed_8000}; these
+     * embeddings are not reused, as they embed a different prefix of the content.
+     *
+     * @param embeddingModel The model to use for embedding generation
+     * @param key The original cache key
+     * @param content The content that exceeds the token limit
+     * @return The vector embedding of the content
+     */
+    private float[] embedLongContent(EmbeddingModel embeddingModel, CacheKey key, String content) {
+        boolean windows = options.longContent() == EmbeddingRequestOptions.LongContent.WINDOWS;
+        String handling = windows
+                ? "WINDOWS::%d::%d".formatted(MAX_TOKEN_LENGTH, options.windowOverlap())
+                : "TRUNCATE::%d".formatted(MAX_TOKEN_LENGTH);
+        CacheKey longContentKey = CacheKey.of(
+                rawNameOfModel, -1, -1, CacheKey.Mode.EMBEDDING, "(%s): %s".formatted(handling, content));
+
+        float[] cachedEmbedding = cache.get(longContentKey, float[].class);
+        if (cachedEmbedding != null) {
+            STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
+            return cachedEmbedding;
+        }
+
+        IntArrayList tokens = modelEncoding.encode(content);
+        float[] embedding;
+        if (windows) {
+            int stride = Math.max(1, MAX_TOKEN_LENGTH - Math.min(options.windowOverlap(), MAX_TOKEN_LENGTH - 1));
+            List<TextSegment> segments = new ArrayList<>();
+            for (int start = 0; start < tokens.size(); start += stride) {
+                segments.add(TextSegment.from(modelEncoding.decode(slice(tokens, start, MAX_TOKEN_LENGTH))));
+                if (start + MAX_TOKEN_LENGTH >= tokens.size()) {
+                    break;
+                }
+            }
+            List<Embedding> windowEmbeddings = concurrencyLimiter
+                    .call(() -> embeddingModel.embedAll(segments))
+                    .content();
+            embedding = new float[windowEmbeddings.getFirst().vector().length];
+            for (Embedding windowEmbedding : windowEmbeddings) {
+                float[] vector = windowEmbedding.vector();
+                for (int i = 0; i < embedding.length; i++) {
+                    embedding[i] += vector[i] / windowEmbeddings.size();
+                }
             }
+            STATIC_LOGGER.info("using mean embedding of {} windows for: {}", segments.size(), key.localKey());
+        } else {
+            String fixedContent = modelEncoding.decode(slice(tokens, 0, MAX_TOKEN_LENGTH));
+            embedding = concurrencyLimiter
+                    .call(() -> embeddingModel.embed(fixedContent))
+                    .content()
+                    .vector();
+            STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
         }
-        String fixedContent = content.substring(0, left);
-        float[] embedding = embeddingModel.embed(fixedContent).content().vector();
-        STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
-        cache.put(newCacheKey, embedding);
+        cache.put(longContentKey, embedding);
         return embedding;
     }
+
+    private static IntArrayList slice(IntArrayList tokens, int from, int length) {
+        int to = Math.min(tokens.size(), from + length);
+        IntArrayList slice = new IntArrayList(to - from);
+        for (int i = from; i < to; i++) {
+            slice.add(tokens.get(i));
+        }
+        return slice;
+    }
 }
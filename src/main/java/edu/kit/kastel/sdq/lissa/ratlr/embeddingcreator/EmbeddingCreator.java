@@ -38,6 +38,14 @@ import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
  *             <li>Requires local model and tokenizer files</li>
  *             <li>Uses mean pooling for embedding generation</li>
  *             <li>Configuration via path_to_model and path_to_tokenizer parameters</li>
+ *             <li>Loads the model once and shares it between a configurable number of worker threads</li>
+ *         </ul>
+ *     </li>
+ *     <li>Precomputed: Embeddings calculated outside of LiSSA
+ *         <ul>
+ *             <li>Loaded from a memory-mapped .npy matrix with an id file, or from a JSON Lines file</li>
+ *             <li>Looked up by element identifier or content key</li>
+ *             <li>Optionally falls back to another embedding creator for missing embeddings</li>
  *         </ul>
  *     </li>
  *     <li>Mock: Testing implementation
@@ -48,7 +56,7 @@ import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
  *     </li>
  * </ul>
  *
- * All implementations (except Mock) support caching of embeddings through the
+ * All implementations (except Precomputed and Mock) support caching of embeddings through the
  * {@link CachedEmbeddingCreator} base class, which provides:
  * <ul>
  *     <li>Automatic caching of generated embeddings</li>
@@ -94,9 +102,33 @@ public abstract class EmbeddingCreator {
      */
     public abstract List<float[]> calculateEmbeddings(List<Element> elements);
 
+    /**
+     * Prepares this creator for the elements of the target store, before the embeddings of the pipeline are
+     * calculated. Creators that derive a transformation from the corpus (e.g., a PCA projection) fit it here.
+     * Does nothing by default.
+     *
+     * @param targetElements The elements of the target store
+     */
+    public void prepare(List<Element> targetElements) {
+        // Nothing to prepare by default
+    }
+
+    /**
+     * Identifies the transformation that {@link #prepare(List)} derived from the target elements. Embeddings that
+     * were calculated with another transformation, e.g., in a persistent index, must not be mixed with the
+     * embeddings of this creator.
+     *
+     * @return The identity of the prepared transformation, empty if the embeddings do not depend on the target
+     *         elements
+     */
+    public String fingerprint() {
+        return "";
+    }
+
     /**
      * Creates an appropriate embedding creator based on the provided configuration.
-     * The type of creator is determined by the configuration's name field.
+     * The type of creator is determined by the configuration's name field. If the configuration specifies a
+     * {@code reduction}, the embeddings of the creator are reduced (see {@link ReducingEmbeddingCreator}).
      *
      * @param configuration The configuration specifying which embedding creator to use
      * @param contextStore The shared context store for pipeline components
@@ -105,12 +137,14 @@ public abstract class EmbeddingCreator {
      */
     public static EmbeddingCreator createEmbeddingCreator(
             ModuleConfiguration configuration, ContextStore contextStore) {
-        return switch (configuration.name()) {
+        EmbeddingCreator creator = switch (configuration.name()) {
             case "ollama" -> new OllamaEmbeddingCreator(configuration, contextStore);
             case "openai" -> new OpenAiEmbeddingCreator(configuration, contextStore);
             case "onnx" -> new OnnxEmbeddingCreator(configuration, contextStore);
+            case "precomputed" -> new PrecomputedEmbeddingCreator(configuration, contextStore);
             case "mock" -> new MockEmbeddingCreator(contextStore);
             default -> throw new IllegalStateException("Unexpected value: " + configuration.name());
         };
+        return ReducingEmbeddingCreator.reduceIfConfigured(configuration, creator, contextStore);
     }
 }
@@ -0,0 +1,91 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.util.Locale;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+
+/**
+ * Options for the requests a {@link CachedEmbeddingCreator} sends to its model: the limits of a batch, how
+ * contents that exceed the token limit of the model are embedded, and how many requests may be sent concurrently.
+ * <p>
+ * All options are only read from a configuration if present, so that the configuration of existing runs stays
+ * unchanged.
+ * </p>
+ *
+ * @param batchSize The maximum number of elements per request ({@code batch_size}, default: 128)
+ * @param batchTokens The maximum number of tokens per request ({@code batch_tokens}, default: 100000);
+ *                    a single larger element is sent alone
+ * @param longContent How contents that exceed the token limit are embedded ({@code long_content}, default: truncate)
+ * @param windowOverlap The number of tokens consecutive windows share if long contents are embedded in windows
+ *                      ({@code window_overlap}, default: 256)
+ * @param maxConcurrency The maximum number of concurrent requests the concurrency limiter of the model may grow to
+ *                       ({@code max_concurrency}); 0 for the default of the limiter, see
+ *                       {@link edu.kit.kastel.sdq.lissa.ratlr.utils.ConcurrencyLimiter#defaultMaxLimit(int)}
+ */
+record EmbeddingRequestOptions(
+        int batchSize, int batchTokens, LongContent longContent, int windowOverlap, int maxConcurrency) {
+    static final EmbeddingRequestOptions DEFAULT =
+            new EmbeddingRequestOptions(128, 100_000, LongContent.TRUNCATE, 256, 0);
+
+    private static final String BATCH_SIZE_KEY = "batch_size";
+    private static final String BATCH_TOKENS_KEY = "batch_tokens";
+    private static final String LONG_CONTENT_KEY = "long_content";
+    private static final String WINDOW_OVERLAP_KEY = "window_overlap";
+    private static final String MAX_CONCURRENCY_KEY = "max_concurrency";
+
+    /**
+     * How contents that exceed the token limit of the model are embedded.
+     */
+    enum LongContent {
+        /**
+         * Embed the first tokens of the content up to the token limit.
+         */
+        TRUNCATE,
+        /**
+         * Embed overlapping windows of the content and use the mean of their embeddings.
+         */
+        WINDOWS;
+
+        static LongContent fromArgument(String argument) {
+            return valueOf(argument.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    EmbeddingRequestOptions {
+        if (batchSize < 1 || batchTokens < 1) {
+            throw new IllegalArgumentException("batch_size and batch_tokens must be greater than 0.");
+        }
+        if (windowOverlap < 0) {
+            throw new IllegalArgumentException("window_overlap must not be negative.");
+        }
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("max_concurrency must not be negative.");
+        }
+    }
+
+    /**
+     * Reads the options from the configuration of an embedding creator.
+     *
+     * @param configuration The configuration of the embedding creator
+     * @return The configured options, with defaults for absent arguments
+     */
+    static EmbeddingRequestOptions fromConfiguration(ModuleConfiguration configuration) {
+        return new EmbeddingRequestOptions(
+                configuration.hasArgument(BATCH_SIZE_KEY)
+                        ? configuration.argumentAsInt(BATCH_SIZE_KEY)
+                        : DEFAULT.batchSize(),
+                configuration.hasArgument(BATCH_TOKENS_KEY)
+                        ? configuration.argumentAsInt(BATCH_TOKENS_KEY)
+                        : DEFAULT.batchTokens(),
+                configuration.hasArgument(LONG_CONTENT_KEY)
+                        ? LongContent.fromArgument(configuration.argumentAsString(LONG_CONTENT_KEY))
+                        : DEFAULT.longContent(),
+                configuration.hasArgument(WINDOW_OVERLAP_KEY)
+                        ? configuration.argumentAsInt(WINDOW_OVERLAP_KEY)
+                        : DEFAULT.windowOverlap(),
+                configuration.hasArgument(MAX_CONCURRENCY_KEY)
+                        ? configuration.argumentAsInt(MAX_CONCURRENCY_KEY)
+                        : DEFAULT.maxConcurrency());
+    }
+}
@@ -26,20 +26,27 @@ import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
  * </ul>
  *
  * The default model used is "nomic-embed-text:v1.5", but this can be overridden
- * through the configuration.
+ * through the configuration. Elements are embedded in batches that can be limited with {@code batch_size}
+ * and {@code batch_tokens}. The creator starts with a single request at a time and sends more concurrent requests
+ * as long as the latency of the server stays flat, up to {@code max_concurrency}.
  */
 public class OllamaEmbeddingCreator extends CachedEmbeddingCreator {
 
     /**
      * Creates a new Ollama embedding creator with the specified configuration.
      * The configuration can specify a custom model name, otherwise the default
-     * "nomic-embed-text:v1.5" is used.
+     * "nomic-embed-text:v1.5" is used, and the optional request options
+     * (see {@link EmbeddingRequestOptions}).
      *
      * @param configuration The configuration containing model settings
      * @param contextStore The shared context store for pipeline components
      */
     public OllamaEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(contextStore, configuration.argumentAsString("model", "nomic-embed-text:v1.5"), 1);
+        super(
+                contextStore,
+                configuration.argumentAsString("model", "nomic-embed-text:v1.5"),
+                1,
+                EmbeddingRequestOptions.fromConfiguration(configuration));
     }
 
     /**
@@ -2,12 +2,24 @@
 package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.AbstractInProcessEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxBertBiEncoder;
 import dev.langchain4j.model.embedding.onnx.PoolingMode;
 
 /**
@@ -21,17 +33,37 @@ import dev.langchain4j.model.embedding.onnx.PoolingMode;
  *
  * The embedding model uses mean pooling by default for generating the final
  * embeddings from the token-level representations.
+ * <p>
+ * The model and tokenizer are loaded once into a single ONNX Runtime session, which is shared by a pool of
+ * {@code threads} worker threads. Each batch of elements (see {@link CachedEmbeddingCreator}) is spread over
+ * these workers, which run the session concurrently. The number of threads ONNX Runtime uses within
+ * ({@code intra_op_threads}) and across ({@code inter_op_threads}) the operators of a single run can be set as well;
+ * keep their product with {@code threads} at about the number of cores.
+ * </p>
  */
 public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
+    private static final String THREADS_KEY = "threads";
+    private static final String INTRA_OP_THREADS_KEY = "intra_op_threads";
+    private static final String INTER_OP_THREADS_KEY = "inter_op_threads";
+
     /**
-     * Creates a new ONNX embedding creator with the specified model and file paths.
+     * Creates a new ONNX embedding creator with the specified model and file paths. The session is shared by one
+     * worker thread per available processor, each running single-threaded operators.
      *
      * @param model The name of the model
      * @param pathToModel The path to the ONNX model file
      * @param pathToTokenizer The path to the tokenizer file
      */
     public OnnxEmbeddingCreator(String model, String pathToModel, String pathToTokenizer, ContextStore contextStore) {
-        super(contextStore, model, 1, pathToModel, pathToTokenizer);
+        super(
+                contextStore,
+                model,
+                1,
+                pathToModel,
+                pathToTokenizer,
+                String.valueOf(Runtime.getRuntime().availableProcessors()),
+                "1",
+                "1");
     }
 
     /**
@@ -42,16 +74,43 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
      *     <li>{@code path_to_model}: The path to the ONNX model file</li>
      *     <li>{@code path_to_tokenizer}: The path to the tokenizer file</li>
      * </ul>
+     * Optionally, it can specify:
+     * <ul>
+     *     <li>{@code threads}: The number of worker threads sharing the session (default: number of processors)</li>
+     *     <li>{@code intra_op_threads}: The number of threads ONNX Runtime uses within an operator (default: 1)</li>
+     *     <li>{@code inter_op_threads}: The number of threads ONNX Runtime uses across operators (default: 1)</li>
+     *     <li>{@code batch_size} and {@code batch_tokens}: The limits of the batches that are spread over the
+     *     worker threads</li>
+     *     <li>{@code long_content} and {@code window_overlap}: The handling of contents that exceed the token limit
+     *     (see {@link EmbeddingRequestOptions})</li>
+     * </ul>
      *
      * @param configuration The configuration containing model and file paths
      * @param contextStore The shared context store for pipeline components
      */
     public OnnxEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        this(
+        super(
+                contextStore,
                 configuration.argumentAsString("model"),
+                1,
+                EmbeddingRequestOptions.fromConfiguration(configuration),
                 configuration.argumentAsString("path_to_model"),
                 configuration.argumentAsString("path_to_tokenizer"),
-                contextStore);
+                String.valueOf(optionalThreads(
+                        configuration, THREADS_KEY, Runtime.getRuntime().availableProcessors())),
+                String.valueOf(optionalThreads(configuration, INTRA_OP_THREADS_KEY, 1)),
+                String.valueOf(optionalThreads(configuration, INTER_OP_THREADS_KEY, 1)));
+    }
+
+    /**
+     * Reads an optional thread count.
+     */
+    private static int optionalThreads(ModuleConfiguration configuration, String key, int defaultValue) {
+        int value = configuration.hasArgument(key) ? configuration.argumentAsInt(key) : defaultValue;
+        if (value < 1) {
+            throw new IllegalArgumentException(key + " must be greater than 0.");
+        }
+        return value;
     }
 
     /**
@@ -60,14 +119,20 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
      * before creating the model instance.
      *
      * @param model The name of the model
-     * @param params Additional parameters containing the model and tokenizer file paths
+     * @param params The model and tokenizer file paths, followed by the number of worker threads and the numbers of
+     *               intra-op and inter-op threads of the session
      * @return A configured ONNX embedding model instance
-     * @throws IllegalStateException If either the model or tokenizer file does not exist
+     * @throws IllegalStateException If either the model or tokenizer file does not exist, or ONNX Runtime cannot
+     *                               create the session
+     * @throws UncheckedIOException If the tokenizer file cannot be read
      */
     @Override
     protected EmbeddingModel createEmbeddingModel(String model, String... params) {
         String modelPath = params[0];
         String tokenizerPath = params[1];
+        int threads = Integer.parseInt(params[2]);
+        int intraOpThreads = Integer.parseInt(params[3]);
+        int interOpThreads = Integer.parseInt(params[4]);
 
         File modelFile = new File(modelPath);
         File tokenizerFile = new File(tokenizerPath);
@@ -75,9 +140,54 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
             throw new IllegalStateException("Model or Tokenizer file does not exist");
         }
 
-        PoolingMode poolingMode = PoolingMode.MEAN;
-        EmbeddingModel embeddingModel = new OnnxEmbeddingModel(modelFile.toPath(), tokenizerFile.toPath(), poolingMode);
-        logger.info("Created OnnxEmbeddingModel with model: {} and tokenizer: {}", modelPath, tokenizerPath);
+        OnnxBertBiEncoder encoder;
+        OrtEnvironment environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions sessionOptions = new OrtSession.SessionOptions();
+                InputStream tokenizer = Files.newInputStream(Path.of(tokenizerPath))) {
+            sessionOptions.setIntraOpNumThreads(intraOpThreads);
+            sessionOptions.setInterOpNumThreads(interOpThreads);
+            sessionOptions.setExecutionMode(
+                    interOpThreads > 1
+                            ? OrtSession.SessionOptions.ExecutionMode.PARALLEL
+                            : OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL);
+            OrtSession session = environment.createSession(modelPath, sessionOptions);
+            encoder = new OnnxBertBiEncoder(environment, session, tokenizer, PoolingMode.MEAN);
+        } catch (OrtException e) {
+            throw new IllegalStateException("Could not create the ONNX session", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Daemon threads, as the pool lives as long as the model and must not keep the JVM alive
+        ExecutorService workers = Executors.newFixedThreadPool(
+                threads, Thread.ofPlatform().daemon().name("onnx-embedding-", 0).factory());
+
+        EmbeddingModel embeddingModel = new SharedSessionEmbeddingModel(encoder, workers);
+        logger.info(
+                "Created ONNX embedding model with model: {} and tokenizer: {}"
+                        + " ({} worker threads, {} intra-op and {} inter-op threads)",
+                modelPath,
+                tokenizerPath,
+                threads,
+                intraOpThreads,
+                interOpThreads);
         return embeddingModel;
     }
+
+    /**
+     * An in-process embedding model whose session is created by this creator, so that its options can be set.
+     * {@link dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel} only creates sessions with default options.
+     */
+    private static final class SharedSessionEmbeddingModel extends AbstractInProcessEmbeddingModel {
+        private final OnnxBertBiEncoder encoder;
+
+        private SharedSessionEmbeddingModel(OnnxBertBiEncoder encoder, Executor workers) {
+            super(workers);
+            this.encoder = encoder;
+        }
+
+        @Override
+        protected OnnxBertBiEncoder model() {
+            return encoder;
+        }
+    }
 }
@@ -20,23 +20,29 @@ import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
  * </ul>
  *
  * The default model used is "text-embedding-ada-002", but this can be overridden
- * through the configuration. The creator uses 40 threads by default for parallel
- * processing of embedding requests.
+ * through the configuration. The creator starts with 40 concurrent embedding requests and adapts their number to
+ * the rate limits of the model, up to {@code max_concurrency}. Each request embeds a batch of elements; its size can
+ * be limited with {@code batch_size} and {@code batch_tokens}.
  */
 public class OpenAiEmbeddingCreator extends CachedEmbeddingCreator {
-    /** Default number of threads for parallel processing */
+    /** Number of concurrent requests to start with */
     private static final int THREADS = 40;
 
     /**
      * Creates a new OpenAI embedding creator with the specified configuration.
      * The configuration can specify a custom model name, otherwise the default
-     * "text-embedding-ada-002" is used.
+     * "text-embedding-ada-002" is used, and the optional request options
+     * (see {@link EmbeddingRequestOptions}).
      *
      * @param configuration The configuration containing model settings
      * @param contextStore The shared context store for pipeline components
      */
     public OpenAiEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(contextStore, configuration.argumentAsString("model", "text-embedding-ada-002"), THREADS);
+        super(
+                contextStore,
+                configuration.argumentAsString("model", "text-embedding-ada-002"),
+                THREADS,
+                EmbeddingRequestOptions.fromConfiguration(configuration));
     }
 
     /**
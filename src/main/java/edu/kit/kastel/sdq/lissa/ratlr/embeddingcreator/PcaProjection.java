@@ -0,0 +1,265 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+
+/**
+ * A linear projection of embeddings onto their principal components, used to reduce their dimension.
+ * <p>
+ * The projection is fitted on normalized embeddings: they are centered by their mean, and the
+ * {@code reducedDimension} directions of largest variance are approximated by a subspace iteration on their
+ * covariance matrix. A projected embedding is normalized again, so that cosine similarities can be computed as
+ * before. The projection can be written to and read from a small binary file, so that it is fitted only once.
+ * </p>
+ */
+final class PcaProjection {
+    private static final byte[] MAGIC = "LISSAPCA".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The version of the file format. Increase on incompatible changes.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of subspace iterations. The captured variance converges within a few iterations, even if the
+     * individual components have not converged yet, which is irrelevant for the projection.
+     */
+    private static final int ITERATIONS = 6;
+
+    private final int dimension;
+    private final int reducedDimension;
+    private final float[] mean;
+
+    /**
+     * The principal components as rows of a {@code reducedDimension x dimension} row-major matrix.
+     */
+    private final float[] components;
+
+    private PcaProjection(int dimension, int reducedDimension, float[] mean, float[] components) {
+        this.dimension = dimension;
+        this.reducedDimension = reducedDimension;
+        this.mean = mean;
+        this.components = components;
+    }
+
+    /**
+     * Fits a projection onto the principal components of the given embeddings.
+     *
+     * @param embeddings The embeddings to fit the projection on; all of the same dimension
+     * @param reducedDimension The number of principal components
+     * @return The fitted projection
+     * @throws IllegalArgumentException If there are no embeddings or the reduced dimension is not smaller than the
+     *                                  dimension of the embeddings
+     */
+    static PcaProjection fit(List<float[]> embeddings, int reducedDimension) {
+        if (embeddings.isEmpty()) {
+            throw new IllegalArgumentException("Cannot fit a PCA projection without embeddings.");
+        }
+        int dimension = embeddings.getFirst().length;
+        if (reducedDimension < 1 || reducedDimension >= dimension) {
+            throw new IllegalArgumentException("The reduced dimension must be in [1, " + dimension + ").");
+        }
+        int count = embeddings.size();
+
+        float[] mean = new float[dimension];
+        float[][] normalized = new float[count][];
+        for (int i = 0; i < count; i++) {
+            normalized[i] = normalizedCopy(embeddings.get(i));
+            for (int d = 0; d < dimension; d++) {
+                mean[d] += normalized[i][d] / count;
+            }
+        }
+        // Transposed and centered, so that each entry of the covariance matrix is a contiguous dot product
+        float[] centered = new float[dimension * count];
+        for (int i = 0; i < count; i++) {
+            for (int d = 0; d < dimension; d++) {
+                centered[d * count + i] = normalized[i][d] - mean[d];
+            }
+        }
+        // Upper triangle, row by row on all cores
+        float[][] upperRows = IntStream.range(0, dimension)
+                .parallel()
+                .mapToObj(row -> {
+                    float[] values = new float[dimension - row];
+                    for (int column = row; column < dimension; column++) {
+                        values[column - row] =
+                                VectorMath.dot(centered, row * count, centered, column * count, count) / count;
+                    }
+                    return values;
+                })
+                .toArray(float[][]::new);
+        float[] covariance = new float[dimension * dimension];
+        for (int row = 0; row < dimension; row++) {
+            for (int column = row; column < dimension; column++) {
+                covariance[row * dimension + column] = upperRows[row][column - row];
+                covariance[column * dimension + row] = upperRows[row][column - row];
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        float[] basis = new float[reducedDimension * dimension];
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = (float) random.nextGaussian();
+        }
+        orthonormalize(basis, reducedDimension, dimension);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            float[] current = basis;
+            float[][] productRows = IntStream.range(0, reducedDimension)
+                    .parallel()
+                    .mapToObj(component -> {
+                        float[] values = new float[dimension];
+                        for (int row = 0; row < dimension; row++) {
+                            values[row] = VectorMath.dot(
+                                    covariance, row * dimension, current, component * dimension, dimension);
+                        }
+                        return values;
+                    })
+                    .toArray(float[][]::new);
+            basis = new float[reducedDimension * dimension];
+            for (int component = 0; component < reducedDimension; component++) {
+                System.arraycopy(productRows[component], 0, basis, component * dimension, dimension);
+            }
+            orthonormalize(basis, reducedDimension, dimension);
+        }
+        return new PcaProjection(dimension, reducedDimension, mean, basis);
+    }
+
+    /**
+     * Orthonormalizes the rows of a row-major matrix in place (modified Gram-Schmidt).
+     */
+    private static void orthonormalize(float[] matrix, int rows, int columns) {
+        for (int row = 0; row < rows; row++) {
+            for (int previous = 0; previous < row; previous++) {
+                float projection = VectorMath.dot(matrix, row * columns, matrix, previous * columns, columns);
+                for (int column = 0; column < columns; column++) {
+                    matrix[row * columns + column] -= projection * matrix[previous * columns + column];
+                }
+            }
+            VectorMath.normalize(matrix, row * columns, columns);
+        }
+    }
+
+    private static float[] normalizedCopy(float[] embedding) {
+        float[] copy = Arrays.copyOf(embedding, embedding.length);
+        VectorMath.normalize(copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Returns the dimension of the embeddings this projection was fitted on.
+     *
+     * @return The original dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the dimension of projected embeddings.
+     *
+     * @return The number of principal components
+     */
+    int reducedDimension() {
+        return reducedDimension;
+    }
+
+    /**
+     * Projects an embedding onto the principal components.
+     *
+     * @param embedding The embedding to project
+     * @return The normalized projection
+     * @throws IllegalArgumentException If the embedding has another dimension than the fitted ones
+     */
+    float[] project(float[] embedding) {
+        if (embedding.length != dimension) {
+            throw new IllegalArgumentException("The PCA projection was fitted on embeddings of dimension " + dimension
+                    + ", but got an embedding of dimension " + embedding.length);
+        }
+        float[] centered = normalizedCopy(embedding);
+        for (int d = 0; d < dimension; d++) {
+            centered[d] -= mean[d];
+        }
+        float[] projected = new float[reducedDimension];
+        for (int component = 0; component < reducedDimension; component++) {
+            projected[component] = VectorMath.dot(components, component * dimension, centered, 0, dimension);
+        }
+        VectorMath.normalize(projected, 0, reducedDimension);
+        return projected;
+    }
+
+    /**
+     * Writes the projection to a file. The file is written to a temporary file first and then moved to the target
+     * location.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(dimension);
+                out.writeInt(reducedDimension);
+                for (float value : mean) {
+                    out.writeFloat(value);
+                }
+                for (float value : components) {
+                    out.writeFloat(value);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Reads a projection from a file.
+     *
+     * @param file The file to read
+     * @return The projection
+     * @throws IOException If the file cannot be read or is not a projection of the current version
+     */
+    static PcaProjection read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                throw new IOException("Not a PCA projection of version " + VERSION + ": " + file);
+            }
+            int dimension = in.readInt();
+            int reducedDimension = in.readInt();
+            if (reducedDimension < 1 || reducedDimension >= dimension) {
+                throw new IOException("Corrupt PCA projection: " + file);
+            }
+            float[] mean = new float[dimension];
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] = in.readFloat();
+            }
+            float[] components = new float[reducedDimension * dimension];
+            for (int i = 0; i < components.length; i++) {
+                components[i] = in.readFloat();
+            }
+            return new PcaProjection(dimension, reducedDimension, mean, components);
+        }
+    }
+}
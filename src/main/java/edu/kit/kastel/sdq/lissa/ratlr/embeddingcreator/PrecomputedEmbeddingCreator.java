@@ -0,0 +1,168 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.KeyGenerator;
+
+/**
+ * An embedding creator that looks up embeddings that were calculated outside of LiSSA, e.g., by a batch job.
+ * The embeddings are loaded once from a file (see {@link PrecomputedEmbeddings}):
+ * <ul>
+ *     <li>{@code path}: A {@code .npy} matrix, which is memory-mapped, or a JSON Lines file</li>
+ *     <li>{@code id_file}: For a {@code .npy} matrix, the text file with the key of each row, one per line</li>
+ *     <li>{@code id_field} and {@code embedding_field}: For a JSON Lines file, the fields of each object that hold
+ *     the key and the embedding (default: "id" and "embedding")</li>
+ *     <li>{@code key}: Whether the keys are the identifiers of the elements ({@code identifier}, default) or the
+ *     keys of their contents ({@code content}, see {@link KeyGenerator#generateKey(String)})</li>
+ * </ul>
+ * Elements without precomputed embedding are passed to the embedding creator named by the optional
+ * {@code fallback} argument, which is configured by the arguments prefixed with {@code fallback_}.
+ * Without fallback, such elements are an error.
+ */
+public class PrecomputedEmbeddingCreator extends EmbeddingCreator {
+    private static final Logger logger = LoggerFactory.getLogger(PrecomputedEmbeddingCreator.class);
+
+    private static final String FALLBACK_KEY = "fallback";
+    private static final String FALLBACK_PREFIX = "fallback_";
+
+    private final PrecomputedEmbeddings embeddings;
+    private final boolean keyByContent;
+    private final EmbeddingCreator fallback;
+
+    /**
+     * Creates a new precomputed embedding creator and loads its embeddings.
+     *
+     * @param configuration The configuration of the file, the keys and the optional fallback
+     * @param contextStore The shared context store for pipeline components
+     * @throws UncheckedIOException If the embeddings cannot be read
+     * @throws IllegalArgumentException If the key kind is unknown
+     */
+    public PrecomputedEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
+        super(contextStore);
+        Path path = Path.of(configuration.argumentAsString("path"));
+        String key = configuration.argumentAsString("key", "identifier");
+        this.keyByContent = switch (key) {
+            case "identifier" -> false;
+            case "content" -> true;
+            default -> throw new IllegalArgumentException("Unknown key " + key + ", use identifier or content.");
+        };
+
+        long start = System.currentTimeMillis();
+        try {
+            if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".npy")) {
+                this.embeddings =
+                        PrecomputedEmbeddings.readNpy(path, Path.of(configuration.argumentAsString("id_file")));
+            } else {
+                this.embeddings = PrecomputedEmbeddings.readJsonLines(
+                        path,
+                        configuration.argumentAsString("id_field", "id"),
+                        configuration.argumentAsString("embedding_field", "embedding"));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info(
+                "Loaded {} precomputed embeddings of dimension {} from {} in {} ms",
+                embeddings.size(),
+                embeddings.dimension(),
+                path,
+                System.currentTimeMillis() - start);
+
+        if (configuration.hasArgument(FALLBACK_KEY)) {
+            Map<String, String> fallbackArguments = configuration.argumentsWithPrefix(FALLBACK_PREFIX);
+            this.fallback = createEmbeddingCreator(
+                    new ModuleConfiguration(configuration.argumentAsString(FALLBACK_KEY), fallbackArguments),
+                    contextStore);
+        } else {
+            this.fallback = null;
+        }
+    }
+
+    /**
+     * Prepares the fallback creator, e.g., fits its reduction on the target elements.
+     *
+     * @param targetElements The elements of the target store
+     */
+    @Override
+    public void prepare(List<Element> targetElements) {
+        if (fallback != null) {
+            fallback.prepare(targetElements);
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the fallback creator, as the precomputed embeddings do not depend on the target
+     * elements.
+     *
+     * @return The fingerprint of the fallback, empty without fallback
+     */
+    @Override
+    public String fingerprint() {
+        return fallback == null ? "" : fallback.fingerprint();
+    }
+
+    /**
+     * Looks up the precomputed embeddings of the elements. The elements without precomputed embedding are passed
+     * to the fallback creator in a single call.
+     *
+     * @param elements The list of elements to create embeddings for
+     * @return A list of vector embeddings, in the same order as the input elements
+     * @throws IllegalStateException If an element has no precomputed embedding and there is no fallback, or the
+     *                               fallback creates embeddings of another dimension
+     */
+    @Override
+    public List<float[]> calculateEmbeddings(List<Element> elements) {
+        List<float[]> result = new ArrayList<>(elements.size());
+        List<Integer> missingIndices = new ArrayList<>();
+        List<Element> missingElements = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            Element element = elements.get(i);
+            float[] embedding = embeddings.get(keyOf(element));
+            result.add(embedding);
+            if (embedding == null) {
+                missingIndices.add(i);
+                missingElements.add(element);
+            }
+        }
+        logger.info(
+                "Found precomputed embeddings for {} of {} elements",
+                elements.size() - missingElements.size(),
+                elements.size());
+        if (missingElements.isEmpty()) {
+            return result;
+        }
+        if (fallback == null) {
+            throw new IllegalStateException("No precomputed embedding for " + missingElements.size()
+                    + " elements (e.g., " + missingElements.getFirst().getIdentifier()
+                    + ") and no fallback configured");
+        }
+
+        List<float[]> fallbackEmbeddings = fallback.calculateEmbeddings(missingElements);
+        for (int i = 0; i < missingIndices.size(); i++) {
+            float[] embedding = fallbackEmbeddings.get(i);
+            if (embeddings.size() > 0 && embedding.length != embeddings.dimension()) {
+                throw new IllegalStateException("The fallback created an embedding of dimension " + embedding.length
+                        + ", but the precomputed embeddings have dimension " + embeddings.dimension());
+            }
+            result.set(missingIndices.get(i), embedding);
+        }
+        return result;
+    }
+
+    private String keyOf(Element element) {
+        return keyByContent ? KeyGenerator.generateKey(element.getContent()) : element.getIdentifier();
+    }
+}
@@ -0,0 +1,261 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Embeddings that were calculated outside of LiSSA, identified by a key (an element identifier or a content key).
+ * Two formats are supported:
+ * <ul>
+ *     <li>A NumPy {@code .npy} file with a two-dimensional little-endian {@code float32} matrix in C order, plus a
+ *         text file with the key of each row, one per line. The matrix is memory-mapped, so loading it costs only
+ *         the I/O of the rows that are read.</li>
+ *     <li>A JSON Lines file with one object per line, e.g., {@code {"id": "...", "embedding": [0.1, ...]}}.
+ *         The file is streamed once into a single matrix.</li>
+ * </ul>
+ */
+final class PrecomputedEmbeddings {
+    private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final Pattern NPY_DESCR = Pattern.compile("'descr'\\s*:\\s*'([^']*)'");
+    private static final Pattern NPY_FORTRAN_ORDER = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+    private static final Pattern NPY_SHAPE =
+            Pattern.compile("'shape'\\s*:\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,?\\s*\\)");
+
+    /**
+     * Maximum number of bytes that are mapped at once.
+     */
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final Map<String, Integer> rowByKey;
+    private final int dimension;
+    private final int rowsPerChunk;
+
+    /**
+     * The rows of the matrix in chunks of {@link #rowsPerChunk} rows.
+     */
+    private final FloatBuffer[] chunks;
+
+    private PrecomputedEmbeddings(
+            Map<String, Integer> rowByKey, int dimension, int rowsPerChunk, FloatBuffer[] chunks) {
+        this.rowByKey = rowByKey;
+        this.dimension = dimension;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Returns the dimension of the embeddings.
+     *
+     * @return The embedding dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the number of embeddings.
+     *
+     * @return The number of keys with an embedding
+     */
+    int size() {
+        return rowByKey.size();
+    }
+
+    /**
+     * Returns the embedding with the given key.
+     *
+     * @param key The key of the embedding
+     * @return A copy of the embedding, or {@code null} if there is no embedding with the key
+     */
+    float[] get(String key) {
+        Integer row = rowByKey.get(key);
+        if (row == null) {
+            return null;
+        }
+        float[] embedding = new float[dimension];
+        chunks[row / rowsPerChunk].get((row % rowsPerChunk) * dimension, embedding);
+        return embedding;
+    }
+
+    /**
+     * Memory-maps a {@code .npy} matrix and reads the keys of its rows.
+     *
+     * @param matrixFile The {@code .npy} file with a {@code float32} matrix of shape {@code (rows, dimension)}
+     * @param keyFile The text file with the key of each row, one per line
+     * @return The embeddings
+     * @throws IOException If a file cannot be read, the matrix has an unsupported format, or the number of keys
+     *                     does not match the number of rows
+     */
+    static PrecomputedEmbeddings readNpy(Path matrixFile, Path keyFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(matrixFile, StandardOpenOption.READ)) {
+            ByteBuffer preamble = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            while (preamble.hasRemaining() && channel.read(preamble) >= 0) {
+                // Read until the preamble is complete or the file ends
+            }
+            preamble.flip();
+            if (preamble.remaining() < 10) {
+                throw new IOException("Not a NumPy file: " + matrixFile);
+            }
+            byte[] magic = new byte[NPY_MAGIC.length];
+            preamble.get(magic);
+            if (!Arrays.equals(magic, NPY_MAGIC)) {
+                throw new IOException("Not a NumPy file: " + matrixFile);
+            }
+            int majorVersion = preamble.get();
+            preamble.get();
+            long headerOffset;
+            long headerLength;
+            if (majorVersion == 1) {
+                headerLength = Short.toUnsignedInt(preamble.getShort());
+                headerOffset = 10;
+            } else if (preamble.remaining() >= 4) {
+                headerLength = Integer.toUnsignedLong(preamble.getInt());
+                headerOffset = 12;
+            } else {
+                throw new IOException("Not a NumPy file: " + matrixFile);
+            }
+
+            byte[] headerBytes = new byte[(int) headerLength];
+            channel.map(FileChannel.MapMode.READ_ONLY, headerOffset, headerLength).get(headerBytes);
+            String header = new String(headerBytes, StandardCharsets.ISO_8859_1);
+            Matcher descr = NPY_DESCR.matcher(header);
+            Matcher fortranOrder = NPY_FORTRAN_ORDER.matcher(header);
+            Matcher shape = NPY_SHAPE.matcher(header);
+            if (!descr.find() || !fortranOrder.find() || !shape.find()) {
+                throw new IOException("Unsupported NumPy header in " + matrixFile + ": " + header.trim());
+            }
+            if (!descr.group(1).equals("<f4") || fortranOrder.group(1).equals("True")) {
+                throw new IOException("Expected a float32 (<f4) matrix in C order in " + matrixFile + ", but got "
+                        + header.trim());
+            }
+            int rows = Integer.parseInt(shape.group(1));
+            int dimension = Integer.parseInt(shape.group(2));
+
+            long matrixOffset = headerOffset + headerLength;
+            if (matrixOffset + (long) rows * dimension * Float.BYTES > channel.size()) {
+                throw new IOException("Truncated NumPy file: " + matrixFile);
+            }
+            int rowsPerChunk = Math.max(1, CHUNK_BYTES / Math.max(1, dimension * Float.BYTES));
+            FloatBuffer[] chunks = new FloatBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                int firstRow = chunk * rowsPerChunk;
+                int chunkRows = Math.min(rowsPerChunk, rows - firstRow);
+                chunks[chunk] = channel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                matrixOffset + (long) firstRow * dimension * Float.BYTES,
+                                (long) chunkRows * dimension * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+            }
+
+            List<String> keys = Files.readAllLines(keyFile, StandardCharsets.UTF_8);
+            if (keys.size() != rows) {
+                throw new IOException("The key file " + keyFile + " has " + keys.size() + " keys, but the matrix "
+                        + matrixFile + " has " + rows + " rows");
+            }
+            return new PrecomputedEmbeddings(indexKeys(keys), dimension, rowsPerChunk, chunks);
+        }
+    }
+
+    /**
+     * Streams a JSON Lines file of embeddings into a single matrix.
+     *
+     * @param file The JSON Lines file
+     * @param keyField The field of each object that holds the key
+     * @param embeddingField The field of each object that holds the embedding as an array of numbers
+     * @return The embeddings
+     * @throws IOException If the file cannot be read, a line is not a valid object, or the embeddings have
+     *                     different dimensions
+     */
+    static PrecomputedEmbeddings readJsonLines(Path file, String keyField, String embeddingField) throws IOException {
+        JsonFactory factory = new JsonFactory();
+        List<String> keys = new ArrayList<>();
+        float[] matrix = new float[0];
+        float[] embedding = new float[16];
+        int dimension = -1;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String key = null;
+                int length = -1;
+                try (JsonParser parser = factory.createParser(line)) {
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        throw new IOException("Expected an object in line " + lineNumber + " of " + file);
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.currentName();
+                        JsonToken value = parser.nextToken();
+                        if (field.equals(keyField)) {
+                            key = parser.getValueAsString();
+                        } else if (field.equals(embeddingField) && value == JsonToken.START_ARRAY) {
+                            length = 0;
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                if (length == embedding.length) {
+                                    embedding = Arrays.copyOf(embedding, 2 * embedding.length);
+                                }
+                                embedding[length++] = parser.getFloatValue();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                if (key == null || length < 0) {
+                    throw new IOException("Missing \"" + keyField + "\" or \"" + embeddingField + "\" in line "
+                            + lineNumber + " of " + file);
+                }
+                if (dimension < 0) {
+                    dimension = length;
+                } else if (length != dimension) {
+                    throw new IOException("The embedding in line " + lineNumber + " of " + file + " has dimension "
+                            + length + " instead of " + dimension);
+                }
+                if ((long) (keys.size() + 1) * dimension > matrix.length) {
+                    long capacity = Math.max((long) (keys.size() + 1) * dimension, 2L * matrix.length);
+                    matrix = Arrays.copyOf(matrix, (int) Math.min(Integer.MAX_VALUE - 8L, capacity));
+                }
+                System.arraycopy(embedding, 0, matrix, keys.size() * dimension, dimension);
+                keys.add(key);
+            }
+        }
+        dimension = Math.max(0, dimension);
+        FloatBuffer[] chunks = {FloatBuffer.wrap(matrix, 0, keys.size() * dimension).slice()};
+        return new PrecomputedEmbeddings(indexKeys(keys), dimension, Math.max(1, keys.size()), chunks);
+    }
+
+    /**
+     * Maps each key to its row. If a key occurs multiple times, its last row is used.
+     */
+    private static Map<String, Integer> indexKeys(List<String> keys) {
+        Map<String, Integer> rowByKey = HashMap.newHashMap(keys.size());
+        for (int row = 0; row < keys.size(); row++) {
+            rowByKey.put(keys.get(row), row);
+        }
+        return rowByKey;
+    }
+}
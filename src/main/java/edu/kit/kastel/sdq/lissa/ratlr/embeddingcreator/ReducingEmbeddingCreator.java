@@ -0,0 +1,300 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.KeyGenerator;
+
+/**
+ * An embedding creator that reduces the dimension of the embeddings of another creator. Smaller embeddings make
+ * the element stores and their searches correspondingly cheaper. The embeddings are cached in full by the
+ * wrapped creator, so the reduction can be changed without calculating them again.
+ * <p>
+ * Two methods are supported ({@code reduction}):
+ * <ul>
+ *     <li>{@code truncate}: Keeps the first {@code reduced_dimension} values and normalizes the result. Suited for
+ *     models that are trained to concentrate the information in the first dimensions (Matryoshka embeddings,
+ *     e.g., {@code text-embedding-3-large}).</li>
+ *     <li>{@code pca}: Projects the embeddings onto their {@code reduced_dimension} principal components (see
+ *     {@link PcaProjection}). The projection is fitted on (a sample of) the target elements in
+ *     {@link #prepare(List)} and stored in the cache directory, so it is only fitted once per corpus.</li>
+ * </ul>
+ * In {@link #prepare(List)}, the recall@{@code reduction_recall_k} of the reduced embeddings is logged: for a
+ * sample of the target elements, the fraction of the nearest neighbours according to the full embeddings that are
+ * also among the nearest neighbours according to the reduced embeddings.
+ * </p>
+ */
+final class ReducingEmbeddingCreator extends EmbeddingCreator {
+    private static final Logger logger = LoggerFactory.getLogger(ReducingEmbeddingCreator.class);
+
+    private static final String REDUCTION_KEY = "reduction";
+    private static final String REDUCED_DIMENSION_KEY = "reduced_dimension";
+    private static final String RECALL_K_KEY = "reduction_recall_k";
+    private static final String SAMPLE_SIZE_KEY = "reduction_sample";
+
+    /**
+     * Maximum number of sampled target elements that are used as queries for the recall report.
+     */
+    private static final int RECALL_QUERIES = 100;
+
+    private enum Method {
+        TRUNCATE,
+        PCA
+    }
+
+    private final EmbeddingCreator delegate;
+    private final Method method;
+    private final int reducedDimension;
+    private final int recallK;
+    private final int sampleSize;
+
+    /**
+     * Identifies the full embeddings and the reduced dimension of a projection in the cache directory. Other
+     * arguments, e.g., the batch size of the wrapped creator, do not change the projection.
+     */
+    private final String projectionKey;
+
+    private volatile PcaProjection projection;
+    /**
+     * The name of the file of the projection in the cache directory, which identifies the projection.
+     */
+    private volatile String projectionName = "";
+
+    private ReducingEmbeddingCreator(
+            ModuleConfiguration configuration, EmbeddingCreator delegate, ContextStore contextStore) {
+        super(contextStore);
+        this.delegate = delegate;
+        this.method = Method.valueOf(configuration.argumentAsString(REDUCTION_KEY).toUpperCase(Locale.ROOT));
+        this.reducedDimension = configuration.argumentAsInt(REDUCED_DIMENSION_KEY);
+        this.recallK = configuration.argumentAsInt(RECALL_K_KEY, 10);
+        this.sampleSize = configuration.argumentAsInt(SAMPLE_SIZE_KEY, 4096);
+        if (reducedDimension < 1 || recallK < 1 || sampleSize < 1) {
+            throw new IllegalArgumentException(
+                    "reduced_dimension, reduction_recall_k and reduction_sample must be greater than 0.");
+        }
+        this.projectionKey = configuration.name() + ":" + modelOf(configuration) + ":" + reducedDimension;
+    }
+
+    /**
+     * Returns the model of the wrapped creator, or the file of precomputed embeddings. Creators that use a default
+     * model are identified by their name alone.
+     */
+    private static String modelOf(ModuleConfiguration configuration) {
+        if (configuration.hasArgument("model")) {
+            return configuration.argumentAsString("model");
+        }
+        return configuration.hasArgument("path") ? configuration.argumentAsString("path") : "";
+    }
+
+    /**
+     * Wraps the creator if its configuration specifies a {@code reduction}.
+     *
+     * @param configuration The configuration of the embedding creator
+     * @param creator The embedding creator that calculates the full embeddings
+     * @param contextStore The shared context store for pipeline components
+     * @return The creator itself, or a creator that reduces its embeddings
+     * @throws IllegalArgumentException If the reduction is misconfigured
+     */
+    static EmbeddingCreator reduceIfConfigured(
+            ModuleConfiguration configuration, EmbeddingCreator creator, ContextStore contextStore) {
+        if (!configuration.hasArgument(REDUCTION_KEY)) {
+            return creator;
+        }
+        return new ReducingEmbeddingCreator(configuration, creator, contextStore);
+    }
+
+    /**
+     * Fits the PCA projection on a sample of the target elements (or reads it from the cache directory) and logs
+     * the recall of the reduced embeddings on this sample.
+     *
+     * @param targetElements The elements of the target store
+     */
+    @Override
+    public void prepare(List<Element> targetElements) {
+        delegate.prepare(targetElements);
+        List<Element> sample = sample(targetElements);
+        if (sample.isEmpty()) {
+            return;
+        }
+        List<float[]> fullEmbeddings = delegate.calculateEmbeddings(sample);
+        if (method == Method.PCA) {
+            this.projection = loadOrFitProjection(sample, fullEmbeddings);
+        }
+        logRecall(fullEmbeddings, reduce(fullEmbeddings));
+    }
+
+    /**
+     * Selects up to {@code reduction_sample} elements to compare, evenly spread over the given elements.
+     */
+    private List<Element> sample(List<Element> elements) {
+        List<Element> candidates = elements.stream().filter(Element::isCompare).toList();
+        if (candidates.isEmpty()) {
+            candidates = elements;
+        }
+        if (candidates.size() <= sampleSize) {
+            return candidates;
+        }
+        List<Element> sample = new ArrayList<>(sampleSize);
+        for (int i = 0; i < sampleSize; i++) {
+            sample.add(candidates.get((int) ((long) i * candidates.size() / sampleSize)));
+        }
+        return sample;
+    }
+
+    private PcaProjection loadOrFitProjection(List<Element> sample, List<float[]> fullEmbeddings) {
+        StringBuilder corpus = new StringBuilder(projectionKey);
+        for (Element element : sample) {
+            corpus.append('\n').append(KeyGenerator.generateKey(element.getContent()));
+        }
+        projectionName = "pca_" + KeyGenerator.generateKey(corpus.toString());
+        Path file = CacheManager.getDefaultInstance().resolve(projectionName + ".bin");
+        if (Files.exists(file)) {
+            try {
+                PcaProjection cached = PcaProjection.read(file);
+                logger.info("Loaded PCA projection to {} dimensions from {}", cached.reducedDimension(), file);
+                return cached;
+            } catch (IOException e) {
+                logger.warn("Could not read PCA projection {}, fitting it again: {}", file, e.getMessage());
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        PcaProjection fitted = PcaProjection.fit(fullEmbeddings, reducedDimension);
+        logger.info(
+                "Fitted PCA projection from {} to {} dimensions on {} elements in {} ms",
+                fitted.dimension(),
+                reducedDimension,
+                fullEmbeddings.size(),
+                System.currentTimeMillis() - start);
+        try {
+            fitted.write(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fitted;
+    }
+
+    /**
+     * Returns the name of the PCA projection in the cache directory, which changes with the sampled target
+     * elements, or the fingerprint of the wrapped creator for truncated embeddings.
+     *
+     * @return The identity of the projection
+     */
+    @Override
+    public String fingerprint() {
+        String delegateFingerprint = delegate.fingerprint();
+        if (delegateFingerprint.isEmpty()) {
+            return projectionName;
+        }
+        return projectionName.isEmpty() ? delegateFingerprint : delegateFingerprint + ":" + projectionName;
+    }
+
+    @Override
+    public List<float[]> calculateEmbeddings(List<Element> elements) {
+        return reduce(delegate.calculateEmbeddings(elements));
+    }
+
+    private List<float[]> reduce(List<float[]> embeddings) {
+        List<float[]> reduced = new ArrayList<>(embeddings.size());
+        for (float[] embedding : embeddings) {
+            reduced.add(reduce(embedding));
+        }
+        return reduced;
+    }
+
+    private float[] reduce(float[] embedding) {
+        if (embedding.length <= reducedDimension) {
+            throw new IllegalArgumentException("The reduced dimension " + reducedDimension
+                    + " must be smaller than the dimension of the embeddings (" + embedding.length + ").");
+        }
+        if (method == Method.TRUNCATE) {
+            float[] truncated = Arrays.copyOf(embedding, reducedDimension);
+            VectorMath.normalize(truncated, 0, reducedDimension);
+            return truncated;
+        }
+        PcaProjection pca = projection;
+        if (pca == null) {
+            throw new IllegalStateException(
+                    "The PCA projection has not been fitted yet. Call prepare with the target elements first.");
+        }
+        return pca.project(embedding);
+    }
+
+    /**
+     * Logs the mean recall@k of the reduced embeddings: each of the first sampled embeddings is a query against all
+     * other sampled embeddings.
+     */
+    private void logRecall(List<float[]> fullEmbeddings, List<float[]> reducedEmbeddings) {
+        int count = fullEmbeddings.size();
+        int k = Math.min(recallK, count - 1);
+        if (k < 1) {
+            return;
+        }
+        float[][] full = normalizedRows(fullEmbeddings);
+        float[][] reduced = normalizedRows(reducedEmbeddings);
+        int queries = Math.min(RECALL_QUERIES, count);
+        double recall = IntStream.range(0, queries)
+                .parallel()
+                .mapToDouble(q -> {
+                    int query = (int) ((long) q * count / queries);
+                    Set<Integer> expected = new HashSet<>(nearest(full, query, k));
+                    return nearest(reduced, query, k).stream()
+                                    .filter(expected::contains)
+                                    .count()
+                            / (double) k;
+                })
+                .average()
+                .orElse(1);
+        logger.info(
+                "Recall@{} of the {} embeddings with {} dimensions compared with the full embeddings: {} ({} queries)",
+                k,
+                method.name().toLowerCase(Locale.ROOT),
+                reducedDimension,
+                String.format(Locale.ROOT, "%.3f", recall),
+                queries);
+    }
+
+    private static float[][] normalizedRows(List<float[]> embeddings) {
+        float[][] rows = new float[embeddings.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = Arrays.copyOf(embeddings.get(i), embeddings.get(i).length);
+            VectorMath.normalize(rows[i], 0, rows[i].length);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the indices of the {@code k} rows most similar to the query row, excluding the query itself.
+     */
+    private static List<Integer> nearest(float[][] rows, int query, int k) {
+        float[] scores = new float[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            scores[i] = VectorMath.dot(rows[query], 0, rows[i], 0, rows[i].length);
+        }
+        return IntStream.range(0, rows.length)
+                .filter(i -> i != query)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -scores[i]))
+                .limit(k)
+                .toList();
+    }
+}
@@ -48,7 +48,7 @@ public class SummarizePreprocessor extends Preprocessor {
     private final String template;
     /** The provider for chat language models */
     private final ChatLanguageModelProvider provider;
-    /** Number of threads to use for parallel processing */
+    /** Number of threads to use for parallel processing, i.e., the maximum number of concurrent requests */
     private final int threads;
     /** Cache for storing and retrieving summaries */
     private final Cache cache;
@@ -81,6 +81,8 @@ public class SummarizePreprocessor extends Preprocessor {
      * The method handles parallel processing efficiently:
      * <ul>
      *     <li>Uses a thread pool with the configured number of threads</li>
+     *     <li>Sends the requests via the concurrency limiter of the model, which adapts the number of concurrent
+     *     requests to the capacity of the model</li>
      *     <li>Creates a new model instance per thread when using multiple threads</li>
      *     <li>Shares a single model instance when using one thread</li>
      * </ul>
@@ -0,0 +1,126 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker for the requests to an endpoint. It stops requests to an endpoint that keeps failing, so that
+ * the workers do not spend their retries on it and the endpoint gets time to recover.
+ * <ul>
+ *     <li>Closed: Requests are sent. After {@code failureThreshold} consecutive transient failures, the breaker
+ *     opens.</li>
+ *     <li>Open: Requests are rejected for {@code openDuration}.</li>
+ *     <li>Half-open: A single probe request is sent. If it succeeds, the breaker closes; if it fails, the breaker
+ *     opens again. Other requests are rejected until the probe completes.</li>
+ * </ul>
+ * All components that send requests to the same endpoint share one breaker (see
+ * {@link #forEndpoint(String, int, Duration)}).
+ */
+public final class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum time a request waits while the probe of a half-open breaker is in flight before asking again.
+     */
+    private static final long PROBE_POLL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+        if (failureThreshold < 1 || openDuration.isNegative()) {
+            throw new IllegalArgumentException("The failure threshold of the circuit breaker of " + endpoint
+                    + " must be positive and its open duration must not be negative.");
+        }
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns the circuit breaker of an endpoint. The breaker is created by the first call for the endpoint; the
+     * settings of later calls are ignored.
+     *
+     * @param endpoint The identifier of the endpoint, e.g., the platform and the name of the model
+     * @param failureThreshold The number of consecutive transient failures that open the breaker
+     * @param openDuration The time the breaker stays open before a probe request is sent
+     * @return The breaker shared by all users of the endpoint
+     * @throws IllegalArgumentException If the threshold is not positive or the duration is negative
+     */
+    public static CircuitBreaker forEndpoint(String endpoint, int failureThreshold, Duration openDuration) {
+        return BREAKERS.computeIfAbsent(
+                endpoint, key -> new CircuitBreaker(key, failureThreshold, openDuration, System::nanoTime));
+    }
+
+    /**
+     * Asks whether a request may be sent now. If the breaker is open and its open duration has passed, the caller
+     * sends the probe request.
+     *
+     * @return {@code 0} if the request may be sent, otherwise the time in nanoseconds after which to ask again
+     */
+    public synchronized long tryAcquire() {
+        long now = nanoTime.getAsLong();
+        return switch (state) {
+            case CLOSED -> 0;
+            case OPEN -> {
+                long remaining = openedAt + openNanos - now;
+                if (remaining > 0) {
+                    yield remaining;
+                }
+                state = State.HALF_OPEN;
+                logger.info("Circuit breaker of {} is half-open, sending a probe request", endpoint);
+                yield 0;
+            }
+            case HALF_OPEN -> Math.max(1, Math.min(openNanos, PROBE_POLL_NANOS));
+        };
+    }
+
+    /**
+     * Records that the endpoint answered a request. Answers that reject the request itself (e.g., an invalid
+     * request) count as well, as the endpoint is available.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Circuit breaker of {} is closed again", endpoint);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a transient failure of a request, e.g., a timeout, a rate limit or a server error.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = nanoTime.getAsLong();
+            logger.warn(
+                    "Circuit breaker of {} is open for {} ms after {} consecutive failures",
+                    endpoint,
+                    Duration.ofNanos(openNanos).toMillis(),
+                    consecutiveFailures);
+        }
+    }
+}
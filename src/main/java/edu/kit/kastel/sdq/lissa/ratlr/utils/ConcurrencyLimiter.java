@@ -0,0 +1,276 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.utils;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+
+/**
+ * Limits the number of concurrent requests to an endpoint (e.g., a model of a language model platform) and adapts
+ * this limit to the capacity of the endpoint.
+ * <p>
+ * The limit follows an additive-increase/multiplicative-decrease scheme that uses the latency of the requests as
+ * signal. A short-term average of the latency is compared with a baseline, the lowest short-term average so far,
+ * i.e., the latency of the endpoint without queueing requests:
+ * <ul>
+ *     <li>As long as the latency stays flat and the limit is used, the limit grows by about one per
+ *     {@code limit} completed requests, up to the maximum limit.</li>
+ *     <li>If the latency rises by more than {@value #LATENCY_TOLERANCE} times, the limit is reduced by
+ *     {@value #LATENCY_BACKOFF} times.</li>
+ *     <li>If the endpoint rejects a request because of its rate limit (HTTP 429 or 503) or a request times out,
+ *     the limit is halved.</li>
+ * </ul>
+ * A reduction only applies to requests that were started after the previous reduction, so that a burst of
+ * failures of requests that were in flight at the same time reduces the limit only once. The baseline slowly
+ * follows higher latencies, so that it adapts if the requests themselves become slower (e.g., longer prompts);
+ * at a limit of one request, where nothing can be queued anymore, it follows them quickly.
+ * </p>
+ * <p>
+ * All components that send requests to the same endpoint share one limiter (see
+ * {@link #forEndpoint(String, int, int)}), so that, e.g., a classifier and a preprocessor using the same model do
+ * not exceed its capacity together.
+ * </p>
+ */
+public final class ConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final Map<String, ConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    /**
+     * The factor by which the short-term latency may exceed the long-term latency before the limit is reduced.
+     */
+    private static final double LATENCY_TOLERANCE = 1.5;
+
+    /**
+     * The factor by which the limit is reduced if the latency rises.
+     */
+    private static final double LATENCY_BACKOFF = 0.9;
+
+    /**
+     * The factor by which the limit is reduced if the endpoint is overloaded.
+     */
+    private static final double OVERLOAD_BACKOFF = 0.5;
+
+    /**
+     * The weight of a new latency in the short-term average.
+     */
+    private static final double SHORT_TERM_WEIGHT = 0.1;
+
+    /**
+     * The weight with which the baseline latency follows a higher short-term latency.
+     */
+    private static final double BASELINE_DRIFT = 0.001;
+
+    /**
+     * The weight with which the baseline latency follows a higher short-term latency at a limit of one request.
+     */
+    private static final double BASELINE_DRIFT_AT_MIN_LIMIT = 0.05;
+
+    /**
+     * The minimum maximum limit of {@link #defaultMaxLimit(int)}, so that endpoints with a starting limit of one can
+     * grow as well.
+     */
+    private static final int MIN_DEFAULT_MAX_LIMIT = 16;
+
+    private final String endpoint;
+    private final int maxLimit;
+    private final LongSupplier nanoTime;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private double shortTermLatency;
+    private double baselineLatency;
+    private long lastReductionNanos;
+    private int lastLoggedLimit;
+
+    ConcurrencyLimiter(String endpoint, int initialLimit, int maxLimit, LongSupplier nanoTime) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("The limits of " + endpoint + " must satisfy 1 <= initial limit ("
+                    + initialLimit + ") <= maximum limit (" + maxLimit + ").");
+        }
+        this.endpoint = endpoint;
+        this.maxLimit = maxLimit;
+        this.nanoTime = nanoTime;
+        this.limit = initialLimit;
+        this.lastLoggedLimit = initialLimit;
+        this.lastReductionNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Returns the limiter of an endpoint. The limiter is created by the first call for the endpoint; the limits of
+     * later calls are ignored.
+     *
+     * @param endpoint The identifier of the endpoint, e.g., the platform and the name of the model
+     * @param initialLimit The number of concurrent requests to start with
+     * @param maxLimit The maximum number of concurrent requests
+     * @return The limiter shared by all users of the endpoint
+     * @throws IllegalArgumentException If the limits are not {@code 1 <= initialLimit <= maxLimit}
+     */
+    public static ConcurrencyLimiter forEndpoint(String endpoint, int initialLimit, int maxLimit) {
+        return LIMITERS.computeIfAbsent(
+                endpoint, key -> new ConcurrencyLimiter(key, initialLimit, maxLimit, System::nanoTime));
+    }
+
+    /**
+     * Returns the default maximum limit for a starting limit: twice the starting limit, but at least
+     * {@value #MIN_DEFAULT_MAX_LIMIT}.
+     *
+     * @param initialLimit The number of concurrent requests to start with
+     * @return The default maximum number of concurrent requests
+     */
+    public static int defaultMaxLimit(int initialLimit) {
+        return Math.max(2 * initialLimit, MIN_DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests, i.e., the number of workers that can use this limiter.
+     *
+     * @return The maximum limit
+     */
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Returns the current number of concurrent requests that are allowed.
+     *
+     * @return The current limit
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a request once the limit allows it and adapts the limit to its outcome.
+     *
+     * @param request The request to the endpoint
+     * @param <T> The type of the response
+     * @return The response of the request
+     * @throws IllegalStateException If the thread is interrupted while waiting for the limit
+     */
+    public <T> T call(Supplier<T> request) {
+        long start = acquire();
+        try {
+            T response = request.get();
+            release(start, true, false);
+            return response;
+        } catch (RuntimeException | Error e) {
+            release(start, false, isOverload(e));
+            throw e;
+        }
+    }
+
+    private long acquire() {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+            return nanoTime.getAsLong();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a request slot of " + endpoint, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long start, boolean success, boolean overload) {
+        long now = nanoTime.getAsLong();
+        lock.lock();
+        try {
+            boolean limitUsed = inFlight >= (int) limit;
+            inFlight--;
+            boolean startedAfterReduction = start - lastReductionNanos >= 0;
+            if (overload) {
+                if (startedAfterReduction) {
+                    reduce(OVERLOAD_BACKOFF, now);
+                }
+            } else if (success) {
+                adaptToLatency(now - start, limitUsed, startedAfterReduction, now);
+            }
+            logLimitChange();
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adaptToLatency(long latency, boolean limitUsed, boolean startedAfterReduction, long now) {
+        if (baselineLatency == 0) {
+            shortTermLatency = latency;
+            baselineLatency = latency;
+            return;
+        }
+        shortTermLatency += SHORT_TERM_WEIGHT * (latency - shortTermLatency);
+        if (shortTermLatency < baselineLatency) {
+            baselineLatency = shortTermLatency;
+        } else {
+            // Forget old minima slowly, and quickly if the latency stays high although nothing is queued anymore
+            double drift = limit > 1 ? BASELINE_DRIFT : BASELINE_DRIFT_AT_MIN_LIMIT;
+            baselineLatency += drift * (shortTermLatency - baselineLatency);
+        }
+
+        if (shortTermLatency <= LATENCY_TOLERANCE * baselineLatency) {
+            if (limitUsed) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        } else if (startedAfterReduction) {
+            reduce(LATENCY_BACKOFF, now);
+        }
+    }
+
+    private void reduce(double factor, long now) {
+        limit = Math.max(1, limit * factor);
+        lastReductionNanos = now;
+    }
+
+    private void logLimitChange() {
+        int currentLimit = (int) limit;
+        if (currentLimit != lastLoggedLimit) {
+            logger.debug("Concurrency limit of {}: {} -> {}", endpoint, lastLoggedLimit, currentLimit);
+            lastLoggedLimit = currentLimit;
+        }
+    }
+
+    /**
+     * Determines whether a request failed because the endpoint is overloaded: it rejected the request because of
+     * its rate limit, or the request timed out.
+     */
+    private static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitException
+                    || cause instanceof dev.langchain4j.exception.TimeoutException
+                    || cause instanceof java.util.concurrent.TimeoutException
+                    || cause instanceof HttpTimeoutException
+                    || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            if (cause instanceof HttpException httpException
+                    && (httpException.statusCode() == 429 || httpException.statusCode() == 503)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for the bulk lookup of the {@link LocalCache} and of the caches created by the {@link CacheManager}.
+ */
+class LocalCacheTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that a bulk lookup returns the values in the order of the keys and {@code null} for missing keys,
+     * also after the cache was written and read again.
+     */
+    @Test
+    void getAllKeepsOrderAndReturnsNullForMissingKeys() {
+        String file = tempDir.resolve("cache.json").toString();
+        LocalCache cache = new LocalCache(file);
+        cache.put(key("first"), "1");
+        cache.put(key("third"), "3");
+
+        List<CacheKey> keys = List.of(key("third"), key("second"), key("first"), key("third"));
+        assertEquals(Arrays.asList("3", null, "1", "3"), cache.getAll(keys));
+        assertEquals(List.of(), cache.getAll(List.of()));
+
+        cache.write();
+        assertEquals(Arrays.asList("3", null, "1", "3"), new LocalCache(file).getAll(keys));
+    }
+
+    /**
+     * Tests that the bulk lookup of a cache of the {@link CacheManager} deserializes the values in the order of
+     * the keys and returns {@code null} for missing keys.
+     */
+    @Test
+    void cacheGetAllDeserializesInOrder() throws IOException {
+        Cache cache = new CacheManager(tempDir).getCache(this, new String[] {"model"});
+        cache.put(key("first"), new float[] {1, 2});
+        cache.put(key("second"), new float[] {3});
+
+        List<float[]> values = cache.getAll(List.of(key("second"), key("missing"), key("first")), float[].class);
+        assertEquals(3, values.size());
+        assertArrayEquals(new float[] {3}, values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(new float[] {1, 2}, values.get(2));
+    }
+
+    private static CacheKey key(String content) {
+        return CacheKey.of("model", -1, -1, CacheKey.Mode.EMBEDDING, content);
+    }
+}
@@ -0,0 +1,120 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.classifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+import dev.langchain4j.exception.HttpException;
+
+/**
+ * Test class for the handling of failed classification tasks by the {@link Classifier}.
+ */
+class ClassifierTest {
+    private static final int TASKS = 40;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that the parallel classification continues after failures that were not retried, and that all failed
+     * tasks are written to the dead letter file with their kind of failure.
+     */
+    @Test
+    void parallelClassificationDeadLettersAllFailures() throws IOException {
+        assertFailuresAreDeadLettered(4);
+    }
+
+    /**
+     * Tests that the sequential classification continues after failures that were not retried.
+     */
+    @Test
+    void sequentialClassificationDeadLettersAllFailures() throws IOException {
+        assertFailuresAreDeadLettered(1);
+    }
+
+    private void assertFailuresAreDeadLettered(int threads) throws IOException {
+        ContextStore contextStore = new ContextStore();
+        DeadLetterFile deadLetters = new DeadLetterFile(tempDir.resolve("deadLetters.jsonl"));
+        contextStore.createContext(deadLetters);
+        Map<String, RuntimeException> failures = new HashMap<>();
+        failures.put("target-3", new HttpException(400, "Bad request"));
+        failures.put("target-17", new IllegalArgumentException("Unparsable answer"));
+        failures.put("target-29", new HttpException(503, "Service unavailable"));
+        FailingClassifier classifier = new FailingClassifier(threads, contextStore, failures);
+
+        List<Pair<Element, Element>> tasks = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            tasks.add(new Pair<>(element("source-" + i), element("target-" + i)));
+        }
+        List<ClassificationResult> results =
+                threads > 1 ? classifier.parallelClassify(tasks) : classifier.sequentialClassify(tasks);
+
+        assertEquals(TASKS - failures.size(), results.size());
+        assertEquals(failures.size(), deadLetters.size());
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> deadLettersByTarget = new HashMap<>();
+        for (String line : Files.readAllLines(deadLetters.file())) {
+            JsonNode deadLetter = mapper.readTree(line);
+            deadLettersByTarget.put(deadLetter.get("target").asText(), deadLetter);
+        }
+        assertEquals(failures.keySet(), deadLettersByTarget.keySet());
+        assertEquals(DeadLetterFile.PERMANENT, deadLettersByTarget.get("target-3").get("failure").asText());
+        assertEquals(DeadLetterFile.PERMANENT, deadLettersByTarget.get("target-17").get("failure").asText());
+        assertEquals(DeadLetterFile.EXHAUSTED, deadLettersByTarget.get("target-29").get("failure").asText());
+        assertTrue(deadLettersByTarget
+                .get("target-17")
+                .get("error")
+                .asText()
+                .startsWith(IllegalArgumentException.class.getName()));
+        assertEquals("source-3", deadLettersByTarget.get("target-3").get("source").asText());
+        assertEquals("FailingClassifier", deadLettersByTarget.get("target-3").get("classifier").asText());
+    }
+
+    private static Element element(String identifier) {
+        return new Element(identifier, "requirement", identifier + " content", 0, null, true);
+    }
+
+    /**
+     * A classifier that relates all pairs except those whose target has a failure, for which the failure is thrown.
+     */
+    private static final class FailingClassifier extends Classifier {
+        private final Map<String, RuntimeException> failures;
+
+        private FailingClassifier(int threads, ContextStore contextStore, Map<String, RuntimeException> failures) {
+            super(threads, contextStore);
+            this.failures = failures;
+        }
+
+        @Override
+        protected Optional<ClassificationResult> classify(Element source, Element target) {
+            RuntimeException failure = failures.get(target.getIdentifier());
+            if (failure != null) {
+                throw failure;
+            }
+            return Optional.of(ClassificationResult.of(source, target));
+        }
+
+        @Override
+        protected Classifier copyOf() {
+            return new FailingClassifier(threads, contextStore, failures);
+        }
+    }
+}
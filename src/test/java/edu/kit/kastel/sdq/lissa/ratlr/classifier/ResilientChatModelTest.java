@@ -0,0 +1,182 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.classifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.utils.CircuitBreaker;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.ConcurrencyLimiter;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.model.chat.ChatModel;
+
+/**
+ * Test class for the {@link ResilientChatModel}.
+ * The model runs against a manual clock; its backoffs advance the clock instead of sleeping.
+ */
+class ResilientChatModelTest {
+    private static final String ANSWER = "yes";
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Duration> sleeps = new ArrayList<>();
+
+    /**
+     * Tests that transient failures are retried with a jittered exponential backoff.
+     */
+    @Test
+    void transientFailuresAreRetried() {
+        FakeChatModel delegate = new FakeChatModel(
+                new HttpException(503, "Service unavailable"), new HttpException(500, "Internal error"), ANSWER);
+        ChatModel model = resilient("retry", delegate, options(5, Duration.ofMillis(100), null, 100));
+
+        assertEquals(ANSWER, model.chat("question"));
+        assertEquals(3, delegate.requests());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(0).compareTo(Duration.ofMillis(100)) <= 0);
+        assertTrue(sleeps.get(1).compareTo(Duration.ofMillis(200)) <= 0);
+    }
+
+    /**
+     * Tests that other failures are thrown immediately and are not retried failures.
+     */
+    @Test
+    void otherFailuresAreNotRetried() {
+        FakeChatModel delegate = new FakeChatModel(new HttpException(400, "Bad request"));
+        ChatModel model = resilient("bad-request", delegate, options(5, Duration.ofMillis(100), null, 100));
+
+        HttpException failure = assertThrows(HttpException.class, () -> model.chat("question"));
+        assertEquals(1, delegate.requests());
+        assertTrue(sleeps.isEmpty());
+        assertFalse(ResilientChatModel.isRetriedFailure(failure));
+        assertFalse(ResilientChatModel.isRetriedFailure(new IllegalArgumentException("Unparsable answer")));
+    }
+
+    /**
+     * Tests that a request fails after its retries, and that its failure is recognized as a retried failure, also
+     * if it is wrapped.
+     */
+    @Test
+    void retriesAreLimited() {
+        FakeChatModel delegate = new FakeChatModel(
+                new HttpException(502, "Bad gateway"),
+                new HttpException(502, "Bad gateway"),
+                new HttpException(502, "Bad gateway"),
+                ANSWER);
+        ChatModel model = resilient("limited", delegate, options(2, Duration.ofMillis(100), null, 100));
+
+        HttpException failure = assertThrows(HttpException.class, () -> model.chat("question"));
+        assertEquals(3, delegate.requests());
+        assertTrue(ResilientChatModel.isRetriedFailure(failure));
+        assertTrue(ResilientChatModel.isRetriedFailure(new IllegalStateException("Classification failed", failure)));
+    }
+
+    /**
+     * Tests that a retry waits as long as the platform asks for, via a {@code Retry-After} header or a
+     * "try again in" hint in the error message.
+     */
+    @Test
+    void retryAfterIsRespected() {
+        FakeChatModel delegate = new FakeChatModel(
+                new HttpException(429, "{\"error\": \"rate limited\", \"Retry-After\": \"3\"}"),
+                new HttpException(429, "Rate limit reached for requests. Please try again in 1.5s."),
+                new HttpException(429, "Rate limit reached for tokens. Please try again in 250ms."),
+                ANSWER);
+        ChatModel model = resilient("retry-after", delegate, options(5, Duration.ZERO, null, 100));
+
+        assertEquals(ANSWER, model.chat("question"));
+        assertEquals(List.of(Duration.ofSeconds(3), Duration.ofMillis(1500), Duration.ofMillis(250)), sleeps);
+    }
+
+    /**
+     * Tests that no retry is started if it would begin after the deadline of the request.
+     */
+    @Test
+    void noRetryAfterTheDeadline() {
+        HttpException rateLimit = new HttpException(429, "Please try again in 4s.");
+        FakeChatModel delegate = new FakeChatModel(rateLimit, rateLimit, rateLimit, ANSWER);
+        ChatModel model =
+                resilient("deadline", delegate, options(10, Duration.ZERO, Duration.ofSeconds(10), 100));
+
+        assertSame(rateLimit, assertThrows(HttpException.class, () -> model.chat("question")));
+        assertEquals(3, delegate.requests());
+        assertEquals(List.of(Duration.ofSeconds(4), Duration.ofSeconds(4)), sleeps);
+    }
+
+    /**
+     * Tests that a request waits for an open circuit breaker like for a retry and fails with a retried failure if
+     * the breaker stays open.
+     */
+    @Test
+    void openBreakerIsWaitedFor() {
+        FakeChatModel delegate = new FakeChatModel(new HttpException(503, "Service unavailable"), ANSWER);
+        ChatModel model = resilient("breaker", delegate, options(2, Duration.ZERO, null, 1));
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> model.chat("question"));
+        assertEquals(1, delegate.requests());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(1).compareTo(Duration.ofSeconds(59)) > 0);
+        assertTrue(ResilientChatModel.isRetriedFailure(failure));
+    }
+
+    private ChatModel resilient(String name, ChatModel delegate, ChatResilienceOptions options) {
+        String endpoint = "test:" + name;
+        return new ResilientChatModel(
+                delegate,
+                endpoint,
+                ConcurrencyLimiter.forEndpoint(endpoint, 1, 1),
+                CircuitBreaker.forEndpoint(endpoint, options.breakerFailures(), options.breakerOpenDuration()),
+                options,
+                clock::get,
+                nanos -> {
+                    sleeps.add(Duration.ofNanos(nanos));
+                    clock.addAndGet(nanos);
+                });
+    }
+
+    private static ChatResilienceOptions options(
+            int maxRetries, Duration initialBackoff, Duration deadline, int breakerFailures) {
+        return new ChatResilienceOptions(
+                maxRetries,
+                initialBackoff,
+                initialBackoff.multipliedBy(10),
+                null,
+                deadline,
+                breakerFailures,
+                Duration.ofMinutes(1));
+    }
+
+    /**
+     * A chat model that answers its requests with the given outcomes, in order: a string is returned, an exception
+     * is thrown.
+     */
+    private static final class FakeChatModel implements ChatModel {
+        private final Queue<Object> outcomes;
+        private int requests;
+
+        private FakeChatModel(Object... outcomes) {
+            this.outcomes = new ArrayDeque<>(List.of(outcomes));
+        }
+
+        @Override
+        public String chat(String userMessage) {
+            requests++;
+            Object outcome = outcomes.remove();
+            if (outcome instanceof RuntimeException failure) {
+                throw failure;
+            }
+            return (String) outcome;
+        }
+
+        int requests() {
+            return requests;
+        }
+    }
+}
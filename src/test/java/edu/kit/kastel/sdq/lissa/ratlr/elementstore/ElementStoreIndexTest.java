@@ -0,0 +1,143 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Test class for the persistent index of the {@link ElementStore}.
+ * It verifies that a store loaded from its index file answers queries exactly like the store it was
+ * written from, and that outdated index files are not used.
+ */
+class ElementStoreIndexTest {
+    private static final String FINGERPRINT = "ModuleConfiguration[name=mock, arguments={}]";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that an HNSW store restored from its index returns the same results as the original store.
+     */
+    @Test
+    void restoredStoreMatchesOriginal() {
+        assertRestoredStoreMatchesOriginal("hnsw", Map.of("max_results", "5", "m", "8"));
+    }
+
+    /**
+     * Tests that an IVF-PQ store restored from its index returns the same results as the original store.
+     */
+    @Test
+    void restoredIvfPqStoreMatchesOriginal() {
+        assertRestoredStoreMatchesOriginal("ivf_pq", Map.of("max_results", "5", "nlist", "8", "nprobe", "2"));
+    }
+
+    private void assertRestoredStoreMatchesOriginal(String strategy, Map<String, String> arguments) {
+        Path indexFile = tempDir.resolve("target.idx");
+        List<Element> elements = createElements("content");
+        List<float[]> embeddings = createEmbeddings(elements.size(), 1);
+
+        ElementStore original = createStore(strategy, arguments, indexFile);
+        original.setup(elements, embeddings);
+        original.writeIndex(FINGERPRINT);
+
+        ElementStore restored = createStore(strategy, arguments, indexFile);
+        assertTrue(restored.setupFromIndex(elements, FINGERPRINT));
+
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (float[] query : createEmbeddings(20, 2)) {
+            queries.add(new Pair<>(new Element("query", "requirement", "", 0, null, true), query));
+        }
+        assertEquals(original.findSimilarBatchWithDistances(queries), restored.findSimilarBatchWithDistances(queries));
+        assertArrayEquals(
+                original.getById("element-7").second(), restored.getById("element-7").second());
+    }
+
+    /**
+     * Tests that a store restored from its (read-only, mapped) index can still be changed and written again.
+     */
+    @Test
+    void restoredStoreCanBeChanged() {
+        Path indexFile = tempDir.resolve("target.idx");
+        List<Element> elements = createElements("content");
+        ElementStore original = createStore(indexFile);
+        original.setup(elements, createEmbeddings(elements.size(), 1));
+        original.writeIndex(FINGERPRINT);
+
+        ElementStore restored = createStore(indexFile);
+        assertTrue(restored.setupFromIndex(elements, FINGERPRINT));
+        float[] embedding = createEmbeddings(1, 3).getFirst();
+        Element added = new Element("added", "requirement", "added content", 0, null, true);
+        restored.add(List.of(added), List.of(embedding));
+        restored.remove(List.of("element-0"));
+
+        assertEquals(added, restored.findSimilar(new Pair<>(added, embedding)).getFirst());
+        assertNull(restored.getById("element-0"));
+        assertArrayEquals(
+                original.getById("element-7").second(), restored.getById("element-7").second());
+
+        restored.writeIndex(FINGERPRINT);
+        List<Element> changedElements = new ArrayList<>(elements.subList(1, elements.size()));
+        changedElements.add(added);
+        assertTrue(createStore(indexFile).setupFromIndex(changedElements, FINGERPRINT));
+    }
+
+    /**
+     * Tests that an index is ignored if the elements or the embedding creator changed.
+     */
+    @Test
+    void outdatedIndexIsIgnored() {
+        Path indexFile = tempDir.resolve("target.idx");
+        List<Element> elements = createElements("content");
+        ElementStore original = createStore(indexFile);
+        original.setup(elements, createEmbeddings(elements.size(), 1));
+        original.writeIndex(FINGERPRINT);
+
+        assertFalse(createStore(indexFile).setupFromIndex(createElements("changed content"), FINGERPRINT));
+        assertFalse(createStore(indexFile).setupFromIndex(elements, "another embedding creator"));
+        assertFalse(createStore(tempDir.resolve("missing.idx")).setupFromIndex(elements, FINGERPRINT));
+    }
+
+    private static ElementStore createStore(Path indexFile) {
+        return createStore("hnsw", Map.of("max_results", "5", "m", "8"), indexFile);
+    }
+
+    private static ElementStore createStore(String strategy, Map<String, String> arguments, Path indexFile) {
+        Map<String, String> withIndexFile = new HashMap<>(arguments);
+        withIndexFile.put(ElementStore.INDEX_FILE_KEY, indexFile.toString());
+        return new ElementStore(new ModuleConfiguration(strategy, withIndexFile), true);
+    }
+
+    private static List<Element> createElements(String content) {
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            elements.add(new Element("element-" + i, "requirement", content + " " + i, 0, null, true));
+        }
+        return elements;
+    }
+
+    private static List<float[]> createEmbeddings(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] embedding = new float[24];
+            for (int j = 0; j < embedding.length; j++) {
+                embedding[j] = (float) random.nextGaussian();
+            }
+            embeddings.add(embedding);
+        }
+        return embeddings;
+    }
+}
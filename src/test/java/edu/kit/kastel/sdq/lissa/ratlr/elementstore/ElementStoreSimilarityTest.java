@@ -0,0 +1,492 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static edu.kit.kastel.sdq.lissa.ratlr.elementstore.TestVectors.randomVector;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Test class for the similarity search of the {@link ElementStore}.
+ * The scores of the normalized, SIMD-accelerated search are compared against a reference
+ * implementation of the cosine similarity on the raw (unnormalized) embeddings.
+ */
+class ElementStoreSimilarityTest {
+    private static final int DIMENSION = 1027;
+    private static final float TOLERANCE = 1e-5f;
+
+    /**
+     * Tests that the scores of the exact cosine similarity strategy match the reference implementation
+     * for every element in the store, and that the elements are sorted by descending score.
+     */
+    @Test
+    void scoresMatchReferenceImplementation() {
+        SplittableRandom random = new SplittableRandom(42);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, true));
+            embeddings.add(randomVector(random, DIMENSION));
+        }
+        ElementStore store = new ElementStore(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "infinity")), true);
+        store.setup(elements, embeddings);
+
+        for (int q = 0; q < 10; q++) {
+            float[] query = randomVector(random, DIMENSION);
+            List<Pair<Element, Float>> result = store.findSimilarWithDistances(
+                    new Pair<>(new Element("query", "requirement", "", 0, null, true), query));
+            assertEquals(elements.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                int index = elements.indexOf(result.get(i).first());
+                assertEquals(referenceCosine(query, embeddings.get(index)), result.get(i).second(), TOLERANCE);
+                if (i > 0) {
+                    assertTrue(result.get(i - 1).second() >= result.get(i).second());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the bounded top-k selection returns the same elements in the same order as a stable
+     * sort of all elements by descending score, also if many elements have equal scores.
+     */
+    @Test
+    void topKKeepsOrderOfTies() {
+        SplittableRandom random = new SplittableRandom(3);
+        float[][] distinctVectors = new float[5][];
+        for (int i = 0; i < distinctVectors.length; i++) {
+            distinctVectors[i] = randomVector(random, 16);
+        }
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, true));
+            embeddings.add(distinctVectors[random.nextInt(distinctVectors.length)]);
+        }
+        Element queryElement = new Element("query", "requirement", "", 0, null, true);
+        float[] query = randomVector(random, 16);
+
+        ElementStore unlimited = new ElementStore(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "infinity")), true);
+        unlimited.setup(elements, embeddings);
+        Map<Element, Float> scores = new HashMap<>();
+        for (var pair : unlimited.findSimilarWithDistances(new Pair<>(queryElement, query))) {
+            scores.put(pair.first(), pair.second());
+        }
+        List<Pair<Element, Float>> expected = new ArrayList<>();
+        for (Element element : elements) {
+            expected.add(new Pair<>(element, scores.get(element)));
+        }
+        expected.sort((x, y) -> Float.compare(y.second(), x.second()));
+
+        for (int k : new int[] {1, 7, 30, 100, 150}) {
+            ElementStore store = new ElementStore(
+                    new ModuleConfiguration("cosine_similarity", Map.of("max_results", String.valueOf(k))), true);
+            store.setup(elements, embeddings);
+            List<Pair<Element, Float>> result = store.findSimilarWithDistances(new Pair<>(queryElement, query));
+            assertEquals(expected.subList(0, Math.min(k, expected.size())), result);
+        }
+    }
+
+    /**
+     * Tests that the batched retrieval returns the same results as answering the queries one by one.
+     */
+    @Test
+    void batchMatchesSingleQueries() {
+        SplittableRandom random = new SplittableRandom(11);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, i % 10 != 0));
+            embeddings.add(randomVector(random, 96));
+        }
+        ElementStore store = new ElementStore(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "20")), true);
+        store.setup(elements, embeddings);
+
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (int q = 0; q < 70; q++) {
+            queries.add(new Pair<>(
+                    new Element("query-" + q, "requirement", "", 0, null, true), randomVector(random, 96)));
+        }
+        List<List<Pair<Element, Float>>> batch = store.findSimilarBatchWithDistances(queries);
+        assertEquals(queries.size(), batch.size());
+        for (int q = 0; q < queries.size(); q++) {
+            assertEquals(store.findSimilarWithDistances(queries.get(q)), batch.get(q));
+        }
+    }
+
+    /**
+     * Tests that the batched retrieval on an empty store finds nothing, like the single-query retrieval.
+     */
+    @Test
+    void batchOnEmptyStoreFindsNothing() {
+        ElementStore store = new ElementStore(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "20")), true);
+        store.setup(List.of(), List.of());
+
+        Pair<Element, float[]> query =
+                new Pair<>(new Element("query", "requirement", "", 0, null, true), new float[] {1, 0, 0});
+        assertEquals(List.of(), store.findSimilarWithDistances(query));
+        assertEquals(List.of(List.of(), List.of()), store.findSimilarBatchWithDistances(List.of(query, query)));
+    }
+
+    /**
+     * Tests that quantized scoring finds (nearly) the same elements as exact scoring, that scores computed on the
+     * codes are close to the exact scores, that rescoring restores exact scores, and that batched and single
+     * queries agree.
+     */
+    @Test
+    void quantizedScoringKeepsRecall() {
+        SplittableRandom random = new SplittableRandom(5);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, true));
+            embeddings.add(randomVector(random, 64));
+        }
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (int q = 0; q < 30; q++) {
+            queries.add(new Pair<>(
+                    new Element("query-" + q, "requirement", "", 0, null, true), randomVector(random, 64)));
+        }
+
+        ElementStore exact = new ElementStore(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "10")), true);
+        exact.setup(elements, embeddings);
+        List<List<Pair<Element, Float>>> expected = exact.findSimilarBatchWithDistances(queries);
+
+        for (String quantization : new String[] {"fp16", "int8"}) {
+            ElementStore quantized = new ElementStore(
+                    new ModuleConfiguration(
+                            "cosine_similarity",
+                            Map.of("max_results", "10", "quantization", quantization, "rescore_candidates", "40")),
+                    true);
+            quantized.setup(elements, embeddings);
+            List<List<Pair<Element, Float>>> actual = quantized.findSimilarBatchWithDistances(queries);
+            int found = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                assertEquals(quantized.findSimilarWithDistances(queries.get(q)), actual.get(q));
+                List<Element> expectedElements =
+                        expected.get(q).stream().map(Pair::first).toList();
+                for (var pair : actual.get(q)) {
+                    if (expectedElements.contains(pair.first())) {
+                        found++;
+                        int index = expectedElements.indexOf(pair.first());
+                        assertEquals(expected.get(q).get(index).second(), pair.second(), TOLERANCE);
+                    }
+                }
+            }
+            assertTrue(found >= 0.95 * 10 * queries.size(), quantization + " recall too low: " + found);
+
+            ElementStore withoutRescoring = new ElementStore(
+                    new ModuleConfiguration(
+                            "cosine_similarity", Map.of("max_results", "1", "quantization", quantization)),
+                    true);
+            withoutRescoring.setup(elements, embeddings);
+            List<List<Pair<Element, Float>>> approximate = withoutRescoring.findSimilarBatchWithDistances(queries);
+            for (int q = 0; q < queries.size(); q++) {
+                assertEquals(withoutRescoring.findSimilarWithDistances(queries.get(q)), approximate.get(q));
+                assertEquals(
+                        expected.get(q).getFirst().second(), approximate.get(q).getFirst().second(), 0.02);
+            }
+        }
+    }
+
+    /**
+     * Tests that the scalar and (if enabled) the SIMD dot product agree, including lengths that are not a
+     * multiple of the vector width.
+     */
+    @Test
+    void kernelsAgree() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int length : new int[] {0, 1, 3, 8, 17, 64, 1027, 3072}) {
+            float[] a = VectorMath.normalized(randomVector(random, length));
+            float[] b = VectorMath.normalized(randomVector(random, length));
+            double expected = 0;
+            for (int i = 0; i < length; i++) {
+                expected += (double) a[i] * b[i];
+            }
+            assertEquals(expected, VectorMath.scalarDot(a, 0, b, 0, length), TOLERANCE);
+            assertEquals(expected, VectorMath.dot(a, b), TOLERANCE);
+        }
+    }
+
+    /**
+     * Tests that the SIMD kernel is used exactly if the Vector API is enabled. The build runs the element store
+     * tests with and without the Vector API, so that both kernels are covered.
+     */
+    @Test
+    void simdKernelIsUsedIfVectorApiIsEnabled() {
+        assertEquals(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), VectorMath.usesSimd());
+    }
+
+    /**
+     * Tests that a zero embedding yields a similarity of zero instead of NaN.
+     */
+    @Test
+    void zeroVectorHasZeroSimilarity() {
+        ElementStore store = new ElementStore(new ModuleConfiguration("cosine_similarity", Map.of()), true);
+        store.setup(
+                List.of(new Element("zero", "requirement", "", 0, null, true)),
+                List.<float[]>of(new float[] {0, 0, 0}));
+
+        List<Pair<Element, Float>> result = store.findSimilarWithDistances(
+                new Pair<>(new Element("query", "requirement", "", 0, null, true), new float[] {1, 2, 3}));
+        assertEquals(0f, result.getFirst().second());
+    }
+
+    /**
+     * Tests that the hybrid strategy retrieves an element whose content contains an identifier of the query even if
+     * its embedding is not among the most similar ones, and that it returns cosine similarities as scores.
+     */
+    @Test
+    void hybridRetrievesIdentifierMatches() {
+        SplittableRandom random = new SplittableRandom(5);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            elements.add(new Element("element-" + i, "code", "class Component" + i + " { }", 0, null, true));
+            embeddings.add(randomVector(random, 32));
+        }
+        Element match = new Element("match", "code", "class UserSessionManager { void expire() { } }", 0, null, true);
+        elements.add(match);
+        embeddings.add(randomVector(random, 32));
+        String queryContent = "The UserSessionManager shall expire idle sessions.";
+        Element queryElement = new Element("query", "requirement", queryContent, 0, null, true);
+        Pair<Element, float[]> query = new Pair<>(queryElement, randomVector(random, 32));
+
+        ElementStore dense =
+                new ElementStore(new ModuleConfiguration("cosine_similarity", Map.of("max_results", "5")), true);
+        dense.setup(elements, embeddings);
+        assertFalse(dense.findSimilar(query).contains(match));
+
+        ElementStore hybrid = new ElementStore(
+                new ModuleConfiguration("hybrid", Map.of("max_results", "5", "candidates", "20")), true);
+        hybrid.setup(elements, embeddings);
+        List<Element> result = hybrid.findSimilar(query);
+        assertEquals(5, result.size());
+        assertTrue(result.contains(match));
+        assertEquals(List.of(result), hybrid.findSimilarBatch(List.of(query)));
+
+        float[] normalizedQuery = VectorMath.normalized(query.second());
+        for (Pair<Element, Float> similar : hybrid.findSimilarWithDistances(query)) {
+            float[] embedding = VectorMath.normalized(embeddings.get(elements.indexOf(similar.first())));
+            assertEquals(VectorMath.dot(normalizedQuery, embedding), similar.second(), TOLERANCE);
+        }
+    }
+
+    /**
+     * Tests that the adaptive cutoff keeps the clearly similar elements and respects min_results.
+     */
+    @Test
+    void adaptiveCutoffKeepsClearlySimilarElements() {
+        SplittableRandom random = new SplittableRandom(6);
+        float[] query = randomVector(random, 64);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, true));
+            float[] embedding = randomVector(random, 64);
+            if (i % 10 == 0) {
+                // Five elements that are almost identical to the query
+                for (int j = 0; j < embedding.length; j++) {
+                    embedding[j] = query[j] + 0.05f * embedding[j];
+                }
+            }
+            embeddings.add(embedding);
+        }
+        Pair<Element, float[]> queryPair = new Pair<>(new Element("query", "requirement", "", 0, null, true), query);
+
+        for (Map<String, String> cutoff : List.of(
+                Map.of("similarity_floor", "0.5"), Map.of("relative_drop", "0.5"), Map.of("largest_gap", "true"))) {
+            Map<String, String> arguments = new HashMap<>(cutoff);
+            arguments.put("max_results", "20");
+            ElementStore store = new ElementStore(new ModuleConfiguration("adaptive_cutoff", arguments), true);
+            store.setup(elements, embeddings);
+            List<Pair<Element, Float>> result = store.findSimilarWithDistances(queryPair);
+            assertEquals(5, result.size(), cutoff.toString());
+            assertEquals(List.of(result), store.findSimilarBatchWithDistances(List.of(queryPair)));
+        }
+
+        ElementStore atLeastEight = new ElementStore(
+                new ModuleConfiguration(
+                        "adaptive_cutoff", Map.of("max_results", "20", "min_results", "8", "similarity_floor", "0.5")),
+                true);
+        atLeastEight.setup(elements, embeddings);
+        assertEquals(8, atLeastEight.findSimilar(queryPair).size());
+    }
+
+    /**
+     * Tests that filtered searches only return matching elements, agree between exact and approximate strategies,
+     * and that the children of an element are found via the parent index.
+     */
+    @Test
+    void filteredSearchReturnsOnlyMatchingElements() {
+        SplittableRandom random = new SplittableRandom(7);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        List<Element> parents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Element parent = new Element("parent-" + i, "class", "parent " + i, 0, null, false);
+            parents.add(parent);
+            elements.add(parent);
+            embeddings.add(randomVector(random, 32));
+        }
+        for (int i = 0; i < 300; i++) {
+            String type = i % 2 == 0 ? "method" : "field";
+            elements.add(new Element("element-" + i, type, "content " + i, 1 + i % 3, parents.get(i % 10), true));
+            embeddings.add(randomVector(random, 32));
+        }
+        Pair<Element, float[]> query =
+                new Pair<>(new Element("query", "requirement", "", 0, null, true), randomVector(random, 32));
+
+        ElementStore exact =
+                new ElementStore(new ModuleConfiguration("cosine_similarity", Map.of("max_results", "5")), true);
+        exact.setup(elements, embeddings);
+        ElementStore approximate =
+                new ElementStore(new ModuleConfiguration("hnsw", Map.of("max_results", "5", "m", "8")), true);
+        approximate.setup(elements, embeddings);
+
+        ElementFilter filter = ElementFilter.children("parent-3").withGranularity(2).withType("field");
+        List<Pair<Element, Float>> result = exact.findSimilarWithDistances(query, filter);
+        assertEquals(5, result.size());
+        for (var pair : result) {
+            assertEquals("parent-3", pair.first().getParent().getIdentifier());
+            assertEquals(2, pair.first().getGranularity());
+            assertEquals("field", pair.first().getType());
+        }
+        assertEquals(result, approximate.findSimilarWithDistances(query, filter));
+        assertEquals(List.of(result), approximate.findSimilarBatchWithDistances(List.of(query), filter));
+        assertTrue(exact.findSimilarWithDistances(query, ElementFilter.type("unknown")).isEmpty());
+
+        List<Pair<Element, float[]>> children = exact.getElementsByParentId("parent-3");
+        assertEquals(30, children.size());
+        assertEquals("element-3", children.getFirst().first().getIdentifier());
+    }
+
+    /**
+     * Tests that a lazily set up store only embeds the elements to compare, answers queries like an eagerly set up
+     * store, and embeds the other elements once when they are requested.
+     */
+    @Test
+    void lazySetupOnlyEmbedsElementsToCompare() {
+        SplittableRandom random = new SplittableRandom(5);
+        List<Element> elements = new ArrayList<>();
+        Map<String, float[]> embeddingById = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            Element parent = new Element("parent-" + i, "class", "parent " + i, 0, null, false);
+            elements.add(parent);
+            embeddingById.put(parent.getIdentifier(), randomVector(random, 32));
+            for (int j = 0; j < 20; j++) {
+                Element child = new Element("element-" + i + "-" + j, "method", "content", 1, parent, true);
+                elements.add(child);
+                embeddingById.put(child.getIdentifier(), randomVector(random, 32));
+            }
+        }
+        List<float[]> embeddings = new ArrayList<>();
+        for (Element element : elements) {
+            embeddings.add(embeddingById.get(element.getIdentifier()));
+        }
+        List<String> embedded = new ArrayList<>();
+        Function<List<Element>, List<float[]>> embeddingFunction = requested -> {
+            List<float[]> result = new ArrayList<>();
+            for (Element element : requested) {
+                embedded.add(element.getIdentifier());
+                result.add(embeddingById.get(element.getIdentifier()));
+            }
+            return result;
+        };
+
+        ModuleConfiguration configuration = new ModuleConfiguration("cosine_similarity", Map.of("max_results", "5"));
+        ElementStore eager = new ElementStore(configuration, true);
+        eager.setup(elements, embeddings);
+        ElementStore lazy = new ElementStore(configuration, true);
+        lazy.setup(elements, embeddingFunction);
+        assertEquals(200, embedded.size());
+        assertTrue(embedded.stream().noneMatch(id -> id.startsWith("parent-")));
+
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (int q = 0; q < 10; q++) {
+            queries.add(new Pair<>(
+                    new Element("query-" + q, "requirement", "", 0, null, true), randomVector(random, 32)));
+        }
+        assertEquals(eager.findSimilarBatchWithDistances(queries), lazy.findSimilarBatchWithDistances(queries));
+        assertEquals(200, embedded.size());
+
+        assertArrayEquals(eager.getById("parent-4").second(), lazy.getById("parent-4").second());
+        assertArrayEquals(eager.getById("parent-4").second(), lazy.getById("parent-4").second());
+        assertEquals(List.of("parent-4"), embedded.subList(200, embedded.size()));
+    }
+
+    /**
+     * Tests that the hierarchical strategy finds the elements of the file closest to the query, with exact scores.
+     */
+    @Test
+    void hierarchicalSearchExpandsMostSimilarParents() {
+        SplittableRandom random = new SplittableRandom(8);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        List<float[]> centers = new ArrayList<>();
+        for (int file = 0; file < 20; file++) {
+            float[] center = randomVector(random, 48);
+            centers.add(center);
+            Element fileElement = new Element("file-" + file, "code", "file " + file, 0, null, false);
+            elements.add(fileElement);
+            embeddings.add(center);
+            for (int method = 0; method < 15; method++) {
+                elements.add(new Element(
+                        "file-" + file + "-method-" + method, "code", "method", 2, fileElement, true));
+                float[] embedding = randomVector(random, 48);
+                for (int j = 0; j < embedding.length; j++) {
+                    embedding[j] = center[j] + 0.3f * embedding[j];
+                }
+                embeddings.add(embedding);
+            }
+        }
+        float[] query = centers.get(4).clone();
+        query[0] += 0.5f;
+        Pair<Element, float[]> queryPair = new Pair<>(new Element("query", "requirement", "", 0, null, true), query);
+
+        ElementStore exact =
+                new ElementStore(new ModuleConfiguration("cosine_similarity", Map.of("max_results", "5")), true);
+        exact.setup(elements, embeddings);
+        ElementStore hierarchical = new ElementStore(
+                new ModuleConfiguration("hierarchical", Map.of("max_results", "5", "expanded_parents", "2")), true);
+        hierarchical.setup(elements, embeddings);
+
+        List<Pair<Element, Float>> result = hierarchical.findSimilarWithDistances(queryPair);
+        assertEquals(exact.findSimilarWithDistances(queryPair), result);
+        for (var pair : result) {
+            assertEquals("file-4", pair.first().getParent().getIdentifier());
+        }
+        assertEquals(List.of(result), hierarchical.findSimilarBatchWithDistances(List.of(queryPair)));
+    }
+
+    /**
+     * The cosine similarity as computed before the embeddings were normalized in the store.
+     */
+    private static float referenceCosine(float[] a, float[] b) {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dotProduct += a[i] * b[i];
+            normA += Math.pow(a[i], 2);
+            normB += Math.pow(b[i], 2);
+        }
+        return (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)));
+    }
+}
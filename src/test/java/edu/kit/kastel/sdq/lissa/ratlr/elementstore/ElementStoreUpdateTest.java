@@ -0,0 +1,171 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static edu.kit.kastel.sdq.lissa.ratlr.elementstore.TestVectors.randomVector;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Test class for adding, updating and removing elements of an {@link ElementStore} that is already set up.
+ * It verifies that an incrementally maintained store answers queries like a store that is built from scratch
+ * with the same elements, and that removed elements are never retrieved.
+ */
+class ElementStoreUpdateTest {
+    private static final int DIMENSION = 32;
+
+    /**
+     * Tests that exact strategies return the same results after incremental changes as after a rebuild.
+     */
+    @Test
+    void incrementalStoreMatchesRebuiltStore() {
+        for (ModuleConfiguration configuration : List.of(
+                new ModuleConfiguration("cosine_similarity", Map.of("max_results", "5")),
+                new ModuleConfiguration(
+                        "cosine_similarity",
+                        Map.of("max_results", "5", "quantization", "int8", "recall_sample", "0")),
+                new ModuleConfiguration("hnsw", Map.of("max_results", "5", "m", "8", "ef_search", "1000")))) {
+            SplittableRandom random = new SplittableRandom(11);
+            Map<String, Pair<Element, float[]>> current = new LinkedHashMap<>();
+            for (int i = 0; i < 200; i++) {
+                put(current, "element-" + i, random);
+            }
+            ElementStore store = new ElementStore(configuration, true);
+            store.setup(elementsOf(current), embeddingsOf(current));
+
+            Map<String, Pair<Element, float[]>> added = new LinkedHashMap<>();
+            for (int i = 200; i < 250; i++) {
+                put(added, "element-" + i, random);
+            }
+            store.add(elementsOf(added), embeddingsOf(added));
+            current.putAll(added);
+
+            List<String> removed = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                removed.add("element-" + (i * 7));
+            }
+            store.remove(removed);
+            current.keySet().removeAll(removed);
+
+            Map<String, Pair<Element, float[]>> updated = new LinkedHashMap<>();
+            for (int i = 1; i < 20; i += 2) {
+                if (i % 7 != 0) {
+                    put(updated, "element-" + i, random);
+                }
+            }
+            store.update(elementsOf(updated), embeddingsOf(updated));
+            current.putAll(updated);
+
+            ElementStore rebuilt = new ElementStore(configuration, true);
+            rebuilt.setup(elementsOf(current), embeddingsOf(current));
+            List<Pair<Element, float[]>> queries = createQueries(random);
+            assertEquals(
+                    rebuilt.findSimilarBatchWithDistances(queries),
+                    store.findSimilarBatchWithDistances(queries),
+                    configuration.name());
+            assertNull(store.getById("element-7"));
+            assertArrayEquals(
+                    rebuilt.getById("element-3").second(), store.getById("element-3").second());
+
+            store.compact();
+            assertEquals(rebuilt.findSimilarBatchWithDistances(queries), store.findSimilarBatchWithDistances(queries));
+        }
+    }
+
+    /**
+     * Tests that no strategy returns removed elements, even for queries that equal their embeddings.
+     */
+    @Test
+    void removedElementsAreNeverReturned() {
+        for (String strategy :
+                List.of("cosine_similarity", "hnsw", "binary_rerank", "ivf_pq", "hybrid", "hierarchical")) {
+            SplittableRandom random = new SplittableRandom(12);
+            Map<String, Pair<Element, float[]>> elements = new LinkedHashMap<>();
+            for (int i = 0; i < 300; i++) {
+                put(elements, "element-" + i, random);
+            }
+            ElementStore store = new ElementStore(
+                    new ModuleConfiguration(strategy, Map.of("max_results", "3", "compaction_threshold", "0.5")), true);
+            store.setup(elementsOf(elements), embeddingsOf(elements));
+
+            List<String> removed = List.of("element-10", "element-20", "element-30");
+            store.remove(removed);
+            for (String identifier : removed) {
+                Pair<Element, float[]> query = elements.get(identifier);
+                for (var result : store.findSimilarWithDistances(query)) {
+                    assertFalse(removed.contains(result.first().getIdentifier()), strategy);
+                }
+                assertEquals(3, store.findSimilar(query).size(), strategy);
+            }
+
+            Map<String, Pair<Element, float[]>> added = new LinkedHashMap<>();
+            put(added, "element-new", random);
+            store.add(elementsOf(added), embeddingsOf(added));
+            assertEquals(
+                    "element-new",
+                    store.findSimilar(added.get("element-new")).getFirst().getIdentifier(),
+                    strategy);
+        }
+    }
+
+    /**
+     * Tests that identifiers given more than once are rejected before the store is changed.
+     */
+    @Test
+    void duplicateIdentifiersAreRejected() {
+        SplittableRandom random = new SplittableRandom(13);
+        Map<String, Pair<Element, float[]>> elements = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            put(elements, "element-" + i, random);
+        }
+        ElementStore store = new ElementStore(new ModuleConfiguration("cosine_similarity", Map.of()), true);
+        store.setup(elementsOf(elements), embeddingsOf(elements));
+
+        assertThrows(IllegalArgumentException.class, () -> store.remove(List.of("element-1", "element-1")));
+        Pair<Element, float[]> changed = new Pair<>(elements.get("element-2").first(), randomVector(random, DIMENSION));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> store.update(
+                        List.of(changed.first(), changed.first()), List.of(changed.second(), changed.second())));
+
+        for (String identifier : List.of("element-1", "element-2")) {
+            assertArrayEquals(
+                    VectorMath.normalized(elements.get(identifier).second()),
+                    store.getById(identifier).second());
+        }
+        store.remove(List.of("element-1"));
+        assertNull(store.getById("element-1"));
+    }
+
+    private static void put(Map<String, Pair<Element, float[]>> elements, String identifier, SplittableRandom random) {
+        Element element = new Element(identifier, "requirement", identifier + " content", 0, null, true);
+        elements.put(identifier, new Pair<>(element, randomVector(random, DIMENSION)));
+    }
+
+    private static List<Element> elementsOf(Map<String, Pair<Element, float[]>> elements) {
+        return elements.values().stream().map(Pair::first).toList();
+    }
+
+    private static List<float[]> embeddingsOf(Map<String, Pair<Element, float[]>> elements) {
+        return elements.values().stream().map(Pair::second).toList();
+    }
+
+    private static List<Pair<Element, float[]>> createQueries(SplittableRandom random) {
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Element query = new Element("query-" + i, "requirement", "", 0, null, true);
+            queries.add(new Pair<>(query, randomVector(random, DIMENSION)));
+        }
+        return queries;
+    }
+}
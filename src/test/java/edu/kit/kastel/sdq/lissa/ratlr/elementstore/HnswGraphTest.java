@@ -0,0 +1,159 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static edu.kit.kastel.sdq.lissa.ratlr.elementstore.TestVectors.randomVector;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.HnswGraph;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * Test class for the {@link HnswGraph}. It compares the approximate search of the graph against an exact scan of
+ * seeded random vectors, and verifies that serialized graphs and graphs with removed nodes answer queries
+ * correctly.
+ */
+class HnswGraphTest {
+    private static final int DIMENSION = 32;
+    private static final int SIZE = 2000;
+    private static final int K = 10;
+
+    /**
+     * Tests that the graph finds most of the exact nearest neighbours.
+     */
+    @Test
+    void recallMatchesExactSearch() {
+        SplittableRandom random = new SplittableRandom(1);
+        ElementVectors vectors = createVectors(random, null);
+        HnswGraph graph = new HnswGraph(vectors, 16, 200, 7);
+
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = VectorMath.normalized(randomVector(random, DIMENSION));
+            HnswGraph.SearchResult result = graph.search(query, K, 100);
+            assertEquals(K, result.nodes().length);
+            for (int i = 1; i < result.similarities().length; i++) {
+                assertTrue(result.similarities()[i - 1] >= result.similarities()[i]);
+            }
+            Set<Integer> exact = exactTopK(vectors, query, K);
+            expected += exact.size();
+            for (int i = 0; i < K; i++) {
+                assertEquals(vectors.dot(result.nodes()[i], query), result.similarities()[i], 0);
+                if (exact.contains(result.nodes()[i])) {
+                    found++;
+                }
+            }
+        }
+        double recall = (double) found / expected;
+        assertTrue(recall >= 0.95, "recall@" + K + " = " + recall);
+    }
+
+    /**
+     * Tests that a graph that was written and read back returns the same results as the original graph.
+     */
+    @Test
+    void writtenGraphReadsBack() throws IOException {
+        SplittableRandom random = new SplittableRandom(2);
+        ElementVectors vectors = createVectors(random, null);
+        HnswGraph original = new HnswGraph(vectors, 8, 100, 7);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        original.write(new DataOutputStream(bytes));
+        HnswGraph restored = HnswGraph.read(vectors, ByteBuffer.wrap(bytes.toByteArray()));
+
+        assertEquals(original.size(), restored.size());
+        for (int q = 0; q < 20; q++) {
+            float[] query = VectorMath.normalized(randomVector(random, DIMENSION));
+            HnswGraph.SearchResult expected = original.search(query, K, 50);
+            HnswGraph.SearchResult actual = restored.search(query, K, 50);
+            assertArrayEquals(expected.nodes(), actual.nodes());
+            assertArrayEquals(expected.similarities(), actual.similarities());
+        }
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> HnswGraph.read(createVectors(random, null, SIZE - 1), ByteBuffer.wrap(bytes.toByteArray())));
+    }
+
+    /**
+     * Tests that removed nodes are skipped during the search, so that the graph still returns {@code k} nodes
+     * and finds the nearest neighbours among the remaining nodes.
+     */
+    @Test
+    void removedNodesDoNotReduceResults() {
+        SplittableRandom random = new SplittableRandom(3);
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            embeddings.add(randomVector(random, DIMENSION));
+        }
+        HnswGraph graph = new HnswGraph(createVectors(embeddings, null), 16, 200, 7);
+
+        BitSet removed = new BitSet();
+        for (int node = 0; node < SIZE; node += 3) {
+            removed.set(node);
+        }
+        ElementVectors remaining = createVectors(embeddings, removed);
+        graph.add(remaining, 7);
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = VectorMath.normalized(randomVector(random, DIMENSION));
+            assertEquals(K, graph.search(query, K, K).nodes().length);
+            HnswGraph.SearchResult result = graph.search(query, K, 100);
+            Set<Integer> exact = exactTopK(remaining, query, K);
+            for (int node : result.nodes()) {
+                assertFalse(removed.get(node));
+                if (exact.contains(node)) {
+                    found++;
+                }
+            }
+        }
+        assertTrue(found >= 0.95 * 50 * K, "recall@" + K + " = " + found / (50.0 * K));
+    }
+
+    private static Set<Integer> exactTopK(ElementVectors vectors, float[] query, int k) {
+        return IntStream.range(0, vectors.size())
+                .filter(node -> !vectors.isRemoved(node))
+                .boxed()
+                .sorted((a, b) -> Float.compare(vectors.dot(b, query), vectors.dot(a, query)))
+                .limit(k)
+                .collect(HashSet::new, Set::add, Set::addAll);
+    }
+
+    private static ElementVectors createVectors(SplittableRandom random, BitSet removed) {
+        return createVectors(random, removed, SIZE);
+    }
+
+    private static ElementVectors createVectors(SplittableRandom random, BitSet removed, int size) {
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            embeddings.add(randomVector(random, DIMENSION));
+        }
+        return createVectors(embeddings, removed);
+    }
+
+    private static ElementVectors createVectors(List<float[]> embeddings, BitSet removed) {
+        List<Element> elements = new ArrayList<>();
+        float[] matrix = new float[embeddings.size() * DIMENSION];
+        for (int i = 0; i < embeddings.size(); i++) {
+            elements.add(new Element("element-" + i, "requirement", "content " + i, 0, null, true));
+            System.arraycopy(embeddings.get(i), 0, matrix, i * DIMENSION, DIMENSION);
+            VectorMath.normalize(matrix, i * DIMENSION, DIMENSION);
+        }
+        int[] rows = IntStream.range(0, embeddings.size()).toArray();
+        return new ElementVectors(elements, EmbeddingMatrix.onHeap(matrix, DIMENSION), rows, removed);
+    }
+}
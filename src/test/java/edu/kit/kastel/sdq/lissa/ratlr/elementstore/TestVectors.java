@@ -0,0 +1,29 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded random vectors for the tests of the element stores and the embedding creators.
+ */
+public final class TestVectors {
+    private TestVectors() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Creates a vector with standard normally distributed values, i.e., a vector with a uniformly distributed
+     * direction.
+     *
+     * @param random The source of randomness
+     * @param dimension The dimension of the vector
+     * @return The random vector
+     */
+    public static float[] randomVector(SplittableRandom random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,413 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+/**
+ * Test class for the {@link CachedEmbeddingCreator}.
+ * It uses a fake embedding model that records its requests to verify how the cache misses are deduplicated and
+ * batched, how failing requests are retried, and how contents that exceed the token limit are embedded.
+ */
+class CachedEmbeddingCreatorTest {
+    private static final Encoding CL100K_BASE =
+            Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    /**
+     * A model whose tokenizer ({@code cl100k_base}) jtokkit knows, so that long contents are detected up front.
+     */
+    private static final String KNOWN_MODEL = "text-embedding-3-small";
+
+    private static final int MAX_TOKEN_LENGTH = 8000;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        CacheManager.setCacheDir(tempDir.toString());
+    }
+
+    /**
+     * Tests that the cache misses are sent in batches of at most {@code batch_size} elements and that the
+     * embeddings are returned in the order of the elements.
+     */
+    @Test
+    void batchesAreLimitedByItemCount() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator("fake-item-count", 1, options(4, 100_000), model);
+        List<Element> elements = createElements(10, i -> "content " + i);
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        assertEquals(List.of(2, 4, 4), model.sortedRequestSizes());
+    }
+
+    /**
+     * Tests that a batch never exceeds {@code batch_tokens} tokens unless it consists of a single element that
+     * exceeds the budget on its own.
+     */
+    @Test
+    void batchesAreLimitedByTokenBudget() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        int budget = 20;
+        CachedEmbeddingCreator creator =
+                new FakeEmbeddingCreator("fake-token-budget", 1, options(100, budget), model);
+        List<Element> elements = createElements(12, i -> "word ".repeat(1 + i * 3 % 25) + i);
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        int requested = 0;
+        for (List<String> request : model.requests()) {
+            int tokens = 0;
+            for (String content : request) {
+                tokens += CL100K_BASE.countTokens(content);
+            }
+            assertTrue(request.size() == 1 || tokens <= budget, "Batch exceeds the token budget: " + request);
+            requested += request.size();
+        }
+        assertEquals(elements.size(), requested);
+        assertTrue(model.requests().size() > 1);
+    }
+
+    /**
+     * Tests that the batches of a call are embedded concurrently with the model of the creator, which is created
+     * once with the parameters of the creator.
+     */
+    @Test
+    void modelIsCreatedOnceWithItsParameters() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        CachedEmbeddingCreator creator =
+                new FakeEmbeddingCreator("fake-parameters", 2, options(2, 100_000), model, "model.onnx", "4");
+        List<Element> elements = createElements(11, i -> "content " + i);
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        assertEquals(List.of(1, 2, 2, 2, 2, 2), model.sortedRequestSizes());
+        assertEquals(List.of(List.of("model.onnx", "4")), FakeEmbeddingCreator.creations("fake-parameters"));
+    }
+
+    /**
+     * Tests that a failing batch is split in halves down to single elements, that all elements are embedded, and
+     * that the embeddings of the successful requests are cached.
+     */
+    @Test
+    void failingBatchesAreSplitAndRetried() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(1);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator("fake-split", 1, options(8, 100_000), model);
+        List<Element> elements = createElements(5, i -> "content " + i);
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        // [5] fails, [2] fails, [1] [1], [3] fails, [1], [2] fails, [1] [1]
+        assertEquals(List.of(1, 1, 1, 1, 1, 2, 2, 3, 5), model.sortedRequestSizes());
+
+        int requests = model.requests().size();
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        assertEquals(requests, model.requests().size());
+    }
+
+    /**
+     * Tests that elements with the same content are embedded once and that the embedding is returned for all of
+     * them.
+     */
+    @Test
+    void duplicatesAreEmbeddedOnce() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator("fake-duplicates", 1, options(8, 100_000), model);
+        List<Element> elements = createElements(6, i -> i % 2 == 0 ? "duplicate" : "content " + i);
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        assertEquals(1, model.requestCount("duplicate"));
+        assertEquals(List.of(4), model.sortedRequestSizes());
+    }
+
+    /**
+     * Tests that a content that one call is embedding is awaited by a concurrent call instead of being embedded
+     * again.
+     */
+    @Test
+    void concurrentCallsEmbedSharedContentOnce() throws InterruptedException {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        // Two concurrent requests, so that the request of the second call is not queued behind the blocked one
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator("fake-concurrent", 2, options(8, 100_000), model);
+        CountDownLatch sharedRequested = new CountDownLatch(1);
+        CountDownLatch otherRequested = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        model.beforeRequest(contents -> {
+            if (contents.contains("shared")) {
+                // Keep the shared content in flight until the second call is waiting for it
+                sharedRequested.countDown();
+                await(release);
+            } else {
+                otherRequested.countDown();
+            }
+        });
+        List<Element> first = List.of(element("first-0", "shared"), element("first-1", "first"));
+        List<Element> second = List.of(element("second-0", "shared"), element("second-1", "second"));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<List<float[]>> firstCall =
+                    CompletableFuture.supplyAsync(() -> creator.calculateEmbeddings(first), executor);
+            assertTrue(sharedRequested.await(10, TimeUnit.SECONDS));
+            CompletableFuture<List<float[]>> secondCall =
+                    CompletableFuture.supplyAsync(() -> creator.calculateEmbeddings(second), executor);
+            assertTrue(otherRequested.await(10, TimeUnit.SECONDS));
+            release.countDown();
+
+            assertEmbeddings(first, firstCall.join());
+            assertEmbeddings(second, secondCall.join());
+        }
+        assertEquals(1, model.requestCount("shared"));
+    }
+
+    /**
+     * Tests that the embeddings keep the positions of their elements if the batches are embedded concurrently and
+     * finish out of order. The first batch, which is taken first as it has the most tokens, is held back until
+     * all other batches were sent.
+     */
+    @Test
+    void resultsKeepTheirPositionsWhenBatchesFinishOutOfOrder() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator("fake-out-of-order", 4, options(2, 100_000), model);
+        List<Element> elements = createElements(8, i -> i < 2 ? "slow ".repeat(50) + i : "content " + i);
+        CountDownLatch othersRequested = new CountDownLatch(3);
+        model.beforeRequest(contents -> {
+            if (contents.getFirst().startsWith("slow")) {
+                await(othersRequested);
+                sleep(50);
+            } else {
+                othersRequested.countDown();
+            }
+        });
+
+        assertEmbeddings(elements, creator.calculateEmbeddings(elements));
+        assertEquals(List.of(2, 2, 2, 2), model.sortedRequestSizes());
+    }
+
+    /**
+     * Tests that a content that exceeds the token limit of a model with known tokenizer is truncated before the
+     * model is called, and that the truncated embedding is cached.
+     */
+    @Test
+    void longContentIsTruncatedBeforeTheRequest() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator(KNOWN_MODEL, 1, options(8, 100_000), model);
+        String content = "word ".repeat(9000);
+        List<Element> elements = List.of(element("long", content), element("short", "short content"));
+
+        List<float[]> embeddings = creator.calculateEmbeddings(elements);
+        String truncated = CL100K_BASE.decode(CL100K_BASE.encode(content, MAX_TOKEN_LENGTH).getTokens());
+        assertArrayEquals(FakeEmbeddingModel.embeddingOf(truncated), embeddings.getFirst());
+        assertArrayEquals(FakeEmbeddingModel.embeddingOf("short content"), embeddings.get(1));
+        assertEquals(0, model.requestCount(content));
+        assertEquals(1, model.requestCount(truncated));
+        assertEquals(MAX_TOKEN_LENGTH, CL100K_BASE.countTokens(truncated));
+
+        int requests = model.requests().size();
+        assertArrayEquals(embeddings.getFirst(), creator.calculateEmbeddings(elements).getFirst());
+        assertEquals(requests, model.requests().size());
+    }
+
+    /**
+     * Tests that a content that exceeds the token limit is embedded as the mean of overlapping windows that are
+     * sent with a single request.
+     */
+    @Test
+    void longContentIsEmbeddedAsMeanOfWindows() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(Integer.MAX_VALUE);
+        int overlap = 100;
+        EmbeddingRequestOptions options =
+                new EmbeddingRequestOptions(8, 100_000, EmbeddingRequestOptions.LongContent.WINDOWS, overlap, 0);
+        CachedEmbeddingCreator creator = new FakeEmbeddingCreator(KNOWN_MODEL, 1, options, model);
+        String content = "word ".repeat(20_000);
+        int tokens = CL100K_BASE.countTokens(content);
+        int stride = MAX_TOKEN_LENGTH - overlap;
+        int expectedWindows = 1 + (tokens - MAX_TOKEN_LENGTH + stride - 1) / stride;
+
+        float[] embedding = creator.calculateEmbeddings(List.of(element("long", content))).getFirst();
+        assertEquals(1, model.requests().size());
+        List<String> windows = model.requests().getFirst();
+        assertEquals(expectedWindows, windows.size());
+        float[] mean = new float[embedding.length];
+        for (String window : windows) {
+            assertTrue(CL100K_BASE.countTokens(window) <= MAX_TOKEN_LENGTH);
+            float[] windowEmbedding = FakeEmbeddingModel.embeddingOf(window);
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] += windowEmbedding[i] / windows.size();
+            }
+        }
+        assertArrayEquals(mean, embedding, 1e-2f);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static EmbeddingRequestOptions options(int batchSize, int batchTokens) {
+        return new EmbeddingRequestOptions(
+                batchSize, batchTokens, EmbeddingRequestOptions.LongContent.TRUNCATE, 256, 0);
+    }
+
+    private static List<Element> createElements(int count, IntFunction<String> content) {
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            elements.add(element("element-" + i, content.apply(i)));
+        }
+        return elements;
+    }
+
+    private static Element element(String identifier, String content) {
+        return new Element(identifier, "requirement", content, 0, null, true);
+    }
+
+    private static void assertEmbeddings(List<Element> elements, List<float[]> embeddings) {
+        assertEquals(elements.size(), embeddings.size());
+        for (int i = 0; i < elements.size(); i++) {
+            assertArrayEquals(FakeEmbeddingModel.embeddingOf(elements.get(i).getContent()), embeddings.get(i));
+        }
+    }
+
+    /**
+     * An embedding model that embeds a content as its length and (reduced) hash code, records the contents of its
+     * requests and rejects requests with more than a given number of segments. A hook that runs before each request
+     * can delay or block it.
+     */
+    private static final class FakeEmbeddingModel implements EmbeddingModel {
+        private final int maxSegments;
+        private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        private volatile Consumer<List<String>> beforeRequest = contents -> {};
+
+        private FakeEmbeddingModel(int maxSegments) {
+            this.maxSegments = maxSegments;
+        }
+
+        static float[] embeddingOf(String content) {
+            return new float[] {content.length(), Math.floorMod(content.hashCode(), 1000)};
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            List<String> contents = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                contents.add(segment.text());
+            }
+            requests.add(contents);
+            beforeRequest.accept(contents);
+            if (segments.size() > maxSegments) {
+                throw new IllegalArgumentException("Too many segments: " + segments.size());
+            }
+            List<Embedding> embeddings = new ArrayList<>(contents.size());
+            for (String content : contents) {
+                embeddings.add(Embedding.from(embeddingOf(content)));
+            }
+            return Response.from(embeddings);
+        }
+
+        void beforeRequest(Consumer<List<String>> hook) {
+            this.beforeRequest = hook;
+        }
+
+        List<List<String>> requests() {
+            synchronized (requests) {
+                return new ArrayList<>(requests);
+            }
+        }
+
+        long requestCount(String content) {
+            long count = 0;
+            for (List<String> request : requests()) {
+                count += Collections.frequency(request, content);
+            }
+            return count;
+        }
+
+        List<Integer> sortedRequestSizes() {
+            List<Integer> sizes = new ArrayList<>();
+            for (List<String> request : requests()) {
+                sizes.add(request.size());
+            }
+            Collections.sort(sizes);
+            return sizes;
+        }
+    }
+
+    /**
+     * A cached embedding creator that uses a {@link FakeEmbeddingModel}. The model is registered by its name, as
+     * the models are created by the constructor of the super class.
+     */
+    private static final class FakeEmbeddingCreator extends CachedEmbeddingCreator {
+        private static final Map<String, FakeEmbeddingModel> MODELS = new ConcurrentHashMap<>();
+        private static final Map<String, List<List<String>>> CREATIONS = new ConcurrentHashMap<>();
+
+        private FakeEmbeddingCreator(
+                String model,
+                int threads,
+                EmbeddingRequestOptions options,
+                FakeEmbeddingModel embeddingModel,
+                String... params) {
+            super(new ContextStore(), register(model, embeddingModel), threads, options, params);
+        }
+
+        private static String register(String model, FakeEmbeddingModel embeddingModel) {
+            MODELS.put(model, embeddingModel);
+            return model;
+        }
+
+        /**
+         * Returns the parameters of each call of {@link #createEmbeddingModel(String, String...)} for the model.
+         */
+        static List<List<String>> creations(String model) {
+            return CREATIONS.getOrDefault(model, List.of());
+        }
+
+        @Override
+        protected EmbeddingModel createEmbeddingModel(String model, String... params) {
+            CREATIONS
+                    .computeIfAbsent(model, key -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(List.of(params));
+            return MODELS.get(model);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static edu.kit.kastel.sdq.lissa.ratlr.elementstore.TestVectors.randomVector;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.VectorMath;
+
+/**
+ * Test class for the {@link PcaProjection}.
+ */
+class PcaProjectionTest {
+    private static final int DIMENSION = 16;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that a projection fitted on embeddings of rank 2 keeps the cosine similarities of the centered
+     * embeddings, as they lie in the plane spanned by the two principal components.
+     */
+    @Test
+    void projectionOfLowRankEmbeddingsKeepsSimilarities() {
+        List<float[]> embeddings = createLowRankEmbeddings(200);
+        PcaProjection projection = PcaProjection.fit(embeddings, 2);
+        assertEquals(DIMENSION, projection.dimension());
+        assertEquals(2, projection.reducedDimension());
+
+        float[] mean = new float[DIMENSION];
+        List<float[]> centered = new ArrayList<>();
+        for (float[] embedding : embeddings) {
+            float[] normalized = normalizedCopy(embedding);
+            centered.add(normalized);
+            for (int d = 0; d < DIMENSION; d++) {
+                mean[d] += normalized[d] / embeddings.size();
+            }
+        }
+        for (float[] embedding : centered) {
+            for (int d = 0; d < DIMENSION; d++) {
+                embedding[d] -= mean[d];
+            }
+            VectorMath.normalize(embedding, 0, DIMENSION);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            float[] first = projection.project(embeddings.get(i));
+            float[] second = projection.project(embeddings.get(i + 20));
+            assertEquals(2, first.length);
+            assertEquals(1, VectorMath.dot(first, 0, first, 0, 2), 1e-4);
+            assertEquals(
+                    VectorMath.dot(centered.get(i), 0, centered.get(i + 20), 0, DIMENSION),
+                    VectorMath.dot(first, 0, second, 0, 2),
+                    1e-3);
+        }
+    }
+
+    /**
+     * Tests that invalid reduced dimensions and embeddings of another dimension are rejected.
+     */
+    @Test
+    void invalidDimensionsAreRejected() {
+        List<float[]> embeddings = createLowRankEmbeddings(10);
+        assertThrows(IllegalArgumentException.class, () -> PcaProjection.fit(embeddings, 0));
+        assertThrows(IllegalArgumentException.class, () -> PcaProjection.fit(embeddings, DIMENSION));
+        assertThrows(IllegalArgumentException.class, () -> PcaProjection.fit(List.of(), 2));
+
+        PcaProjection projection = PcaProjection.fit(embeddings, 2);
+        assertThrows(IllegalArgumentException.class, () -> projection.project(new float[DIMENSION + 1]));
+    }
+
+    /**
+     * Tests that a projection read from its file projects exactly like the written projection, and that other
+     * files are rejected.
+     */
+    @Test
+    void writtenProjectionIsReadAgain() throws IOException {
+        List<float[]> embeddings = createLowRankEmbeddings(50);
+        PcaProjection projection = PcaProjection.fit(embeddings, 3);
+        Path file = tempDir.resolve("projection").resolve("pca.bin");
+        projection.write(file);
+
+        PcaProjection read = PcaProjection.read(file);
+        assertEquals(DIMENSION, read.dimension());
+        assertEquals(3, read.reducedDimension());
+        for (float[] embedding : embeddings) {
+            assertArrayEquals(projection.project(embedding), read.project(embedding));
+        }
+
+        Path otherFile = tempDir.resolve("other.bin");
+        Files.writeString(otherFile, "not a projection");
+        assertThrows(IOException.class, () -> PcaProjection.read(otherFile));
+    }
+
+    /**
+     * Creates embeddings that are random combinations of two fixed directions.
+     */
+    private static List<float[]> createLowRankEmbeddings(int count) {
+        SplittableRandom random = new SplittableRandom(7);
+        float[] first = randomVector(random, DIMENSION);
+        float[] second = randomVector(random, DIMENSION);
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float a = (float) random.nextGaussian();
+            float b = (float) random.nextGaussian();
+            float[] embedding = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                embedding[d] = a * first[d] + b * second[d];
+            }
+            embeddings.add(embedding);
+        }
+        return embeddings;
+    }
+
+
+    private static float[] normalizedCopy(float[] embedding) {
+        float[] copy = Arrays.copyOf(embedding, embedding.length);
+        VectorMath.normalize(copy, 0, copy.length);
+        return copy;
+    }
+}
@@ -0,0 +1,188 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * Test class for the readers of {@link PrecomputedEmbeddings} and the fallback of the
+ * {@link PrecomputedEmbeddingCreator}.
+ */
+class PrecomputedEmbeddingsTest {
+    private static final float[][] MATRIX = {{1, 2}, {3, 4}, {5, 6}};
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that the rows of a {@code .npy} matrix (format version 1 and 2) are found by the keys of their lines.
+     */
+    @Test
+    void npyRowsAreFoundByKey() throws IOException {
+        for (int version = 1; version <= 2; version++) {
+            Path matrixFile = writeNpy(version, "{'descr': '<f4', 'fortran_order': False, 'shape': (3, 2), }");
+            PrecomputedEmbeddings embeddings = PrecomputedEmbeddings.readNpy(matrixFile, writeKeys("a", "b", "c"));
+
+            assertEquals(3, embeddings.size());
+            assertEquals(2, embeddings.dimension());
+            assertArrayEquals(MATRIX[0], embeddings.get("a"));
+            assertArrayEquals(MATRIX[2], embeddings.get("c"));
+            assertNull(embeddings.get("d"));
+        }
+    }
+
+    /**
+     * Tests that a {@code .npy} matrix is rejected if it is not a float32 matrix in C order, is truncated, or has
+     * another number of rows than keys.
+     */
+    @Test
+    void unsupportedNpyFilesAreRejected() throws IOException {
+        Path keys = writeKeys("a", "b", "c");
+        assertThrows(
+                IOException.class,
+                () -> PrecomputedEmbeddings.readNpy(
+                        writeNpy(1, "{'descr': '<f8', 'fortran_order': False, 'shape': (3, 2), }"), keys));
+        assertThrows(
+                IOException.class,
+                () -> PrecomputedEmbeddings.readNpy(
+                        writeNpy(1, "{'descr': '<f4', 'fortran_order': True, 'shape': (3, 2), }"), keys));
+        assertThrows(
+                IOException.class,
+                () -> PrecomputedEmbeddings.readNpy(
+                        writeNpy(1, "{'descr': '<f4', 'fortran_order': False, 'shape': (4, 2), }"), keys));
+        assertThrows(
+                IOException.class,
+                () -> PrecomputedEmbeddings.readNpy(
+                        writeNpy(1, "{'descr': '<f4', 'fortran_order': False, 'shape': (3, 2), }"),
+                        writeKeys("a", "b")));
+        Path notNumPy = tempDir.resolve("matrix.txt");
+        Files.writeString(notNumPy, "not a matrix");
+        assertThrows(IOException.class, () -> PrecomputedEmbeddings.readNpy(notNumPy, keys));
+    }
+
+    /**
+     * Tests that the JSON Lines reader skips blank lines and other fields, and that the last line of a key wins.
+     */
+    @Test
+    void jsonLinesAreReadIntoOneMatrix() throws IOException {
+        Path file = writeLines(
+                "{\"id\": \"a\", \"embedding\": [1, 2], \"meta\": {\"source\": [7, 8, 9]}}",
+                "",
+                "{\"vector\": [0], \"embedding\": [3.5, -4], \"id\": \"b\"}",
+                "   ",
+                "{\"id\": \"a\", \"embedding\": [5, 6]}");
+        PrecomputedEmbeddings embeddings = PrecomputedEmbeddings.readJsonLines(file, "id", "embedding");
+
+        assertEquals(2, embeddings.size());
+        assertEquals(2, embeddings.dimension());
+        assertArrayEquals(new float[] {5, 6}, embeddings.get("a"));
+        assertArrayEquals(new float[] {3.5f, -4}, embeddings.get("b"));
+    }
+
+    /**
+     * Tests that the JSON Lines reader rejects lines that are no objects, lack a field, or have another dimension.
+     */
+    @Test
+    void invalidJsonLinesAreRejected() throws IOException {
+        List<String> invalidLines = List.of(
+                "[1, 2]", "{\"id\": \"b\"}", "{\"embedding\": [3, 4]}", "{\"id\": \"b\", \"embedding\": [3]}");
+        for (String invalidLine : invalidLines) {
+            Path file = writeLines("{\"id\": \"a\", \"embedding\": [1, 2]}", invalidLine);
+            assertThrows(IOException.class, () -> PrecomputedEmbeddings.readJsonLines(file, "id", "embedding"));
+        }
+    }
+
+    /**
+     * Tests that a fallback with a PCA reduction is fitted in {@code prepare}, so that it can embed the elements
+     * without precomputed embedding.
+     */
+    @Test
+    void fallbackIsPrepared() throws IOException {
+        CacheManager.setCacheDir(tempDir.resolve("cache").toString());
+        Path precomputed = writeLines("{\"id\": \"e0\", \"embedding\": [1, 0]}");
+        Path fallbackFile = tempDir.resolve("fallback.jsonl");
+        Files.writeString(
+                fallbackFile,
+                """
+                {"id": "e0", "embedding": [1, 0, 0]}
+                {"id": "e1", "embedding": [0, 1, 0]}
+                {"id": "e2", "embedding": [0, 0, 1]}
+                {"id": "e3", "embedding": [1, 1, 0]}
+                """);
+        EmbeddingCreator creator = new PrecomputedEmbeddingCreator(
+                new ModuleConfiguration(
+                        "precomputed",
+                        Map.of(
+                                "path", precomputed.toString(),
+                                "fallback", "precomputed",
+                                "fallback_path", fallbackFile.toString(),
+                                "fallback_reduction", "pca",
+                                "fallback_reduced_dimension", "2")),
+                new ContextStore());
+        List<Element> elements = List.of(element("e0"), element("e1"), element("e2"), element("e3"));
+
+        creator.prepare(elements);
+        List<float[]> embeddings = creator.calculateEmbeddings(elements);
+
+        assertArrayEquals(new float[] {1, 0}, embeddings.getFirst());
+        for (float[] embedding : embeddings.subList(1, embeddings.size())) {
+            assertEquals(2, embedding.length);
+        }
+    }
+
+    private Path writeNpy(int version, String dictionary) throws IOException {
+        int preambleLength = version == 1 ? 10 : 12;
+        StringBuilder header = new StringBuilder(dictionary);
+        while ((preambleLength + header.length() + 1) % 64 != 0) {
+            header.append(' ');
+        }
+        header.append('\n');
+        ByteBuffer buffer = ByteBuffer.allocate(
+                        preambleLength + header.length() + MATRIX.length * MATRIX[0].length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) version).put((byte) 0);
+        if (version == 1) {
+            buffer.putShort((short) header.length());
+        } else {
+            buffer.putInt(header.length());
+        }
+        buffer.put(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+        for (float[] row : MATRIX) {
+            for (float value : row) {
+                buffer.putFloat(value);
+            }
+        }
+        Path file = Files.createTempFile(tempDir, "matrix", ".npy");
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    private Path writeKeys(String... keys) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "keys", ".txt"), List.of(keys));
+    }
+
+    private Path writeLines(String... lines) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "embeddings", ".jsonl"), List.of(lines));
+    }
+
+    private static Element element(String identifier) {
+        return new Element(identifier, "requirement", "content of " + identifier, 0, null, true);
+    }
+}
@@ -0,0 +1,111 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static edu.kit.kastel.sdq.lissa.ratlr.elementstore.TestVectors.randomVector;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * Test class for the {@link ReducingEmbeddingCreator}, which reduces precomputed embeddings.
+ * Each run of the pipeline is simulated by a new creator that is prepared for the target elements of the run.
+ */
+class ReducingEmbeddingCreatorTest {
+    private static final int DIMENSION = 8;
+    private static final int ELEMENTS = 40;
+
+    @TempDir
+    Path tempDir;
+
+    private Path embeddingsFile;
+    private List<Element> elements;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        CacheManager.setCacheDir(tempDir.resolve("cache").toString());
+        SplittableRandom random = new SplittableRandom(17);
+        elements = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < ELEMENTS; i++) {
+            String identifier = "element-" + i;
+            elements.add(new Element(identifier, "requirement", "content of " + identifier, 0, null, true));
+            lines.add("{\"id\": \"" + identifier + "\", \"embedding\": "
+                    + Arrays.toString(randomVector(random, DIMENSION)) + "}");
+        }
+        embeddingsFile = Files.write(tempDir.resolve("embeddings.jsonl"), lines);
+    }
+
+    /**
+     * Tests that the fingerprint of a PCA reduction identifies the target elements the projection was fitted on, so
+     * that an index written by a run with other target elements is not loaded.
+     */
+    @Test
+    void indexIsNotReusedIfTheTargetsChange() {
+        List<Element> sources = elements.subList(0, 10);
+        List<Element> targets = elements.subList(10, 30);
+        List<Element> changedTargets = elements.subList(20, 40);
+        Path indexFile = tempDir.resolve("source.idx");
+
+        EmbeddingCreator firstRun = createCreator("pca");
+        firstRun.prepare(targets);
+        ElementStore firstStore = createStore(indexFile);
+        firstStore.setup(sources, firstRun.calculateEmbeddings(sources));
+        firstStore.writeIndex(firstRun.fingerprint());
+        assertFalse(firstRun.fingerprint().isEmpty());
+
+        EmbeddingCreator sameTargets = createCreator("pca");
+        sameTargets.prepare(targets);
+        assertEquals(firstRun.fingerprint(), sameTargets.fingerprint());
+        assertTrue(createStore(indexFile).setupFromIndex(sources, sameTargets.fingerprint()));
+
+        EmbeddingCreator otherTargets = createCreator("pca");
+        otherTargets.prepare(changedTargets);
+        assertNotEquals(firstRun.fingerprint(), otherTargets.fingerprint());
+        assertFalse(createStore(indexFile).setupFromIndex(sources, otherTargets.fingerprint()));
+        assertFalse(Arrays.equals(
+                firstRun.calculateEmbeddings(sources).getFirst(),
+                otherTargets.calculateEmbeddings(sources).getFirst()));
+    }
+
+    /**
+     * Tests that truncated embeddings do not depend on the target elements.
+     */
+    @Test
+    void truncationHasNoFingerprint() {
+        EmbeddingCreator creator = createCreator("truncate");
+        creator.prepare(elements.subList(10, 30));
+        assertEquals("", creator.fingerprint());
+    }
+
+    private EmbeddingCreator createCreator(String reduction) {
+        Map<String, String> arguments = new HashMap<>();
+        arguments.put("path", embeddingsFile.toString());
+        arguments.put("reduction", reduction);
+        arguments.put("reduced_dimension", "3");
+        return EmbeddingCreator.createEmbeddingCreator(
+                new ModuleConfiguration("precomputed", arguments), new ContextStore());
+    }
+
+    private static ElementStore createStore(Path indexFile) {
+        return new ElementStore(
+                new ModuleConfiguration("hnsw", Map.of(ElementStore.INDEX_FILE_KEY, indexFile.toString())), false);
+    }
+}
@@ -0,0 +1,63 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link CircuitBreaker}, which runs against a manual clock.
+ */
+class CircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Tests that the breaker opens after the given number of consecutive failures and rejects requests for its
+     * open duration.
+     */
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("consecutive", 3, OPEN_DURATION, clock::get);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(0, breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(OPEN_DURATION.toNanos(), breaker.tryAcquire());
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(Duration.ofSeconds(20).toNanos(), breaker.tryAcquire());
+    }
+
+    /**
+     * Tests that a half-open breaker admits a single probe request, opens again if the probe fails, and closes if
+     * it succeeds.
+     */
+    @Test
+    void halfOpenBreakerSendsOneProbe() {
+        CircuitBreaker breaker = new CircuitBreaker("probe", 1, OPEN_DURATION, clock::get);
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire() > 0);
+
+        clock.addAndGet(OPEN_DURATION.toNanos());
+        assertEquals(0, breaker.tryAcquire());
+        long pollInterval = breaker.tryAcquire();
+        assertTrue(pollInterval > 0 && pollInterval <= Duration.ofSeconds(1).toNanos());
+
+        breaker.onFailure();
+        assertEquals(OPEN_DURATION.toNanos(), breaker.tryAcquire());
+
+        clock.addAndGet(OPEN_DURATION.toNanos());
+        assertEquals(0, breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(0, breaker.tryAcquire());
+        assertEquals(0, breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,120 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+
+/**
+ * Test class for the {@link ConcurrencyLimiter}.
+ * The requests run on the test thread against a manual clock. Concurrent requests are simulated by nesting them:
+ * a request sends the next one before it completes, so that all of them are in flight at the same time.
+ */
+class ConcurrencyLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Tests that the limit grows up to its maximum while the latency stays flat and the limit is used.
+     */
+    @Test
+    void limitGrowsWhileLatencyStaysFlat() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("flat", 1, 4, clock::get);
+        for (int round = 0; round < 100; round++) {
+            callNested(limiter, limiter.limit(), LATENCY);
+            assertTrue(limiter.limit() <= 4);
+        }
+        assertEquals(4, limiter.limit());
+    }
+
+    /**
+     * Tests that the limit does not grow if it is not used.
+     */
+    @Test
+    void unusedLimitDoesNotGrow() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("unused", 2, 8, clock::get);
+        for (int i = 0; i < 100; i++) {
+            callNested(limiter, 1, LATENCY);
+        }
+        assertEquals(2, limiter.limit());
+    }
+
+    /**
+     * Tests that the limit is reduced if the latency rises.
+     */
+    @Test
+    void limitShrinksIfLatencyRises() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("latency", 10, 16, clock::get);
+        callNested(limiter, 1, LATENCY);
+        callNested(limiter, 1, 10 * LATENCY);
+        assertEquals(9, limiter.limit());
+    }
+
+    /**
+     * Tests that the limit is halved if the endpoint rejects a request because of its rate limit, and that other
+     * failures do not change it.
+     */
+    @Test
+    void limitIsHalvedOnRateLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("rate-limit", 8, 16, clock::get);
+        RateLimitException rateLimit = new RateLimitException("Too many requests");
+        assertThrows(RateLimitException.class, () -> failAfterLatency(limiter, rateLimit));
+        assertEquals(4, limiter.limit());
+        HttpException tooManyRequests = new HttpException(429, "Too many requests");
+        assertThrows(HttpException.class, () -> failAfterLatency(limiter, tooManyRequests));
+        assertEquals(2, limiter.limit());
+        HttpException badRequest = new HttpException(400, "Bad request");
+        assertThrows(HttpException.class, () -> failAfterLatency(limiter, badRequest));
+        IllegalStateException broken = new IllegalStateException("Broken");
+        assertThrows(IllegalStateException.class, () -> failAfterLatency(limiter, broken));
+        assertEquals(2, limiter.limit());
+        HttpException unavailable = new HttpException(503, "Unavailable");
+        assertThrows(HttpException.class, () -> failAfterLatency(limiter, unavailable));
+        assertThrows(HttpException.class, () -> failAfterLatency(limiter, unavailable));
+        assertEquals(1, limiter.limit());
+    }
+
+    /**
+     * Tests that the failures of requests that were in flight together reduce the limit only once, and that a
+     * request started after the reduction can reduce it again.
+     */
+    @Test
+    void concurrentFailuresReduceTheLimitOnce() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("window", 8, 16, clock::get);
+        RateLimitException rateLimit = new RateLimitException("Too many requests");
+        assertThrows(
+                RateLimitException.class,
+                () -> limiter.call(() -> limiter.call(() -> failAfterLatency(limiter, rateLimit))));
+        assertEquals(4, limiter.limit());
+
+        assertThrows(RateLimitException.class, () -> failAfterLatency(limiter, rateLimit));
+        assertEquals(2, limiter.limit());
+    }
+
+    /**
+     * Sends the given number of nested requests; the innermost one takes the given latency.
+     */
+    private Integer callNested(ConcurrencyLimiter limiter, int depth, long latency) {
+        if (depth <= 1) {
+            return limiter.call(() -> (int) clock.addAndGet(latency));
+        }
+        return limiter.call(() -> callNested(limiter, depth - 1, latency));
+    }
+
+    /**
+     * Sends a request that fails with the given exception after {@link #LATENCY}.
+     */
+    private Integer failAfterLatency(ConcurrencyLimiter limiter, RuntimeException failure) {
+        return limiter.call(() -> {
+            clock.addAndGet(LATENCY);
+            throw failure;
+        });
+    }
+}